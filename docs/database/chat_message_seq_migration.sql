@@ -0,0 +1,24 @@
+-- ===============================================
+-- 聊天消息序号 - 迁移脚本
+-- 聊天记录由OFFSET分页改为按(chat_room_id, seq)键集分页，断线重连按序号补齐消息
+-- 需在新版本应用发送消息之前执行（MySQL 8.0+）
+-- ===============================================
+
+-- 步骤1：新增序号列（ddl-auto=update时会自动创建）
+ALTER TABLE chat_messages ADD COLUMN seq BIGINT NULL;
+ALTER TABLE chat_rooms ADD COLUMN message_seq BIGINT NOT NULL DEFAULT 0;
+
+-- 步骤2：按发送时间回填存量消息的序号
+UPDATE chat_messages cm
+JOIN (
+    SELECT id, ROW_NUMBER() OVER (PARTITION BY chat_room_id ORDER BY sent_at, id) AS rn
+    FROM chat_messages
+) numbered ON numbered.id = cm.id
+SET cm.seq = numbered.rn;
+
+-- 步骤3：聊天室的序号计数器从已有最大序号继续
+UPDATE chat_rooms cr
+SET cr.message_seq = (SELECT COALESCE(MAX(cm.seq), 0) FROM chat_messages cm WHERE cm.chat_room_id = cr.id);
+
+-- 步骤4：键集分页索引（同一聊天室内序号唯一）
+CREATE UNIQUE INDEX uk_chat_messages_room_seq ON chat_messages(chat_room_id, seq);
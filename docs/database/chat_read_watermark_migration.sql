@@ -0,0 +1,25 @@
+-- ===============================================
+-- 聊天已读/已送达水位 - 迁移脚本
+-- 已读、已送达由逐条更新消息状态改为记录在聊天室上的双方水位（序号），消息状态按水位推导
+-- 需在 chat_message_seq_migration.sql 之后执行
+-- ===============================================
+
+-- 步骤1：新增水位列（ddl-auto=update时会自动创建）
+ALTER TABLE chat_rooms ADD COLUMN buyer_read_seq BIGINT NOT NULL DEFAULT 0;
+ALTER TABLE chat_rooms ADD COLUMN seller_read_seq BIGINT NOT NULL DEFAULT 0;
+ALTER TABLE chat_rooms ADD COLUMN buyer_delivered_seq BIGINT NOT NULL DEFAULT 0;
+ALTER TABLE chat_rooms ADD COLUMN seller_delivered_seq BIGINT NOT NULL DEFAULT 0;
+
+-- 步骤2：按存量消息状态回填已读水位（对方发送的最后一条已读消息）
+UPDATE chat_rooms cr
+SET cr.buyer_read_seq = (SELECT COALESCE(MAX(cm.seq), 0) FROM chat_messages cm
+                         WHERE cm.chat_room_id = cr.id AND cm.sender_id = cr.seller_id AND cm.status = 'READ'),
+    cr.seller_read_seq = (SELECT COALESCE(MAX(cm.seq), 0) FROM chat_messages cm
+                          WHERE cm.chat_room_id = cr.id AND cm.sender_id = cr.buyer_id AND cm.status = 'READ');
+
+-- 步骤3：回填已送达水位（已读的消息同样视为已送达）
+UPDATE chat_rooms cr
+SET cr.buyer_delivered_seq = (SELECT COALESCE(MAX(cm.seq), 0) FROM chat_messages cm
+                              WHERE cm.chat_room_id = cr.id AND cm.sender_id = cr.seller_id AND cm.status IN ('DELIVERED', 'READ')),
+    cr.seller_delivered_seq = (SELECT COALESCE(MAX(cm.seq), 0) FROM chat_messages cm
+                               WHERE cm.chat_room_id = cr.id AND cm.sender_id = cr.buyer_id AND cm.status IN ('DELIVERED', 'READ'));
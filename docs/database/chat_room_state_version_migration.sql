@@ -0,0 +1,8 @@
+-- ===============================================
+-- 聊天室消息状态版本 - 迁移脚本
+-- 撤回消息、推进已读/已送达水位时递增，最近消息缓存按最新序号和该版本判断缓冲是否过期
+-- 需在 chat_read_watermark_migration.sql 之后执行
+-- ===============================================
+
+-- 新增版本列（ddl-auto=update时会自动创建），存量聊天室从0开始
+ALTER TABLE chat_rooms ADD COLUMN state_version BIGINT NOT NULL DEFAULT 0;
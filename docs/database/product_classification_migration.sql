@@ -0,0 +1,22 @@
+-- ===============================================
+-- 商品分类标记 - 迁移脚本
+-- 品牌/配件/热门筛选由标题LIKE改为按标记列等值查询
+-- ===============================================
+
+-- 步骤1：新增分类标记列（ddl-auto=update时会自动创建）
+ALTER TABLE products ADD COLUMN is_brand TINYINT(1) DEFAULT 0;
+ALTER TABLE products ADD COLUMN is_accessory TINYINT(1) DEFAULT 0;
+ALTER TABLE products ADD COLUMN is_popular TINYINT(1) DEFAULT 0;
+
+-- 步骤2：筛选查询索引（标记 + 状态 + 发布时间）
+CREATE INDEX idx_products_brand_status ON products(is_brand, status, published_at DESC);
+CREATE INDEX idx_products_accessory_status ON products(is_accessory, status, published_at DESC);
+CREATE INDEX idx_products_popular_status ON products(is_popular, status, published_at DESC);
+
+-- 步骤3：关键词词典（可选，不配置时使用内置词典）
+-- 应用启动后检测到词典变更会自动回填存量商品
+INSERT INTO system_configs (config_key, config_value, config_type, description, is_public)
+VALUES ('product.classifier.dictionary',
+        '{"brand":["apple","samsung","sony","nike","iphone","ps5","playstation","品牌"],"accessories":["耳机","充电器","数据线","保护壳","手机壳","移动电源","充电宝","支架","adapter","cable","case","charger","headset","earphone","配件"]}',
+        'json', '商品分类关键词词典', 0)
+ON DUPLICATE KEY UPDATE description = VALUES(description);
@@ -1,15 +1,21 @@
 package com.fliliy.secondhand.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fliliy.secondhand.dto.response.ProductDetailResponse;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.cache.RedisCache;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.cache.RedisCacheWriter;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
@@ -21,16 +27,25 @@ import java.util.Map;
 @EnableCaching
 public class CacheConfig {
     
+    // 缓存key前缀中的格式版本，值的序列化格式变化时递增，旧格式的条目不再被读取
+    private static final String CACHE_KEY_VERSION = "v2";
+    
     @Autowired
     private ObjectMapper objectMapper;
     
     @Bean
-    public CacheManager cacheManager(RedisConnectionFactory redisConnectionFactory) {
+    public TwoLevelCacheManager cacheManager(RedisConnectionFactory redisConnectionFactory) {
         RedisCacheConfiguration defaultConfig = RedisCacheConfiguration.defaultCacheConfig()
                 .entryTtl(Duration.ofHours(1)) // 默认缓存1小时
+                .computePrefixWith(cacheName -> cacheName + ":" + CACHE_KEY_VERSION + "::")
                 .serializeKeysWith(RedisSerializationContext.SerializationPair.fromSerializer(new StringRedisSerializer()))
                 .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(new GenericJackson2JsonRedisSerializer(objectMapper)));
         
+        // 商品详情按固定类型序列化，读取时还原为ProductDetailResponse，不写入也不接受任意类型信息
+        Jackson2JsonRedisSerializer<ProductDetailResponse> productDetailSerializer =
+                new Jackson2JsonRedisSerializer<>(ProductDetailResponse.class);
+        productDetailSerializer.setObjectMapper(objectMapper);
+        
         // 不同缓存的配置
         Map<String, RedisCacheConfiguration> cacheConfigurations = new HashMap<>();
         
@@ -38,15 +53,51 @@ public class CacheConfig {
         cacheConfigurations.put("categories", defaultConfig.entryTtl(Duration.ofHours(6)));
         
         // 商品详情缓存（缓存30分钟）
-        cacheConfigurations.put("products", defaultConfig.entryTtl(Duration.ofMinutes(30)));
+        cacheConfigurations.put("products", defaultConfig.entryTtl(Duration.ofMinutes(30))
+                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(productDetailSerializer)));
         
         // 用户信息缓存（缓存2小时）
         cacheConfigurations.put("users", defaultConfig.entryTtl(Duration.ofHours(2)));
         
-        return RedisCacheManager.builder(redisConnectionFactory)
-                .cacheDefaults(defaultConfig)
-                .withInitialCacheConfigurations(cacheConfigurations)
-                .transactionAware()
-                .build();
+        // 二级缓存（Redis），可按字节读写供一级缓存保存；事务感知由外层二级缓存管理器统一处理
+        RedisCacheWriter cacheWriter = RedisCacheWriter.nonLockingRedisCacheWriter(redisConnectionFactory);
+        RedisCacheManager redisCacheManager = new RedisCacheManager(cacheWriter, defaultConfig, cacheConfigurations) {
+            @Override
+            protected RedisCache createRedisCache(String name, RedisCacheConfiguration cacheConfig) {
+                return new SerializedRedisCache(name, cacheWriter, cacheConfig != null ? cacheConfig : defaultConfig);
+            }
+        };
+        redisCacheManager.initializeCaches();
+        
+        // 一级缓存（进程内）配置：TTL短于Redis，跨节点失效依靠发布订阅，TTL兜底
+        Map<String, LocalCacheSpec> localSpecs = new HashMap<>();
+        
+        // 分类几乎不变（缓存10分钟）
+        localSpecs.put("categories", new LocalCacheSpec(Duration.ofMinutes(10), 1000, 8L * 1024 * 1024));
+        
+        // 商品详情（缓存1分钟）
+        localSpecs.put("products", new LocalCacheSpec(Duration.ofMinutes(1), 10000, 64L * 1024 * 1024));
+        
+        // 用户信息（缓存5分钟）
+        localSpecs.put("users", new LocalCacheSpec(Duration.ofMinutes(5), 10000, 16L * 1024 * 1024));
+        
+        LocalCacheSpec defaultLocalSpec = new LocalCacheSpec(Duration.ofMinutes(1), 1000, 8L * 1024 * 1024);
+        
+        TwoLevelCacheManager cacheManager = new TwoLevelCacheManager(redisCacheManager, localSpecs, defaultLocalSpec,
+                new StringRedisTemplate(redisConnectionFactory));
+        cacheManager.setTransactionAware(true);
+        return cacheManager;
+    }
+    
+    /**
+     * 订阅一级缓存失效通知
+     */
+    @Bean
+    public RedisMessageListenerContainer cacheInvalidationListenerContainer(RedisConnectionFactory redisConnectionFactory,
+                                                                            TwoLevelCacheManager cacheManager) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        container.addMessageListener(cacheManager, new ChannelTopic(TwoLevelCacheManager.INVALIDATION_CHANNEL));
+        return container;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,132 @@
+package com.fliliy.secondhand.config;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 一级缓存（进程内）区域：保存序列化后的字节，按条目数和字节数双重限制，LRU淘汰，条目按TTL过期
+ * 写入和失效递增key所在分段的代数，从Redis或加载器取值期间代数变化时不写入，避免旧值覆盖失效
+ */
+public class LocalCacheRegion {
+
+    private static final int STRIPES = 64;
+
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final long maxBytes;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes = 0;
+    private long capacityEvictions = 0;
+    private final long[] generations = new long[STRIPES];
+
+    public LocalCacheRegion(Duration ttl, int maxEntries, long maxBytes) {
+        this.ttlMillis = ttl.toMillis();
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    public synchronized byte[] get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt < System.currentTimeMillis()) {
+            remove(key);
+            return null;
+        }
+        return entry.value;
+    }
+
+    /**
+     * 取值前调用，返回key当前的代数
+     */
+    public synchronized long generation(String key) {
+        return generations[stripe(key)];
+    }
+
+    public synchronized void put(String key, byte[] value) {
+        generations[stripe(key)]++;
+        store(key, value);
+    }
+
+    /**
+     * 自取得代数以来key未被写入或失效时写入，返回是否写入
+     */
+    public synchronized boolean putIfUnchanged(String key, byte[] value, long generation) {
+        if (generations[stripe(key)] != generation) {
+            return false;
+        }
+        store(key, value);
+        return true;
+    }
+
+    public synchronized void evict(String key) {
+        generations[stripe(key)]++;
+        remove(key);
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < STRIPES; i++) {
+            generations[i]++;
+        }
+        entries.clear();
+        totalBytes = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long bytes() {
+        return totalBytes;
+    }
+
+    public synchronized long capacityEvictions() {
+        return capacityEvictions;
+    }
+
+    private void store(String key, byte[] value) {
+        // 单个条目超过区域容量时不放入一级缓存
+        if (value.length > maxBytes) {
+            remove(key);
+            return;
+        }
+
+        Entry previous = entries.put(key, new Entry(value, System.currentTimeMillis() + ttlMillis));
+        if (previous != null) {
+            totalBytes -= previous.value.length;
+        }
+        totalBytes += value.length;
+
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || totalBytes > maxBytes) && eldest.hasNext()) {
+            totalBytes -= eldest.next().getValue().value.length;
+            eldest.remove();
+            capacityEvictions++;
+        }
+    }
+
+    private void remove(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            totalBytes -= removed.value.length;
+        }
+    }
+
+    private static int stripe(String key) {
+        return key.hashCode() & (STRIPES - 1);
+    }
+
+    private static final class Entry {
+        private final byte[] value;
+        private final long expiresAt;
+
+        private Entry(byte[] value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
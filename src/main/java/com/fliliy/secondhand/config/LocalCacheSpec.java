@@ -0,0 +1,18 @@
+package com.fliliy.secondhand.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * 一级缓存区配置：过期时间、最大条目数、最大字节数（按序列化后的字节计）
+ */
+@Getter
+@AllArgsConstructor
+public class LocalCacheSpec {
+    
+    private final Duration ttl;
+    private final int maxEntries;
+    private final long maxBytes;
+}
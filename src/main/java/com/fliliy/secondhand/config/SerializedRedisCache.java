@@ -0,0 +1,52 @@
+package com.fliliy.secondhand.config;
+
+import org.springframework.cache.Cache;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+
+/**
+ * 可按序列化后的字节读写的Redis缓存，供二级缓存在一级缓存中保存字节
+ * 字节长度即一级缓存的占用大小，无需再次序列化估算；每次读取反序列化出新对象，调用方之间不共享实例
+ */
+public class SerializedRedisCache extends RedisCache {
+
+    public SerializedRedisCache(String name, RedisCacheWriter cacheWriter, RedisCacheConfiguration cacheConfig) {
+        super(name, cacheWriter, cacheConfig);
+    }
+
+    /**
+     * 读取序列化后的值，不存在时返回null
+     */
+    public byte[] getSerialized(Object key) {
+        return getNativeCache().get(getName(), serializeCacheKey(createCacheKey(key)));
+    }
+
+    /**
+     * 写入已序列化的值，过期时间按缓存区配置
+     */
+    public void putSerialized(Object key, byte[] value) {
+        getNativeCache().put(getName(), serializeCacheKey(createCacheKey(key)), value,
+                getCacheConfiguration().getTtl());
+    }
+
+    /**
+     * 按缓存区的序列化方式序列化（空值按配置转换为空值标记）
+     */
+    public byte[] serialize(Object value) {
+        Object cacheValue = preProcessCacheValue(value);
+        if (cacheValue == null) {
+            throw new IllegalArgumentException(String.format(
+                    "Cache '%s' does not allow 'null' values. Avoid storing null via '@Cacheable(unless=\"#result == null\")' "
+                            + "or configure RedisCache to allow 'null' via RedisCacheConfiguration.", getName()));
+        }
+        return serializeCacheValue(cacheValue);
+    }
+
+    /**
+     * 反序列化为缓存值
+     */
+    public Cache.ValueWrapper deserialize(byte[] value) {
+        return toValueWrapper(deserializeCacheValue(value));
+    }
+}
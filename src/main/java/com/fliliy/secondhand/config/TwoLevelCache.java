@@ -0,0 +1,187 @@
+package com.fliliy.secondhand.config;
+
+import org.springframework.cache.Cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 二级缓存：进程内一级缓存在前，Redis缓存在后
+ * 一级缓存保存从Redis读到（或写入Redis）的字节，每次命中反序列化出新对象，调用方修改返回值不影响缓存
+ * 写入和失效同时作用于两级，并通知其他节点清除各自的一级缓存
+ * 带加载器的读取按key加锁，同一节点同一key只有一个线程执行加载；加载期间该key被失效时不写回缓存
+ */
+public class TwoLevelCache implements Cache {
+
+    private final String name;
+    private final SerializedRedisCache remote;
+    private final LocalCacheRegion local;
+    private final TwoLevelCacheManager manager;
+
+    private final LongAdder localHits = new LongAdder();
+    private final LongAdder remoteHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder puts = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    // 正在加载的key
+    private final Map<String, Object> loadLocks = new ConcurrentHashMap<>();
+
+    public TwoLevelCache(String name, SerializedRedisCache remote, LocalCacheRegion local,
+                         TwoLevelCacheManager manager) {
+        this.name = name;
+        this.remote = remote;
+        this.local = local;
+        this.manager = manager;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return remote.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        String localKey = toLocalKey(key);
+        byte[] cached = local.get(localKey);
+        if (cached != null) {
+            localHits.increment();
+            return remote.deserialize(cached);
+        }
+
+        long generation = local.generation(localKey);
+        byte[] loaded = remote.getSerialized(key);
+        if (loaded != null) {
+            remoteHits.increment();
+            local.putIfUnchanged(localKey, loaded, generation);
+            return remote.deserialize(loaded);
+        }
+
+        misses.increment();
+        return null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper != null ? wrapper.get() : null;
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException(
+                    "Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper wrapper = get(key);
+        if (wrapper != null) {
+            return (T) wrapper.get();
+        }
+
+        String localKey = toLocalKey(key);
+        Object lock = loadLocks.computeIfAbsent(localKey, k -> new Object());
+        try {
+            synchronized (lock) {
+                // 等待期间其他线程可能已加载完成
+                long generation = local.generation(localKey);
+                wrapper = get(key);
+                if (wrapper != null) {
+                    return (T) wrapper.get();
+                }
+
+                T value;
+                try {
+                    value = valueLoader.call();
+                } catch (Exception e) {
+                    throw new ValueRetrievalException(key, valueLoader, e);
+                }
+
+                byte[] serialized = remote.serialize(value);
+                if (local.putIfUnchanged(localKey, serialized, generation)) {
+                    remote.putSerialized(key, serialized);
+                    puts.increment();
+                    manager.publishEviction(name, localKey);
+                }
+                return value;
+            }
+        } finally {
+            loadLocks.remove(localKey, lock);
+        }
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        byte[] serialized = remote.serialize(value);
+        remote.putSerialized(key, serialized);
+        local.put(toLocalKey(key), serialized);
+        puts.increment();
+        manager.publishEviction(name, toLocalKey(key));
+    }
+
+    @Override
+    public void evict(Object key) {
+        remote.evict(key);
+        local.evict(toLocalKey(key));
+        evictions.increment();
+        manager.publishEviction(name, toLocalKey(key));
+    }
+
+    @Override
+    public void clear() {
+        remote.clear();
+        local.clear();
+        evictions.increment();
+        manager.publishClear(name);
+    }
+
+    /**
+     * 其他节点通知：只清除本地一级缓存
+     */
+    void evictLocal(String localKey) {
+        local.evict(localKey);
+    }
+
+    void clearLocal() {
+        local.clear();
+    }
+
+    /**
+     * 命中率等统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        long localHitCount = localHits.sum();
+        long remoteHitCount = remoteHits.sum();
+        long missCount = misses.sum();
+        long requests = localHitCount + remoteHitCount + missCount;
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("requests", requests);
+        stats.put("l1Hits", localHitCount);
+        stats.put("l2Hits", remoteHitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRate", requests == 0 ? 0.0 : (double) (localHitCount + remoteHitCount) / requests);
+        stats.put("l1HitRate", requests == 0 ? 0.0 : (double) localHitCount / requests);
+        stats.put("puts", puts.sum());
+        stats.put("evictions", evictions.sum());
+        stats.put("l1Size", local.size());
+        stats.put("l1Bytes", local.bytes());
+        stats.put("l1CapacityEvictions", local.capacityEvictions());
+        return stats;
+    }
+
+    // Redis缓存同样以字符串形式保存key，一级缓存保持一致以便跨节点按key失效
+    private static String toLocalKey(Object key) {
+        return String.valueOf(key);
+    }
+}
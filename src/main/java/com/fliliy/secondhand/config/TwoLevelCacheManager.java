@@ -0,0 +1,139 @@
+package com.fliliy.secondhand.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.transaction.AbstractTransactionSupportingCacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheDecorator;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * 二级缓存管理器：每个缓存区在Redis缓存前加一层进程内缓存
+ * Redis缓存管理器需创建SerializedRedisCache；一级缓存失效通过Redis发布订阅广播到其他节点
+ */
+@Slf4j
+public class TwoLevelCacheManager extends AbstractTransactionSupportingCacheManager implements MessageListener {
+
+    public static final String INVALIDATION_CHANNEL = "cache:l1-invalidation";
+
+    private static final String SEPARATOR = "|";
+    private static final String OP_EVICT = "E";
+    private static final String OP_CLEAR = "C";
+
+    private final CacheManager remoteCacheManager;
+    private final Map<String, LocalCacheSpec> localSpecs;
+    private final LocalCacheSpec defaultLocalSpec;
+    private final StringRedisTemplate redisTemplate;
+
+    // 区分本节点发出的失效通知
+    private final String nodeId = UUID.randomUUID().toString();
+
+    public TwoLevelCacheManager(CacheManager remoteCacheManager,
+                                Map<String, LocalCacheSpec> localSpecs,
+                                LocalCacheSpec defaultLocalSpec,
+                                StringRedisTemplate redisTemplate) {
+        this.remoteCacheManager = remoteCacheManager;
+        this.localSpecs = localSpecs;
+        this.defaultLocalSpec = defaultLocalSpec;
+        this.redisTemplate = redisTemplate;
+    }
+
+    @Override
+    protected Collection<? extends Cache> loadCaches() {
+        List<Cache> caches = new ArrayList<>();
+        for (String name : remoteCacheManager.getCacheNames()) {
+            Cache remote = remoteCacheManager.getCache(name);
+            if (remote != null) {
+                caches.add(createCache(name, remote));
+            }
+        }
+        return caches;
+    }
+
+    @Override
+    protected Cache getMissingCache(String name) {
+        Cache remote = remoteCacheManager.getCache(name);
+        return remote != null ? createCache(name, remote) : null;
+    }
+
+    /**
+     * 各缓存区统计信息
+     */
+    public Map<String, Map<String, Object>> getStatistics() {
+        Map<String, Map<String, Object>> statistics = new TreeMap<>();
+        for (String name : getCacheNames()) {
+            TwoLevelCache cache = lookupTwoLevelCache(name);
+            if (cache != null) {
+                statistics.put(name, cache.getStatistics());
+            }
+        }
+        return statistics;
+    }
+
+    /**
+     * 通知其他节点清除一级缓存中的指定key
+     */
+    void publishEviction(String cacheName, String key) {
+        publish(OP_EVICT + SEPARATOR + nodeId + SEPARATOR + cacheName + SEPARATOR + key);
+    }
+
+    /**
+     * 通知其他节点清空一级缓存区
+     */
+    void publishClear(String cacheName) {
+        publish(OP_CLEAR + SEPARATOR + nodeId + SEPARATOR + cacheName + SEPARATOR);
+    }
+
+    /**
+     * 接收其他节点的一级缓存失效通知
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split("\\|", 4);
+        if (parts.length < 4 || nodeId.equals(parts[1])) {
+            return;
+        }
+
+        TwoLevelCache cache = lookupTwoLevelCache(parts[2]);
+        if (cache == null) {
+            return;
+        }
+
+        if (OP_CLEAR.equals(parts[0])) {
+            cache.clearLocal();
+        } else {
+            cache.evictLocal(parts[3]);
+        }
+    }
+
+    private TwoLevelCache createCache(String name, Cache remote) {
+        if (!(remote instanceof SerializedRedisCache)) {
+            throw new IllegalStateException("Cache '" + name + "' is not a SerializedRedisCache: " + remote.getClass().getName());
+        }
+        LocalCacheSpec spec = localSpecs.getOrDefault(name, defaultLocalSpec);
+        LocalCacheRegion region = new LocalCacheRegion(spec.getTtl(), spec.getMaxEntries(), spec.getMaxBytes());
+        return new TwoLevelCache(name, (SerializedRedisCache) remote, region, this);
+    }
+
+    private TwoLevelCache lookupTwoLevelCache(String name) {
+        Cache cache = lookupCache(name);
+        if (cache instanceof TransactionAwareCacheDecorator) {
+            cache = ((TransactionAwareCacheDecorator) cache).getTargetCache();
+        }
+        return cache instanceof TwoLevelCache ? (TwoLevelCache) cache : null;
+    }
+
+    private void publish(String message) {
+        try {
+            redisTemplate.convertAndSend(INVALIDATION_CHANNEL, message);
+        } catch (Exception e) {
+            // 发布失败时其他节点的一级缓存依靠TTL过期
+            log.warn("Publish cache invalidation failed: {}", e.getMessage());
+        }
+    }
+}
@@ -3,12 +3,15 @@ package com.fliliy.secondhand.controller;
 import com.fliliy.secondhand.common.ApiResponse;
 import com.fliliy.secondhand.entity.Category;
 import com.fliliy.secondhand.service.CategoryService;
+import com.fliliy.secondhand.util.ETagUtils;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import javax.servlet.http.HttpServletRequest;
 import java.util.List;
 
 @RestController
@@ -21,15 +24,40 @@ public class CategoryController {
     
     /**
      * 获取商品分类树结构
+     * 分类树有缓存；If-None-Match与分类树版本一致时直接返回304，不再序列化
      */
     @GetMapping
-    public ApiResponse<List<Category>> getCategories() {
+    public ResponseEntity<ApiResponse<List<Category>>> getCategories(HttpServletRequest request) {
         try {
             List<Category> categories = categoryService.getCategoryTree();
-            return ApiResponse.success("获取成功", categories);
+            String etag = ETagUtils.weak(treeVersion(categories));
+            if (ETagUtils.isNotModified(request, etag)) {
+                return ETagUtils.notModified(etag);
+            }
+            return ETagUtils.ok(etag).body(ApiResponse.success("获取成功", categories));
         } catch (Exception e) {
             log.error("Get categories failed", e);
-            return ApiResponse.error("获取分类失败: " + e.getMessage());
+            return ResponseEntity.ok(ApiResponse.error("获取分类失败: " + e.getMessage()));
         }
     }
-}
\ No newline at end of file
+    
+    // 分类树版本：各分类的ID、更新时间和商品数（商品数写回不更新updated_at）
+    private String treeVersion(List<Category> categories) {
+        StringBuilder version = new StringBuilder();
+        appendVersion(version, categories);
+        return version.toString();
+    }
+    
+    private void appendVersion(StringBuilder version, List<Category> categories) {
+        if (categories == null) {
+            return;
+        }
+        for (Category category : categories) {
+            version.append(category.getId()).append(':')
+                    .append(category.getUpdatedAt()).append(':')
+                    .append(category.getProductCount()).append('[');
+            appendVersion(version, category.getChildren());
+            version.append(']');
+        }
+    }
+}
@@ -9,16 +9,19 @@ import com.fliliy.secondhand.dto.response.UploadResponse;
 import com.fliliy.secondhand.entity.ChatMessage;
 import com.fliliy.secondhand.entity.ChatRoom;
 import com.fliliy.secondhand.entity.Product;
-import com.fliliy.secondhand.entity.User;
+import com.fliliy.secondhand.repository.UserSummaryRow;
 import com.fliliy.secondhand.service.ChatService;
 import com.fliliy.secondhand.service.FileService;
 import com.fliliy.secondhand.service.ProductService;
-import com.fliliy.secondhand.service.UserService;
+import com.fliliy.secondhand.service.ResourceVersionService;
+import com.fliliy.secondhand.service.UserSummaryCache;
+import com.fliliy.secondhand.util.ETagUtils;
 import com.fliliy.secondhand.util.JwtUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
 import org.springframework.format.annotation.DateTimeFormat;
 
 import java.util.ArrayList;
@@ -29,6 +32,7 @@ import org.springframework.web.multipart.MultipartFile;
 import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
 import java.time.LocalDateTime;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -43,9 +47,6 @@ public class ChatController {
     @Autowired
     private ChatService chatService;
     
-    @Autowired
-    private UserService userService;
-    
     @Autowired
     private ProductService productService;
     
@@ -55,6 +56,12 @@ public class ChatController {
     @Autowired
     private JwtUtil jwtUtil;
     
+    @Autowired
+    private ResourceVersionService resourceVersionService;
+    
+    @Autowired
+    private UserSummaryCache userSummaryCache;
+    
     /**
      * 创建或获取聊天室（直接指定卖家ID - 用于测试）
      */
@@ -127,8 +134,12 @@ public class ChatController {
             Long userId = getCurrentUserId(request);
             Page<ChatRoom> chatRooms = chatService.getChatList(userId, page, size);
             
+            // 聊天对象一次批量查询
+            Map<Long, UserSummaryRow> participants = userSummaryCache.getSummaries(chatRooms.getContent().stream()
+                    .map(room -> room.getOtherParticipant(userId))
+                    .collect(Collectors.toSet()));
             List<ChatRoomResponse> chatList = chatRooms.getContent().stream()
-                    .map(room -> convertToChatRoomResponse(room, userId))
+                    .map(room -> convertToChatRoomResponse(room, userId, participants))
                     .collect(Collectors.toList());
             
             PagedResponse<ChatRoomResponse> response = PagedResponse.of(chatList, chatRooms);
@@ -148,21 +159,23 @@ public class ChatController {
                                                       @RequestParam(defaultValue = "1") int page,
                                                       @RequestParam(defaultValue = "20") int size,
                                                       @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime before,
+                                                      @RequestParam(required = false) Long beforeSeq,
+                                                      @RequestParam(required = false) Long afterSeq,
                                                       HttpServletRequest request) {
         try {
             Long userId = getCurrentUserId(request);
-            Page<ChatMessage> messages = chatService.getChatMessages(chatRoomId, userId, page, size, before);
+            Slice<ChatMessageResponse> messages = chatService.getChatMessageResponses(chatRoomId, userId, page, size, before, beforeSeq, afterSeq);
             
             // 获取聊天室信息
             ChatRoom chatRoom = chatService.getChatRoomById(chatRoomId);
-            User participant = chatService.getChatRoomParticipant(chatRoomId, userId);
+            UserSummaryRow participant = userSummaryCache.getSummary(chatRoom.getOtherParticipant(userId));
+            if (participant == null) {
+                throw new RuntimeException("聊天对象不存在");
+            }
             // 获取聊天室讨论的商品列表
             List<Long> discussedProducts = chatService.getDiscussedProducts(chatRoomId, userId);
             
-            // 转换消息列表
-            List<ChatMessageResponse> messageList = messages.getContent().stream()
-                    .map(msg -> convertToChatMessageResponse(msg, userId))
-                    .collect(Collectors.toList());
+            List<ChatMessageResponse> messageList = messages.getContent();
             
             // 构建讨论的商品列表
             List<Map<String, Object>> productsData = new ArrayList<>();
@@ -195,7 +208,18 @@ public class ChatController {
             paginationMap.put("page", messages.getNumber() + 1);
             paginationMap.put("size", messages.getSize());
             paginationMap.put("hasMore", messages.hasNext());
-            paginationMap.put("oldestTimestamp", messageList.isEmpty() ? null : messageList.get(messageList.size() - 1).getSentAt());
+            // afterSeq补齐时消息按序号正序，其余按倒序
+            ChatMessageResponse oldest = null;
+            ChatMessageResponse newest = null;
+            if (!messageList.isEmpty()) {
+                ChatMessageResponse first = messageList.get(0);
+                ChatMessageResponse last = messageList.get(messageList.size() - 1);
+                oldest = afterSeq != null ? first : last;
+                newest = afterSeq != null ? last : first;
+            }
+            paginationMap.put("oldestTimestamp", oldest != null ? oldest.getSentAt() : null);
+            paginationMap.put("oldestSeq", oldest != null ? oldest.getSeq() : null);
+            paginationMap.put("newestSeq", newest != null ? newest.getSeq() : null);
             
             Map<String, Object> responseData = new HashMap<>();
             responseData.put("chatInfo", chatInfoMap);
@@ -323,16 +347,23 @@ public class ChatController {
     
     /**
      * 获取未读消息总数
+     * If-None-Match与该用户未读数版本一致时直接返回304，不查询数据库
      */
     @GetMapping("/unread-count")
     public ResponseEntity<ApiResponse> getUnreadCount(HttpServletRequest request) {
         try {
             Long userId = getCurrentUserId(request);
+            String etag = ETagUtils.weak(
+                    resourceVersionService.getVersion(ResourceVersionService.unreadCount(userId)), userId);
+            if (ETagUtils.isNotModified(request, etag)) {
+                return ETagUtils.notModified(etag);
+            }
+            
             Long unreadCount = chatService.getTotalUnreadCount(userId);
             
             Map<String, Object> responseData = new HashMap<>();
             responseData.put("unreadCount", unreadCount);
-            return ResponseEntity.ok(ApiResponse.success(responseData));
+            return ETagUtils.ok(etag).body(ApiResponse.success(responseData));
         } catch (Exception e) {
             logger.error("获取未读消息数失败", e);
             return ResponseEntity.ok(ApiResponse.error(e.getMessage()));
@@ -350,9 +381,7 @@ public class ChatController {
             Long userId = getCurrentUserId(request);
             List<ChatMessage> messages = chatService.searchMessages(chatRoomId, userId, keyword);
             
-            List<ChatMessageResponse> messageList = messages.stream()
-                    .map(msg -> convertToChatMessageResponse(msg, userId))
-                    .collect(Collectors.toList());
+            List<ChatMessageResponse> messageList = chatService.toHistoryResponses(messages, userId);
             
             return ResponseEntity.ok(ApiResponse.success(messageList));
         } catch (Exception e) {
@@ -370,9 +399,7 @@ public class ChatController {
             Long userId = getCurrentUserId(request);
             List<ChatMessage> messages = chatService.getImageMessages(chatRoomId, userId);
             
-            List<ChatMessageResponse> messageList = messages.stream()
-                    .map(msg -> convertToChatMessageResponse(msg, userId))
-                    .collect(Collectors.toList());
+            List<ChatMessageResponse> messageList = chatService.toHistoryResponses(messages, userId);
             
             return ResponseEntity.ok(ApiResponse.success(messageList));
         } catch (Exception e) {
@@ -537,6 +564,11 @@ public class ChatController {
     }
     
     private ChatRoomResponse convertToChatRoomResponse(ChatRoom chatRoom, Long currentUserId) {
+        return convertToChatRoomResponse(chatRoom, currentUserId,
+                userSummaryCache.getSummaries(Collections.singleton(chatRoom.getOtherParticipant(currentUserId))));
+    }
+    
+    private ChatRoomResponse convertToChatRoomResponse(ChatRoom chatRoom, Long currentUserId, Map<Long, UserSummaryRow> participants) {
         ChatRoomResponse response = new ChatRoomResponse();
         response.setChatRoomId(chatRoom.getId());
         response.setTransactionId(chatRoom.getTransactionId());
@@ -569,7 +601,10 @@ public class ChatController {
         try {
             Long participantId = currentUserId.equals(chatRoom.getBuyerId()) ? 
                 chatRoom.getSellerId() : chatRoom.getBuyerId();
-            User participant = userService.getUserById(participantId);
+            UserSummaryRow participant = participants.get(participantId);
+            if (participant == null) {
+                throw new RuntimeException("用户不存在");
+            }
             ChatRoomResponse.ParticipantInfo participantInfo = new ChatRoomResponse.ParticipantInfo();
             participantInfo.setId(participant.getId());
             participantInfo.setUsername(participant.getUsername());
@@ -593,44 +628,4 @@ public class ChatController {
         
         return response;
     }
-    
-    private ChatMessageResponse convertToChatMessageResponse(ChatMessage message, Long currentUserId) {
-        ChatMessageResponse response = new ChatMessageResponse();
-        response.setId(message.getId());
-        response.setSenderId(message.getSenderId());
-        response.setType(message.getMessageType().toString());
-        response.setContent(message.getDisplayContent());
-        response.setSentAt(message.getSentAt());
-        response.setIsFromMe(message.getSenderId() != null && currentUserId.equals(message.getSenderId()));
-        response.setStatus(message.getStatus().toString());
-        response.setIsRecalled(message.getIsRecalled());
-        response.setRecalledAt(message.getRecalledAt());
-        
-        // 设置发送者姓名
-        if (message.getSenderId() != null) {
-            try {
-                User sender = userService.getUserById(message.getSenderId());
-                response.setSenderName(sender.getUsername());
-            } catch (Exception e) {
-                response.setSenderName("未知用户");
-            }
-        } else {
-            response.setSenderName("系统");
-        }
-        
-        // 图片消息相关字段
-        if (message.getMessageType() == ChatMessage.MessageType.IMAGE) {
-            response.setThumbnail(message.getThumbnailUrl());
-            if (message.getImageWidth() != null && message.getImageHeight() != null) {
-                response.setImageSize(new ChatMessageResponse.ImageSize(message.getImageWidth(), message.getImageHeight()));
-            }
-        }
-        
-        // 语音消息相关字段
-        if (message.getMessageType() == ChatMessage.MessageType.VOICE) {
-            response.setDuration(message.getDuration());
-        }
-        
-        return response;
-    }
 }
\ No newline at end of file
@@ -1,6 +1,10 @@
 package com.fliliy.secondhand.controller;
 
 import com.fliliy.secondhand.common.ApiResponse;
+import com.fliliy.secondhand.config.TwoLevelCacheManager;
+import com.fliliy.secondhand.service.ProductDetailLoader;
+import lombok.RequiredArgsConstructor;
+import org.springframework.cache.CacheManager;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
 
@@ -9,8 +13,12 @@ import java.util.HashMap;
 import java.util.Map;
 
 @RestController
+@RequiredArgsConstructor
 public class HealthController {
     
+    private final CacheManager cacheManager;
+    private final ProductDetailLoader productDetailLoader;
+    
     @GetMapping("/health")
     public ApiResponse<Map<String, Object>> health() {
         Map<String, Object> data = new HashMap<>();
@@ -21,4 +29,23 @@ public class HealthController {
         
         return ApiResponse.success("Service is running", data);
     }
-}
\ No newline at end of file
+    
+    /**
+     * 缓存命中统计（按缓存区）
+     */
+    @GetMapping("/health/caches")
+    public ApiResponse<Map<String, Map<String, Object>>> cacheStatistics() {
+        if (!(cacheManager instanceof TwoLevelCacheManager)) {
+            return ApiResponse.success("获取成功", new HashMap<>());
+        }
+        return ApiResponse.success("获取成功", ((TwoLevelCacheManager) cacheManager).getStatistics());
+    }
+    
+    /**
+     * 商品详情加载各阶段耗时统计
+     */
+    @GetMapping("/health/product-detail")
+    public ApiResponse<Map<String, Map<String, Object>>> productDetailStatistics() {
+        return ApiResponse.success("获取成功", productDetailLoader.getStatistics());
+    }
+}
@@ -5,22 +5,37 @@ import com.fliliy.secondhand.dto.request.ProductQueryRequest;
 import com.fliliy.secondhand.dto.request.PublishProductRequest;
 import com.fliliy.secondhand.dto.response.PagedResponse;
 import com.fliliy.secondhand.dto.response.ProductDetailResponse;
+import com.fliliy.secondhand.dto.response.ProductSuggestionResponse;
+import com.fliliy.secondhand.dto.response.TrendingKeywordResponse;
 import com.fliliy.secondhand.dto.response.ProductSummaryResponse;
 import com.fliliy.secondhand.dto.response.UploadResponse;
 import com.fliliy.secondhand.service.FileService;
+import com.fliliy.secondhand.service.ProductFeedCache;
 import com.fliliy.secondhand.service.ProductService;
+import com.fliliy.secondhand.service.ProductSuggestIndex;
+import com.fliliy.secondhand.service.ResourceVersionService;
+import com.fliliy.secondhand.service.SearchKeywordTracker;
+import com.fliliy.secondhand.util.ETagUtils;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
 import java.time.LocalDateTime;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/products")
@@ -28,8 +43,15 @@ import java.util.Map;
 @Slf4j
 public class ProductController {
     
+    // 排序依赖浏览量，浏览量写回不递增版本号，这些排序不使用ETag
+    private static final Set<String> UNVERSIONED_SORTS = new HashSet<>(Arrays.asList("hot", "view_desc"));
+    
     private final ProductService productService;
     private final FileService fileService;
+    private final ProductFeedCache productFeedCache;
+    private final ResourceVersionService resourceVersionService;
+    private final ProductSuggestIndex productSuggestIndex;
+    private final SearchKeywordTracker searchKeywordTracker;
     
     /**
      * 上传商品图片
@@ -74,47 +96,103 @@ public class ProductController {
     
     /**
      * 获取商品列表（主页/搜索/筛选）
+     * 匿名用户访问常用列表首页时直接返回缓存的响应字节；If-None-Match与当前版本一致时直接返回304
      */
     @GetMapping
-    public ApiResponse<PagedResponse<ProductSummaryResponse>> getProducts(
+    public ResponseEntity<?> getProducts(
             @Valid ProductQueryRequest request,
-            @AuthenticationPrincipal UserDetails userDetails) {
+            @AuthenticationPrincipal UserDetails userDetails,
+            HttpServletRequest httpRequest) {
         try {
             // 验证价格区间
             if (!request.isPriceRangeValid()) {
-                return ApiResponse.error("价格区间设置不正确");
+                return ResponseEntity.ok(ApiResponse.error("价格区间设置不正确"));
             }
             
             // 验证地理位置参数
             if (!request.isLocationValid()) {
-                return ApiResponse.error("地理位置参数不完整");
+                return ResponseEntity.ok(ApiResponse.error("地理位置参数不完整"));
             }
             
             Long currentUserId = userDetails != null ? Long.valueOf(userDetails.getUsername()) : null;
+            String etag = UNVERSIONED_SORTS.contains(request.getSort()) ? null : ETagUtils.weak(
+                    resourceVersionService.getVersion(ResourceVersionService.PRODUCTS), request, currentUserId);
+            if (ETagUtils.isNotModified(httpRequest, etag)) {
+                return ETagUtils.notModified(etag);
+            }
+            
+            if (productFeedCache.isCacheable(request, currentUserId)) {
+                byte[] body = productFeedCache.getOrLoad(request,
+                        () -> ApiResponse.success("获取成功", productService.getProducts(request, null)));
+                return ETagUtils.ok(etag).contentType(MediaType.APPLICATION_JSON).body(body);
+            }
+            
             PagedResponse<ProductSummaryResponse> response = productService.getProducts(request, currentUserId);
             
-            return ApiResponse.success("获取成功", response);
+            return ETagUtils.ok(etag).body(ApiResponse.success("获取成功", response));
         } catch (Exception e) {
             log.error("Get products failed", e);
-            return ApiResponse.error("获取商品列表失败: " + e.getMessage());
+            return ResponseEntity.ok(ApiResponse.error("获取商品列表失败: " + e.getMessage()));
+        }
+    }
+    
+    /**
+     * 搜索联想词：按输入前缀返回分类名、标签和商品标题，支持拼音首字母
+     */
+    @GetMapping("/suggest")
+    public ApiResponse<List<ProductSuggestionResponse>> getSuggestions(
+            @RequestParam String keyword,
+            @RequestParam(defaultValue = "10") int limit) {
+        try {
+            return ApiResponse.success("获取成功", productSuggestIndex.suggest(keyword, limit));
+        } catch (Exception e) {
+            log.error("Get product suggestions failed: keyword={}", keyword, e);
+            return ApiResponse.error("获取联想词失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 热门搜索词（近期搜索次数估算值，按时间衰减）
+     */
+    @GetMapping("/trending-keywords")
+    public ApiResponse<List<TrendingKeywordResponse>> getTrendingKeywords(
+            @RequestParam(defaultValue = "10") int limit) {
+        try {
+            List<TrendingKeywordResponse> keywords = searchKeywordTracker.getTrending(Math.min(limit, 50)).stream()
+                    .map(entry -> new TrendingKeywordResponse(entry.getKey(), entry.getValue()))
+                    .collect(Collectors.toList());
+            return ApiResponse.success("获取成功", keywords);
+        } catch (Exception e) {
+            log.error("Get trending keywords failed", e);
+            return ApiResponse.error("获取热门搜索词失败: " + e.getMessage());
         }
     }
     
     /**
      * 获取商品详情
+     * If-None-Match与该商品、所属分类和卖家资料的当前版本一致时直接返回304，不加载详情，但仍计入浏览次数
      */
     @GetMapping("/{productId}")
-    public ApiResponse<ProductDetailResponse> getProductDetail(
+    public ResponseEntity<ApiResponse<ProductDetailResponse>> getProductDetail(
             @PathVariable Long productId,
-            @AuthenticationPrincipal UserDetails userDetails) {
+            @AuthenticationPrincipal UserDetails userDetails,
+            HttpServletRequest httpRequest) {
         try {
             Long currentUserId = userDetails != null ? Long.valueOf(userDetails.getUsername()) : null;
+            String etag = ETagUtils.weak(
+                    resourceVersionService.getCombinedVersion(productService.getDetailVersionResources(productId)),
+                    "detail", productId, currentUserId);
+            if (ETagUtils.isNotModified(httpRequest, etag)) {
+                productService.recordView(productId);
+                return ETagUtils.notModified(etag);
+            }
+            
             ProductDetailResponse response = productService.getProductDetail(productId, currentUserId);
             
-            return ApiResponse.success("获取成功", response);
+            return ETagUtils.ok(etag).body(ApiResponse.success("获取成功", response));
         } catch (Exception e) {
             log.error("Get product detail failed: productId={}", productId, e);
-            return ApiResponse.error("获取商品详情失败: " + e.getMessage());
+            return ResponseEntity.ok(ApiResponse.error("获取商品详情失败: " + e.getMessage()));
         }
     }
     
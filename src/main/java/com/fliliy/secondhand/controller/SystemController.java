@@ -2,59 +2,37 @@ package com.fliliy.secondhand.controller;
 
 import com.fliliy.secondhand.common.ApiResponse;
 import com.fliliy.secondhand.dto.response.SystemConfigResponse;
+import com.fliliy.secondhand.util.ETagUtils;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletRequest;
+
 @RestController
 @RequestMapping("/system")
 @RequiredArgsConstructor
 @Slf4j
 public class SystemController {
     
+    // 配置内容固定，ETag启动时按内容计算一次
+    private final String configETag = ETagUtils.weak("system-config", buildSystemConfig());
+    
     /**
      * 获取系统配置（公开配置）
+     * If-None-Match与配置版本一致时直接返回304
      */
     @GetMapping("/config")
-    public ApiResponse<SystemConfigResponse> getSystemConfig() {
+    public ResponseEntity<ApiResponse<SystemConfigResponse>> getSystemConfig(HttpServletRequest request) {
+        if (ETagUtils.isNotModified(request, configETag)) {
+            return ETagUtils.notModified(configETag);
+        }
         try {
-            SystemConfigResponse config = new SystemConfigResponse();
-            config.setVersion("v2.0");
-            
-            // 上传配置
-            SystemConfigResponse.UploadConfig uploadConfig = new SystemConfigResponse.UploadConfig();
-            uploadConfig.setMaxImageCount(20);
-            uploadConfig.setMaxImageSize("10MB");
-            uploadConfig.setMaxVoiceDuration(60);
-            uploadConfig.setSupportedImageFormats(new String[]{"jpg", "jpeg", "png", "webp"});
-            uploadConfig.setSupportedVoiceFormats(new String[]{"aac", "mp3", "wav"});
-            config.setUpload(uploadConfig);
-            
-            // 短信配置
-            SystemConfigResponse.SmsConfig smsConfig = new SystemConfigResponse.SmsConfig();
-            smsConfig.setCodeLength(4);
-            smsConfig.setExpireMinutes(5);
-            smsConfig.setDailyLimit(10);
-            config.setSms(smsConfig);
-            
-            // 交易配置
-            SystemConfigResponse.TransactionConfig transactionConfig = new SystemConfigResponse.TransactionConfig();
-            transactionConfig.setCodeLength(4);
-            transactionConfig.setExpireHours(24);
-            config.setTransaction(transactionConfig);
-            
-            // 功能开关
-            SystemConfigResponse.FeaturesConfig featuresConfig = new SystemConfigResponse.FeaturesConfig();
-            featuresConfig.setLocationService(false);
-            featuresConfig.setAiEvaluation(false);
-            featuresConfig.setOnlinePayment(false);
-            featuresConfig.setPushNotification(true);
-            config.setFeatures(featuresConfig);
-            
-            return ApiResponse.success("获取成功", config);
+            return ETagUtils.ok(configETag).body(ApiResponse.success("获取成功", buildSystemConfig()));
         } catch (Exception e) {
             log.error("Get system config failed", e);
-            return ApiResponse.error("获取系统配置失败: " + e.getMessage());
+            return ResponseEntity.ok(ApiResponse.error("获取系统配置失败: " + e.getMessage()));
         }
     }
     
@@ -84,4 +62,41 @@ public class SystemController {
             return ApiResponse.error("获取版本信息失败: " + e.getMessage());
         }
     }
+    
+    private SystemConfigResponse buildSystemConfig() {
+        SystemConfigResponse config = new SystemConfigResponse();
+        config.setVersion("v2.0");
+        
+        // 上传配置
+        SystemConfigResponse.UploadConfig uploadConfig = new SystemConfigResponse.UploadConfig();
+        uploadConfig.setMaxImageCount(20);
+        uploadConfig.setMaxImageSize("10MB");
+        uploadConfig.setMaxVoiceDuration(60);
+        uploadConfig.setSupportedImageFormats(new String[]{"jpg", "jpeg", "png", "webp"});
+        uploadConfig.setSupportedVoiceFormats(new String[]{"aac", "mp3", "wav"});
+        config.setUpload(uploadConfig);
+        
+        // 短信配置
+        SystemConfigResponse.SmsConfig smsConfig = new SystemConfigResponse.SmsConfig();
+        smsConfig.setCodeLength(4);
+        smsConfig.setExpireMinutes(5);
+        smsConfig.setDailyLimit(10);
+        config.setSms(smsConfig);
+        
+        // 交易配置
+        SystemConfigResponse.TransactionConfig transactionConfig = new SystemConfigResponse.TransactionConfig();
+        transactionConfig.setCodeLength(4);
+        transactionConfig.setExpireHours(24);
+        config.setTransaction(transactionConfig);
+        
+        // 功能开关
+        SystemConfigResponse.FeaturesConfig featuresConfig = new SystemConfigResponse.FeaturesConfig();
+        featuresConfig.setLocationService(false);
+        featuresConfig.setAiEvaluation(false);
+        featuresConfig.setOnlinePayment(false);
+        featuresConfig.setPushNotification(true);
+        config.setFeatures(featuresConfig);
+        
+        return config;
+    }
 }
\ No newline at end of file
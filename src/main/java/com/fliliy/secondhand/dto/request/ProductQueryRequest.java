@@ -8,6 +8,8 @@ import java.math.BigDecimal;
 @Data
 public class ProductQueryRequest {
     
+    private static final int DEFAULT_RADIUS = 5000;
+    
     @Min(value = 1, message = "页码必须大于0")
     private Integer page = 1;
     
@@ -15,6 +17,17 @@ public class ProductQueryRequest {
     @Max(value = 50, message = "每页数量不能超过50")
     private Integer size = 4;
     
+    // 分页模式：offset（页码分页）或cursor（游标分页，适用于无限滚动，不返回总数）
+    @Pattern(regexp = "offset|cursor", message = "分页模式只能是offset或cursor")
+    private String pageMode = "offset";
+    
+    // 游标分页：上一页返回的nextCursor，为空表示第一页
+    @Size(max = 200, message = "分页游标不正确")
+    private String cursor;
+    
+    // 近似总数（页码分页）：不执行COUNT，只保证hasNext准确，total为已知的下限
+    private Boolean approximateTotal = false;
+    
     // 分类筛选
     @Min(value = 1, message = "分类ID必须大于0")
     private Integer categoryId;
@@ -27,8 +40,8 @@ public class ProductQueryRequest {
     @Pattern(regexp = "all|popular|discount|brand|accessories", message = "筛选条件只能是all、popular、discount、brand或accessories")
     private String filter;
     
-    // 排序方式
-    @Pattern(regexp = "time_desc|time_asc|price_asc|price_desc|view_desc|favorite_desc", 
+    // 排序方式（relevance：按关键词相关度排序；distance：按与传入坐标的距离排序；hot：按近期热度排序）
+    @Pattern(regexp = "time_desc|time_asc|price_asc|price_desc|view_desc|favorite_desc|relevance|distance|hot", 
              message = "排序方式不正确")
     private String sort = "time_desc";
     
@@ -57,7 +70,7 @@ public class ProductQueryRequest {
     
     @Min(value = 100, message = "搜索半径至少100米")
     @Max(value = 50000, message = "搜索半径最大50公里")
-    private Integer radius = 5000; // 默认5公里
+    private Integer radius = DEFAULT_RADIUS; // 默认5公里
     
     // 省市区筛选
     @Size(max = 50, message = "省份名称不能超过50字")
@@ -77,6 +90,16 @@ public class ProductQueryRequest {
     @Pattern(regexp = "ACTIVE|SOLD|INACTIVE|ALL", message = "商品状态值不正确")
     private String status = "ACTIVE";
     
+    // 搜索半径（米），客户端显式传空时按默认值
+    public Integer getRadius() {
+        return radius != null ? radius : DEFAULT_RADIUS;
+    }
+    
+    // 是否使用游标分页
+    public boolean isCursorMode() {
+        return "cursor".equals(pageMode);
+    }
+    
     // 验证价格区间
     public boolean isPriceRangeValid() {
         if (minPrice != null && maxPrice != null) {
@@ -7,6 +7,7 @@ import java.util.Map;
 public class ChatMessageResponse {
     
     private Long id;
+    private Long seq;
     private Long senderId;
     private String senderName;
     private String type;
@@ -74,6 +75,14 @@ public class ChatMessageResponse {
         this.id = id;
     }
     
+    public Long getSeq() {
+        return seq;
+    }
+    
+    public void setSeq(Long seq) {
+        this.seq = seq;
+    }
+    
     public Long getSenderId() {
         return senderId;
     }
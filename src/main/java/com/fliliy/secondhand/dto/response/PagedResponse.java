@@ -1,5 +1,6 @@
 package com.fliliy.secondhand.dto.response;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -45,6 +46,14 @@ public class PagedResponse<T> {
         private Boolean hasPrevious;
         private Boolean isFirst;
         private Boolean isLast;
+        
+        // 游标分页：下一页游标（无下一页时为空）
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        private String nextCursor;
+        
+        // 近似总数模式：total为估算值时为true
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        private Boolean approximate;
     }
     
     // 静态工厂方法
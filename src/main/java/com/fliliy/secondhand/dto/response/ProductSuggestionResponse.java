@@ -0,0 +1,15 @@
+package com.fliliy.secondhand.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductSuggestionResponse {
+    
+    private String text;    // 候选词
+    private String type;    // 来源：CATEGORY分类名、TAG标签、KEYWORD热门搜索词、TITLE商品标题
+    private Integer count;  // 关联的在售商品数
+}
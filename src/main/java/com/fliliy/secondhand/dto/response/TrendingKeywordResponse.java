@@ -0,0 +1,14 @@
+package com.fliliy.secondhand.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TrendingKeywordResponse {
+    
+    private String keyword;  // 搜索词（已归一化）
+    private Long count;      // 近期估算搜索次数（按时间衰减）
+}
@@ -5,7 +5,8 @@ import javax.persistence.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "chat_messages")
+@Table(name = "chat_messages",
+       uniqueConstraints = @UniqueConstraint(columnNames = {"chat_room_id", "seq"}))
 public class ChatMessage {
     
     @Id
@@ -14,6 +15,10 @@ public class ChatMessage {
     @Column(name = "chat_room_id", nullable = false)
     private Long chatRoomId;
     
+    // 聊天室内的消息序号，发送时分配，单调递增
+    @Column(name = "seq")
+    private Long seq;
+    
     @Column(name = "sender_id", nullable = false)
     private Long senderId;
     
@@ -251,6 +256,14 @@ public class ChatMessage {
         this.chatRoomId = chatRoomId;
     }
     
+    public Long getSeq() {
+        return seq;
+    }
+    
+    public void setSeq(Long seq) {
+        this.seq = seq;
+    }
+    
     public Long getSenderId() {
         return senderId;
     }
@@ -50,6 +50,27 @@ public class ChatRoom {
     @Column(name = "total_messages")
     private Integer totalMessages = 0;
     
+    // 已分配的最大消息序号，只通过ChatRoomRepository的序号分配语句递增
+    @Column(name = "message_seq", nullable = false, updatable = false)
+    private Long messageSeq = 0L;
+    
+    // 已读/已送达水位：买家/卖家已读（已送达）到对方发送的第几条消息，只通过ChatRoomRepository推进
+    @Column(name = "buyer_read_seq", nullable = false, updatable = false)
+    private Long buyerReadSeq = 0L;
+    
+    @Column(name = "seller_read_seq", nullable = false, updatable = false)
+    private Long sellerReadSeq = 0L;
+    
+    @Column(name = "buyer_delivered_seq", nullable = false, updatable = false)
+    private Long buyerDeliveredSeq = 0L;
+    
+    @Column(name = "seller_delivered_seq", nullable = false, updatable = false)
+    private Long sellerDeliveredSeq = 0L;
+    
+    // 消息状态版本：撤回消息、推进已读/已送达水位时递增，供最近消息缓存判断缓冲是否过期，只通过ChatRoomRepository递增
+    @Column(name = "state_version", nullable = false, updatable = false)
+    private Long stateVersion = 0L;
+    
     // 高级功能字段
     @Column(name = "buyer_pinned")
     private Boolean buyerPinned = false;
@@ -141,6 +162,46 @@ public class ChatRoom {
         }
     }
     
+    /**
+     * 由接收方的已读/已送达水位得出消息状态；系统消息、发送失败的消息和没有序号的消息使用消息自身的状态
+     */
+    public ChatMessage.MessageStatus getMessageStatus(ChatMessage message) {
+        ChatMessage.MessageStatus stored = message.getStatus();
+        if (message.getSenderId() == null || message.getSeq() == null
+                || stored == ChatMessage.MessageStatus.FAILED || stored == ChatMessage.MessageStatus.SENDING) {
+            return stored;
+        }
+        
+        Long recipientId = getOtherParticipant(message.getSenderId());
+        if (recipientId == null) {
+            return stored;
+        }
+        long readSeq = getReadSeqOf(recipientId);
+        if (message.getSeq() <= readSeq) {
+            return ChatMessage.MessageStatus.READ;
+        }
+        if (message.getSeq() <= getDeliveredSeqOf(recipientId)) {
+            return ChatMessage.MessageStatus.DELIVERED;
+        }
+        return ChatMessage.MessageStatus.SENT;
+    }
+    
+    /**
+     * 用户已读到的消息序号
+     */
+    public long getReadSeqOf(Long userId) {
+        Long seq = userId.equals(buyerId) ? buyerReadSeq : userId.equals(sellerId) ? sellerReadSeq : null;
+        return seq != null ? seq : 0L;
+    }
+    
+    /**
+     * 用户已送达的消息序号（已读的消息一定已送达）
+     */
+    public long getDeliveredSeqOf(Long userId) {
+        Long seq = userId.equals(buyerId) ? buyerDeliveredSeq : userId.equals(sellerId) ? sellerDeliveredSeq : null;
+        return Math.max(seq != null ? seq : 0L, getReadSeqOf(userId));
+    }
+    
     public boolean isParticipant(Long userId) {
         return userId.equals(buyerId) || userId.equals(sellerId);
     }
@@ -303,6 +364,54 @@ public class ChatRoom {
         this.totalMessages = totalMessages;
     }
     
+    public Long getMessageSeq() {
+        return messageSeq;
+    }
+    
+    public void setMessageSeq(Long messageSeq) {
+        this.messageSeq = messageSeq;
+    }
+    
+    public Long getBuyerReadSeq() {
+        return buyerReadSeq;
+    }
+    
+    public void setBuyerReadSeq(Long buyerReadSeq) {
+        this.buyerReadSeq = buyerReadSeq;
+    }
+    
+    public Long getSellerReadSeq() {
+        return sellerReadSeq;
+    }
+    
+    public void setSellerReadSeq(Long sellerReadSeq) {
+        this.sellerReadSeq = sellerReadSeq;
+    }
+    
+    public Long getBuyerDeliveredSeq() {
+        return buyerDeliveredSeq;
+    }
+    
+    public void setBuyerDeliveredSeq(Long buyerDeliveredSeq) {
+        this.buyerDeliveredSeq = buyerDeliveredSeq;
+    }
+    
+    public Long getSellerDeliveredSeq() {
+        return sellerDeliveredSeq;
+    }
+    
+    public void setSellerDeliveredSeq(Long sellerDeliveredSeq) {
+        this.sellerDeliveredSeq = sellerDeliveredSeq;
+    }
+    
+    public Long getStateVersion() {
+        return stateVersion;
+    }
+    
+    public void setStateVersion(Long stateVersion) {
+        this.stateVersion = stateVersion;
+    }
+    
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
@@ -106,6 +106,16 @@ public class Product {
     @Column(name = "inquiry_count")
     private Integer inquiryCount = 0;
     
+    // 发布/编辑时按关键词词典打的分类标记，供筛选按等值索引查询
+    @Column(name = "is_brand")
+    private Boolean isBrand = false;
+    
+    @Column(name = "is_accessory")
+    private Boolean isAccessory = false;
+    
+    @Column(name = "is_popular")
+    private Boolean isPopular = false;
+    
     // 推广相关
     @Column(name = "is_promoted")
     private Boolean isPromoted = false;
@@ -0,0 +1,16 @@
+package com.fliliy.secondhand.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 收藏/取消收藏事件
+ */
+@Getter
+@AllArgsConstructor
+public class FavoriteToggledEvent {
+    
+    private final Long userId;
+    private final Long productId;
+    private final boolean favorited;
+}
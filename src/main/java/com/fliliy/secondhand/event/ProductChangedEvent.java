@@ -0,0 +1,23 @@
+package com.fliliy.secondhand.event;
+
+import com.fliliy.secondhand.entity.Product;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 商品变更事件（发布/编辑/下架/状态变更），供内存索引、缓存等组件增量更新
+ */
+@Getter
+@AllArgsConstructor
+public class ProductChangedEvent {
+    
+    private final ChangeType type;
+    private final Product product;
+    
+    public enum ChangeType {
+        PUBLISHED,
+        UPDATED,
+        DELETED,
+        STATUS_CHANGED
+    }
+}
@@ -0,0 +1,15 @@
+package com.fliliy.secondhand.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 买家发起商品讨论事件（商品咨询次数+1）
+ */
+@Getter
+@AllArgsConstructor
+public class ProductDiscussedEvent {
+    
+    private final Long productId;
+    private final Long buyerId;
+}
@@ -0,0 +1,22 @@
+package com.fliliy.secondhand.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 浏览次数写回数据库事件
+ */
+@Getter
+@AllArgsConstructor
+public class ViewCountsFlushedEvent {
+    
+    // 商品ID -> 本次写回的浏览次数增量
+    private final Map<Long, Long> viewDeltas;
+    
+    public Set<Long> getProductIds() {
+        return viewDeltas.keySet();
+    }
+}
@@ -1,6 +1,7 @@
 package com.fliliy.secondhand.repository;
 
 import com.fliliy.secondhand.entity.Category;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
@@ -56,4 +57,24 @@ public interface CategoryRepository extends JpaRepository<Category, Integer> {
            "(SELECT COUNT(p) FROM Product p WHERE p.categoryId = c.id AND p.status = 'ACTIVE' AND p.deletedAt IS NULL) " +
            "WHERE c.id = :categoryId")
     void updateProductCount(@Param("categoryId") Integer categoryId);
-}
\ No newline at end of file
+    
+    /**
+     * 增量调整分类商品数量
+     */
+    @Modifying
+    @Query("UPDATE Category c SET c.productCount = COALESCE(c.productCount, 0) + :delta WHERE c.id = :categoryId")
+    void adjustProductCount(@Param("categoryId") Integer categoryId, @Param("delta") int delta);
+    
+    /**
+     * 设置分类商品数量（校准用）
+     */
+    @Modifying
+    @Query("UPDATE Category c SET c.productCount = :productCount WHERE c.id = :categoryId")
+    void setProductCount(@Param("categoryId") Integer categoryId, @Param("productCount") int productCount);
+    
+    /**
+     * 按ID顺序分批获取分类ID（校准用）
+     */
+    @Query("SELECT c.id FROM Category c WHERE c.id > :afterId ORDER BY c.id")
+    List<Integer> findIdsAfter(@Param("afterId") Integer afterId, Pageable pageable);
+}
@@ -4,6 +4,7 @@ import com.fliliy.secondhand.entity.ChatMessage;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
@@ -17,9 +18,25 @@ import java.util.List;
 public interface ChatMessageRepository extends JpaRepository<ChatMessage, Long> {
     
     /**
-     * 根据聊天室ID查找消息（分页，按时间倒序）
+     * 根据聊天室ID查找最新消息（按序号倒序，不查询总数）
      */
-    Page<ChatMessage> findByChatRoomIdOrderBySentAtDesc(Long chatRoomId, Pageable pageable);
+    Slice<ChatMessage> findByChatRoomIdOrderBySeqDesc(Long chatRoomId, Pageable pageable);
+    
+    /**
+     * 查找指定序号之前的消息（用于向上加载历史记录）
+     */
+    @Query("SELECT cm FROM ChatMessage cm WHERE cm.chatRoomId = :chatRoomId AND cm.seq < :beforeSeq ORDER BY cm.seq DESC")
+    Slice<ChatMessage> findBeforeSeq(@Param("chatRoomId") Long chatRoomId,
+                                     @Param("beforeSeq") Long beforeSeq,
+                                     Pageable pageable);
+    
+    /**
+     * 查找指定序号之后的消息（按序号正序，用于断线重连补齐消息）
+     */
+    @Query("SELECT cm FROM ChatMessage cm WHERE cm.chatRoomId = :chatRoomId AND cm.seq > :afterSeq ORDER BY cm.seq ASC")
+    Slice<ChatMessage> findAfterSeq(@Param("chatRoomId") Long chatRoomId,
+                                    @Param("afterSeq") Long afterSeq,
+                                    Pageable pageable);
     
     /**
      * 根据聊天室ID查找消息（按时间正序）
@@ -29,8 +46,8 @@ public interface ChatMessageRepository extends JpaRepository<ChatMessage, Long>
     /**
      * 查找指定时间之前的消息（用于分页加载历史记录）
      */
-    @Query("SELECT cm FROM ChatMessage cm WHERE cm.chatRoomId = :chatRoomId AND cm.sentAt < :beforeTime ORDER BY cm.sentAt DESC")
-    Page<ChatMessage> findByChatRoomIdAndSentAtBefore(@Param("chatRoomId") Long chatRoomId, 
+    @Query("SELECT cm FROM ChatMessage cm WHERE cm.chatRoomId = :chatRoomId AND cm.sentAt < :beforeTime ORDER BY cm.seq DESC")
+    Slice<ChatMessage> findByChatRoomIdAndSentAtBefore(@Param("chatRoomId") Long chatRoomId, 
                                                       @Param("beforeTime") LocalDateTime beforeTime, 
                                                       Pageable pageable);
     
@@ -60,34 +77,6 @@ public interface ChatMessageRepository extends JpaRepository<ChatMessage, Long>
      */
     Long countByChatRoomId(Long chatRoomId);
     
-    /**
-     * 统计聊天室未读消息数（对指定用户）
-     */
-    @Query("SELECT COUNT(cm) FROM ChatMessage cm WHERE cm.chatRoomId = :chatRoomId AND cm.senderId != :userId AND cm.status != 'READ'")
-    Long countUnreadMessages(@Param("chatRoomId") Long chatRoomId, @Param("userId") Long userId);
-    
-    /**
-     * 标记消息为已读
-     */
-    @Modifying
-    @Query("UPDATE ChatMessage cm SET cm.status = 'read', cm.readAt = CURRENT_TIMESTAMP WHERE cm.id = :messageId")
-    void markAsRead(@Param("messageId") Long messageId);
-    
-    /**
-     * 批量标记聊天室消息为已读
-     */
-    @Modifying
-    @Query("UPDATE ChatMessage cm SET cm.status = 'read', cm.readAt = CURRENT_TIMESTAMP " +
-           "WHERE cm.chatRoomId = :chatRoomId AND cm.senderId != :userId AND cm.status != 'read'")
-    void markChatRoomMessagesAsRead(@Param("chatRoomId") Long chatRoomId, @Param("userId") Long userId);
-    
-    /**
-     * 标记消息为已送达
-     */
-    @Modifying
-    @Query("UPDATE ChatMessage cm SET cm.status = 'delivered', cm.deliveredAt = CURRENT_TIMESTAMP WHERE cm.id = :messageId")
-    void markAsDelivered(@Param("messageId") Long messageId);
-    
     /**
      * 撤回消息
      */
@@ -200,30 +189,16 @@ public interface ChatMessageRepository extends JpaRepository<ChatMessage, Long>
     List<ChatMessage> findProductCardMessages(@Param("chatRoomId") Long chatRoomId);
     
     /**
-     * 按状态统计发送者的消息数
-     */
-    Long countByChatRoomIdAndSenderIdAndStatus(Long chatRoomId, Long senderId, ChatMessage.MessageStatus status);
-    
-    /**
-     * 获取用户在聊天室中各状态的消息统计
-     */
-    @Query("SELECT cm.status as status, COUNT(cm) as count FROM ChatMessage cm " +
-           "WHERE cm.chatRoomId = :chatRoomId AND cm.senderId = :senderId " +
-           "GROUP BY cm.status")
-    List<Object[]> getMessageStatusStats(@Param("chatRoomId") Long chatRoomId, @Param("senderId") Long senderId);
-    
-    /**
-     * 批量更新消息状态为已送达
-     */
-    @Modifying
-    @Query("UPDATE ChatMessage cm SET cm.status = 'DELIVERED', cm.deliveredAt = CURRENT_TIMESTAMP " +
-           "WHERE cm.chatRoomId = :chatRoomId AND cm.senderId != :userId AND cm.status = 'SENT'")
-    void batchMarkAsDelivered(@Param("chatRoomId") Long chatRoomId, @Param("userId") Long userId);
-    
-    /**
-     * 获取等待送达确认的消息
+     * 按对方的已读/已送达水位统计发送者的消息数：未送达、已送达、已读、发送失败
      */
-    @Query("SELECT cm FROM ChatMessage cm WHERE cm.chatRoomId = :chatRoomId AND cm.status = 'SENT' " +
-           "AND cm.senderId != :userId ORDER BY cm.sentAt DESC")
-    List<ChatMessage> findPendingDeliveryMessages(@Param("chatRoomId") Long chatRoomId, @Param("userId") Long userId);
+    @Query("SELECT " +
+           "SUM(CASE WHEN cm.status <> 'FAILED' AND cm.seq > :deliveredSeq THEN 1 ELSE 0 END), " +
+           "SUM(CASE WHEN cm.status <> 'FAILED' AND cm.seq > :readSeq AND cm.seq <= :deliveredSeq THEN 1 ELSE 0 END), " +
+           "SUM(CASE WHEN cm.status <> 'FAILED' AND cm.seq <= :readSeq THEN 1 ELSE 0 END), " +
+           "SUM(CASE WHEN cm.status = 'FAILED' THEN 1 ELSE 0 END) " +
+           "FROM ChatMessage cm WHERE cm.chatRoomId = :chatRoomId AND cm.senderId = :senderId")
+    List<Object[]> countDeliveryStats(@Param("chatRoomId") Long chatRoomId,
+                                      @Param("senderId") Long senderId,
+                                      @Param("readSeq") Long readSeq,
+                                      @Param("deliveredSeq") Long deliveredSeq);
 }
\ No newline at end of file
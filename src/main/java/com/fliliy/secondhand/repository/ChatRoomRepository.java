@@ -66,52 +66,132 @@ public interface ChatRoomRepository extends JpaRepository<ChatRoom, Long> {
     /**
      * 标记聊天室为已读
      */
-    @Modifying
-    @Query("UPDATE ChatRoom cr SET cr.buyerUnreadCount = 0 WHERE cr.id = :chatRoomId AND cr.buyerId = :userId")
-    void markAsReadForBuyer(@Param("chatRoomId") Long chatRoomId, @Param("userId") Long userId);
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE ChatRoom cr SET cr.buyerUnreadCount = 0, cr.buyerReadSeq = cr.messageSeq , cr.stateVersion = cr.stateVersion + 1 " +
+           "WHERE cr.id = :chatRoomId AND cr.buyerId = :userId")
+    int markAsReadForBuyer(@Param("chatRoomId") Long chatRoomId, @Param("userId") Long userId);
     
-    @Modifying
-    @Query("UPDATE ChatRoom cr SET cr.sellerUnreadCount = 0 WHERE cr.id = :chatRoomId AND cr.sellerId = :userId")
-    void markAsReadForSeller(@Param("chatRoomId") Long chatRoomId, @Param("userId") Long userId);
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE ChatRoom cr SET cr.sellerUnreadCount = 0, cr.sellerReadSeq = cr.messageSeq , cr.stateVersion = cr.stateVersion + 1 " +
+           "WHERE cr.id = :chatRoomId AND cr.sellerId = :userId")
+    int markAsReadForSeller(@Param("chatRoomId") Long chatRoomId, @Param("userId") Long userId);
+    
+    /**
+     * 推进已读水位（只增不减）
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE ChatRoom cr SET cr.buyerReadSeq = :seq, cr.stateVersion = cr.stateVersion + 1 " +
+           "WHERE cr.id = :chatRoomId AND cr.buyerId = :userId AND cr.buyerReadSeq < :seq")
+    int advanceBuyerReadSeq(@Param("chatRoomId") Long chatRoomId, @Param("userId") Long userId, @Param("seq") Long seq);
+    
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE ChatRoom cr SET cr.sellerReadSeq = :seq, cr.stateVersion = cr.stateVersion + 1 " +
+           "WHERE cr.id = :chatRoomId AND cr.sellerId = :userId AND cr.sellerReadSeq < :seq")
+    int advanceSellerReadSeq(@Param("chatRoomId") Long chatRoomId, @Param("userId") Long userId, @Param("seq") Long seq);
+    
+    /**
+     * 推进已送达水位（只增不减）
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE ChatRoom cr SET cr.buyerDeliveredSeq = :seq, cr.stateVersion = cr.stateVersion + 1 " +
+           "WHERE cr.id = :chatRoomId AND cr.buyerId = :userId AND cr.buyerDeliveredSeq < :seq")
+    int advanceBuyerDeliveredSeq(@Param("chatRoomId") Long chatRoomId, @Param("userId") Long userId, @Param("seq") Long seq);
+    
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE ChatRoom cr SET cr.sellerDeliveredSeq = :seq, cr.stateVersion = cr.stateVersion + 1 " +
+           "WHERE cr.id = :chatRoomId AND cr.sellerId = :userId AND cr.sellerDeliveredSeq < :seq")
+    int advanceSellerDeliveredSeq(@Param("chatRoomId") Long chatRoomId, @Param("userId") Long userId, @Param("seq") Long seq);
     
     /**
-     * 更新聊天室最后消息基本信息
+     * 记录新消息并分配序号：一条语句递增消息序号，更新最后消息、消息总数和双方未读数
+     * 行锁持有到事务提交，同一聊天室的消息按序号顺序提交；分配的序号由findMessageSeq在同一事务中读取
      */
     @Modifying
     @Query("UPDATE ChatRoom cr SET " +
+           "cr.messageSeq = cr.messageSeq + 1, " +
            "cr.lastMessageId = :messageId, " +
            "cr.lastMessageContent = :content, " +
            "cr.lastMessageType = :messageType, " +
            "cr.lastMessageTime = CURRENT_TIMESTAMP, " +
            "cr.lastMessageSenderId = :senderId, " +
+           "cr.totalMessages = cr.totalMessages + :messageCount, " +
+           "cr.buyerUnreadCount = cr.buyerUnreadCount + :buyerUnread, " +
+           "cr.sellerUnreadCount = cr.sellerUnreadCount + :sellerUnread, " +
            "cr.updatedAt = CURRENT_TIMESTAMP " +
            "WHERE cr.id = :chatRoomId")
-    void updateLastMessage(@Param("chatRoomId") Long chatRoomId,
-                          @Param("messageId") Long messageId,
-                          @Param("content") String content,
-                          @Param("messageType") ChatRoom.MessageType messageType,
-                          @Param("senderId") Long senderId);
+    int recordMessageWithSeq(@Param("chatRoomId") Long chatRoomId,
+                             @Param("messageId") Long messageId,
+                             @Param("content") String content,
+                             @Param("messageType") ChatRoom.MessageType messageType,
+                             @Param("senderId") Long senderId,
+                             @Param("messageCount") int messageCount,
+                             @Param("buyerUnread") int buyerUnread,
+                             @Param("sellerUnread") int sellerUnread);
     
     /**
-     * 增加消息总数
+     * 合并提交写入：只计入序号高于对方已读水位的消息，读取水位后被推进时不更新（返回0，由调用方重读后重试）
      */
     @Modifying
-    @Query("UPDATE ChatRoom cr SET cr.totalMessages = cr.totalMessages + 1 WHERE cr.id = :chatRoomId")
-    void incrementTotalMessages(@Param("chatRoomId") Long chatRoomId);
+    @Query("UPDATE ChatRoom cr SET " +
+           "cr.lastMessageId = :messageId, " +
+           "cr.lastMessageContent = :content, " +
+           "cr.lastMessageType = :messageType, " +
+           "cr.lastMessageTime = CURRENT_TIMESTAMP, " +
+           "cr.lastMessageSenderId = :senderId, " +
+           "cr.totalMessages = cr.totalMessages + :messageCount, " +
+           "cr.buyerUnreadCount = cr.buyerUnreadCount + :buyerUnread, " +
+           "cr.sellerUnreadCount = cr.sellerUnreadCount + :sellerUnread, " +
+           "cr.updatedAt = CURRENT_TIMESTAMP " +
+           "WHERE cr.id = :chatRoomId AND cr.buyerReadSeq = :buyerReadSeq AND cr.sellerReadSeq = :sellerReadSeq")
+    int recordMessagesAtReadSeqs(@Param("chatRoomId") Long chatRoomId,
+                                 @Param("messageId") Long messageId,
+                                 @Param("content") String content,
+                                 @Param("messageType") ChatRoom.MessageType messageType,
+                                 @Param("senderId") Long senderId,
+                                 @Param("messageCount") int messageCount,
+                                 @Param("buyerUnread") int buyerUnread,
+                                 @Param("sellerUnread") int sellerUnread,
+                                 @Param("buyerReadSeq") Long buyerReadSeq,
+                                 @Param("sellerReadSeq") Long sellerReadSeq);
+    
+    @Query("SELECT cr.buyerReadSeq, cr.sellerReadSeq FROM ChatRoom cr WHERE cr.id = :chatRoomId")
+    List<Object[]> findReadSeqs(@Param("chatRoomId") Long chatRoomId);
     
     /**
-     * 增加买家未读数（当发送者不是买家时）
+     * 递增聊天室的消息序号（在调用方事务中执行时行锁持有到事务提交）
      */
     @Modifying
-    @Query("UPDATE ChatRoom cr SET cr.buyerUnreadCount = cr.buyerUnreadCount + 1 WHERE cr.id = :chatRoomId AND cr.buyerId != :senderId")
-    void incrementBuyerUnreadCount(@Param("chatRoomId") Long chatRoomId, @Param("senderId") Long senderId);
+    @Query("UPDATE ChatRoom cr SET cr.messageSeq = cr.messageSeq + 1 WHERE cr.id = :chatRoomId")
+    int incrementMessageSeq(@Param("chatRoomId") Long chatRoomId);
+    
+    @Query("SELECT cr.messageSeq FROM ChatRoom cr WHERE cr.id = :chatRoomId")
+    Long findMessageSeq(@Param("chatRoomId") Long chatRoomId);
     
     /**
-     * 增加卖家未读数（当发送者不是卖家时）
+     * 递增消息状态版本（撤回消息后调用，水位推进语句中已同时递增）
      */
-    @Modifying
-    @Query("UPDATE ChatRoom cr SET cr.sellerUnreadCount = cr.sellerUnreadCount + 1 WHERE cr.id = :chatRoomId AND cr.sellerId != :senderId")
-    void incrementSellerUnreadCount(@Param("chatRoomId") Long chatRoomId, @Param("senderId") Long senderId);
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE ChatRoom cr SET cr.stateVersion = cr.stateVersion + 1 WHERE cr.id = :chatRoomId")
+    int incrementStateVersion(@Param("chatRoomId") Long chatRoomId);
+    
+    @Query("SELECT cr.stateVersion FROM ChatRoom cr WHERE cr.id = :chatRoomId")
+    Long findStateVersion(@Param("chatRoomId") Long chatRoomId);
+    
+    /**
+     * 最近消息缓存校验用：最新消息序号和消息状态版本
+     */
+    @Query("SELECT cr.messageSeq, cr.stateVersion FROM ChatRoom cr WHERE cr.id = :chatRoomId")
+    List<Object[]> findCacheState(@Param("chatRoomId") Long chatRoomId);
+    
+    /**
+     * 为新消息分配聊天室内的序号 - 便利方法
+     */
+    default long allocateMessageSeq(Long chatRoomId) {
+        if (incrementMessageSeq(chatRoomId) == 0) {
+            throw new RuntimeException("聊天室不存在");
+        }
+        return findMessageSeq(chatRoomId);
+    }
     
     /**
      * 检查用户是否是聊天室参与者
@@ -11,11 +11,12 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface ProductRepository extends JpaRepository<Product, Long>, JpaSpecificationExecutor<Product> {
+public interface ProductRepository extends JpaRepository<Product, Long>, JpaSpecificationExecutor<Product>, ProductRepositoryCustom {
     
     /**
      * 根据状态查找商品（不包含软删除）
@@ -133,6 +134,12 @@ public interface ProductRepository extends JpaRepository<Product, Long>, JpaSpec
     @Query("SELECT p FROM Product p WHERE p.id = :id AND p.deletedAt IS NULL")
     Optional<Product> findByIdAndNotDeleted(@Param("id") Long id);
     
+    /**
+     * 商品的分类和卖家（详情ETag用，返回[categoryId, sellerId]）
+     */
+    @Query("SELECT p.categoryId, p.sellerId FROM Product p WHERE p.id = :id")
+    List<Object[]> findCategoryAndSellerById(@Param("id") Long id);
+    
     /**
      * 增加浏览次数
      */
@@ -151,7 +158,7 @@ public interface ProductRepository extends JpaRepository<Product, Long>, JpaSpec
      * 更新聊天次数
      */
     @Modifying
-    @Query("UPDATE Product p SET p.chatCount = p.chatCount + 1 WHERE p.id = :id")
+    @Query("UPDATE Product p SET p.chatCount = COALESCE(p.chatCount, 0) + 1 WHERE p.id = :id")
     void incrementChatCount(@Param("id") Long id);
     
     /**
@@ -226,4 +233,44 @@ public interface ProductRepository extends JpaRepository<Product, Long>, JpaSpec
      */
     @Query("SELECT COUNT(p) FROM Product p WHERE p.sellerId = :userId AND p.status = :status AND p.deletedAt IS NULL")
     Long countByUserIdAndStatus(@Param("userId") Long userId, @Param("status") Product.ProductStatus status);
-}
\ No newline at end of file
+    
+    /**
+     * 按分类统计在售商品数量（返回[categoryId, count]）
+     */
+    @Query("SELECT p.categoryId, COUNT(p) FROM Product p WHERE p.categoryId IN :categoryIds " +
+           "AND p.status = 'ACTIVE' AND p.deletedAt IS NULL GROUP BY p.categoryId")
+    List<Object[]> countActiveByCategoryIds(@Param("categoryIds") List<Integer> categoryIds);
+    
+    /**
+     * 批量设置关键词分类标记
+     */
+    @Modifying
+    @Query("UPDATE Product p SET p.isBrand = :isBrand, p.isAccessory = :isAccessory WHERE p.id IN :productIds")
+    int updateClassification(@Param("productIds") Collection<Long> productIds,
+                             @Param("isBrand") Boolean isBrand,
+                             @Param("isAccessory") Boolean isAccessory);
+    
+    /**
+     * 按浏览量和收藏数重新计算热门标记，只更新标记有变化的商品，返回变化的商品数
+     */
+    @Modifying
+    @Query("UPDATE Product p SET p.isPopular = CASE WHEN (p.viewCount > :minViewCount OR p.favoriteCount > :minFavoriteCount) " +
+           "THEN true ELSE false END WHERE p.id IN :productIds AND (p.isPopular IS NULL " +
+           "OR (p.isPopular = false AND (p.viewCount > :minViewCount OR p.favoriteCount > :minFavoriteCount)) " +
+           "OR (p.isPopular = true AND COALESCE(p.viewCount, 0) <= :minViewCount AND COALESCE(p.favoriteCount, 0) <= :minFavoriteCount))")
+    int refreshPopularFlags(@Param("productIds") Collection<Long> productIds,
+                            @Param("minViewCount") Integer minViewCount,
+                            @Param("minFavoriteCount") Integer minFavoriteCount);
+    
+    /**
+     * 按ID顺序分批获取商品ID和标题（分类回填用，返回[id, title, isBrand, isAccessory]）
+     */
+    @Query("SELECT p.id, p.title, p.isBrand, p.isAccessory FROM Product p WHERE p.id > :afterId ORDER BY p.id")
+    List<Object[]> findClassificationBatch(@Param("afterId") Long afterId, Pageable pageable);
+    
+    /**
+     * 批量获取商品浏览数和收藏数（返回[id, viewCount, favoriteCount]）
+     */
+    @Query("SELECT p.id, p.viewCount, p.favoriteCount FROM Product p WHERE p.id IN :productIds")
+    List<Object[]> findCountsByIds(@Param("productIds") Collection<Long> productIds);
+}
@@ -0,0 +1,47 @@
+package com.fliliy.secondhand.repository;
+
+import com.fliliy.secondhand.entity.Product;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * 商品自定义查询（JpaSpecificationExecutor无法表达的查询）
+ */
+public interface ProductRepositoryCustom {
+    
+    /**
+     * 按条件分页查询商品摘要（只查询摘要列，主图按当前页批量查询）
+     */
+    Page<ProductSummaryRow> findSummaries(Specification<Product> spec, Pageable pageable);
+    
+    /**
+     * 按条件分页查询商品摘要，总数由调用方提供（如从缓存读取），仅在无法由当前页推算总数时调用
+     */
+    Page<ProductSummaryRow> findSummaries(Specification<Product> spec, Pageable pageable, LongSupplier total);
+    
+    /**
+     * 按条件和排序取前limit条商品摘要，不执行COUNT查询（用于游标分页和按ID批量查询）
+     */
+    List<ProductSummaryRow> findSummarySlice(Specification<Product> spec, Sort sort, int limit);
+    
+    /**
+     * 按条件和排序从offset起取limit条商品摘要，不执行COUNT查询
+     */
+    List<ProductSummaryRow> findSummarySlice(Specification<Product> spec, Sort sort, long offset, int limit);
+    
+    /**
+     * 按条件只查询商品ID（候选集已在内存中排好序时，用于过滤出符合其余条件的商品）
+     */
+    List<Long> findIds(Specification<Product> spec);
+    
+    /**
+     * 批量累加浏览次数（商品ID -> 增量），单条多行UPDATE语句
+     */
+    int incrementViewCounts(Map<Long, Long> deltas);
+}
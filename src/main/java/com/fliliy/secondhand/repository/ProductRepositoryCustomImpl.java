@@ -0,0 +1,203 @@
+package com.fliliy.secondhand.repository;
+
+import com.fliliy.secondhand.entity.Product;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.Query;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+public class ProductRepositoryCustomImpl implements ProductRepositoryCustom {
+    
+    // 摘要列，顺序与toSummaryRow的取值顺序一致
+    private static final String[] SUMMARY_COLUMNS = {
+            "id", "title", "price", "originalPrice", "productCondition", "status", "publishedAt", "soldAt",
+            "hasWarranty", "warrantyMonths", "province", "city", "district", "latitude", "longitude",
+            "sellerId", "viewCount", "favoriteCount", "chatCount"
+    };
+    
+    @PersistenceContext
+    private EntityManager entityManager;
+    
+    @Override
+    public Page<ProductSummaryRow> findSummaries(Specification<Product> spec, Pageable pageable) {
+        return findSummaries(spec, pageable, () -> count(spec));
+    }
+    
+    @Override
+    public Page<ProductSummaryRow> findSummaries(Specification<Product> spec, Pageable pageable, LongSupplier total) {
+        List<ProductSummaryRow> content = selectSummaries(spec, pageable.getSort(),
+                (int) pageable.getOffset(), pageable.getPageSize());
+        // 首页不足一页或最后一页时可由结果推算总数，不执行COUNT
+        return PageableExecutionUtils.getPage(content, pageable, total);
+    }
+    
+    @Override
+    public List<ProductSummaryRow> findSummarySlice(Specification<Product> spec, Sort sort, int limit) {
+        return selectSummaries(spec, sort, 0, limit);
+    }
+    
+    @Override
+    public List<ProductSummaryRow> findSummarySlice(Specification<Product> spec, Sort sort, long offset, int limit) {
+        return selectSummaries(spec, sort, (int) offset, limit);
+    }
+    
+    @Override
+    public List<Long> findIds(Specification<Product> spec) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> query = criteriaBuilder.createQuery(Long.class);
+        Root<Product> root = query.from(Product.class);
+        
+        Predicate predicate = spec.toPredicate(root, query, criteriaBuilder);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        query.select(root.get("id"));
+        
+        return entityManager.createQuery(query).getResultList();
+    }
+    
+    @Override
+    @Transactional
+    public int incrementViewCounts(Map<Long, Long> deltas) {
+        if (deltas.isEmpty()) {
+            return 0;
+        }
+        
+        // UPDATE products SET view_count = view_count + CASE id WHEN ? THEN ? ... END WHERE id IN (...)
+        StringBuilder sql = new StringBuilder("UPDATE products SET view_count = COALESCE(view_count, 0) + CASE id");
+        for (int i = 0; i < deltas.size(); i++) {
+            sql.append(" WHEN ?").append(2 * i + 1).append(" THEN ?").append(2 * i + 2);
+        }
+        sql.append(" ELSE 0 END WHERE id IN (?").append(2 * deltas.size() + 1).append(")");
+        
+        Query query = entityManager.createNativeQuery(sql.toString());
+        int position = 1;
+        for (Map.Entry<Long, Long> entry : deltas.entrySet()) {
+            query.setParameter(position++, entry.getKey());
+            query.setParameter(position++, entry.getValue());
+        }
+        query.setParameter(position, deltas.keySet());
+        
+        return query.executeUpdate();
+    }
+    
+    private List<ProductSummaryRow> selectSummaries(Specification<Product> spec, Sort sort, int offset, int limit) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Object[]> query = criteriaBuilder.createQuery(Object[].class);
+        Root<Product> root = query.from(Product.class);
+        
+        List<Selection<?>> selections = new ArrayList<>();
+        for (String column : SUMMARY_COLUMNS) {
+            selections.add(root.get(column));
+        }
+        query.multiselect(selections);
+        
+        Predicate predicate = spec.toPredicate(root, query, criteriaBuilder);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        if (sort.isSorted()) {
+            query.orderBy(QueryUtils.toOrders(sort, root, criteriaBuilder));
+        }
+        
+        List<Object[]> rows = entityManager.createQuery(query)
+                .setFirstResult(offset)
+                .setMaxResults(limit)
+                .getResultList();
+        
+        List<ProductSummaryRow> summaries = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            summaries.add(toSummaryRow(row));
+        }
+        
+        // 主图按当前页商品ID批量查询：SELECT列表中的相关子查询会对OFFSET跳过的行同样执行
+        Map<Long, String> mainImages = findMainImages(summaries);
+        for (ProductSummaryRow summary : summaries) {
+            summary.setMainImageUrl(mainImages.get(summary.getId()));
+        }
+        return summaries;
+    }
+    
+    /**
+     * 主图：sort_order = 0 的图片；唯一性只由应用保证，重复时取MIN保证结果确定
+     */
+    private Map<Long, String> findMainImages(List<ProductSummaryRow> summaries) {
+        Map<Long, String> mainImages = new HashMap<>();
+        if (summaries.isEmpty()) {
+            return mainImages;
+        }
+        
+        List<Long> productIds = new ArrayList<>(summaries.size());
+        for (ProductSummaryRow summary : summaries) {
+            productIds.add(summary.getId());
+        }
+        
+        List<?> rows = entityManager.createQuery(
+                "SELECT pi.productId, MIN(pi.imageUrl) FROM ProductImage pi " +
+                "WHERE pi.productId IN :productIds AND pi.sortOrder = 0 GROUP BY pi.productId")
+                .setParameter("productIds", productIds)
+                .getResultList();
+        for (Object row : rows) {
+            Object[] columns = (Object[]) row;
+            mainImages.put((Long) columns[0], (String) columns[1]);
+        }
+        return mainImages;
+    }
+    
+    private long count(Specification<Product> spec) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> query = criteriaBuilder.createQuery(Long.class);
+        Root<Product> root = query.from(Product.class);
+        
+        Predicate predicate = spec.toPredicate(root, query, criteriaBuilder);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        query.select(criteriaBuilder.count(root));
+        
+        return entityManager.createQuery(query).getSingleResult();
+    }
+    
+    private static ProductSummaryRow toSummaryRow(Object[] row) {
+        ProductSummaryRow summary = new ProductSummaryRow();
+        summary.setId((Long) row[0]);
+        summary.setTitle((String) row[1]);
+        summary.setPrice((BigDecimal) row[2]);
+        summary.setOriginalPrice((BigDecimal) row[3]);
+        summary.setProductCondition((Product.ConditionType) row[4]);
+        summary.setStatus((Product.ProductStatus) row[5]);
+        summary.setPublishedAt((LocalDateTime) row[6]);
+        summary.setSoldAt((LocalDateTime) row[7]);
+        summary.setHasWarranty((Boolean) row[8]);
+        summary.setWarrantyMonths((Integer) row[9]);
+        summary.setProvince((String) row[10]);
+        summary.setCity((String) row[11]);
+        summary.setDistrict((String) row[12]);
+        summary.setLatitude((BigDecimal) row[13]);
+        summary.setLongitude((BigDecimal) row[14]);
+        summary.setSellerId((Long) row[15]);
+        summary.setViewCount((Integer) row[16]);
+        summary.setFavoriteCount((Integer) row[17]);
+        summary.setChatCount((Integer) row[18]);
+        return summary;
+    }
+}
@@ -0,0 +1,35 @@
+package com.fliliy.secondhand.repository;
+
+import com.fliliy.secondhand.entity.Product;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * 商品列表摘要行：只包含列表展示所需的列（不含描述、保修说明、详细地址等），主图按当前页商品ID批量补齐
+ */
+@Data
+public class ProductSummaryRow {
+    
+    private Long id;
+    private String title;
+    private BigDecimal price;
+    private BigDecimal originalPrice;
+    private Product.ConditionType productCondition;
+    private Product.ProductStatus status;
+    private LocalDateTime publishedAt;
+    private LocalDateTime soldAt;
+    private Boolean hasWarranty;
+    private Integer warrantyMonths;
+    private String province;
+    private String city;
+    private String district;
+    private BigDecimal latitude;
+    private BigDecimal longitude;
+    private Long sellerId;
+    private Integer viewCount;
+    private Integer favoriteCount;
+    private Integer chatCount;
+    private String mainImageUrl;
+}
@@ -7,6 +7,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -23,6 +24,12 @@ public interface ProductTagRepository extends JpaRepository<ProductTag, Integer>
     @Query("SELECT pt.tagName FROM ProductTag pt WHERE pt.productId = :productId")
     List<String> findTagNamesByProductId(@Param("productId") Long productId);
     
+    /**
+     * 批量获取商品标签名称（返回[productId, tagName]）
+     */
+    @Query("SELECT pt.productId, pt.tagName FROM ProductTag pt WHERE pt.productId IN :productIds ORDER BY pt.id")
+    List<Object[]> findTagNamesByProductIds(@Param("productIds") Collection<Long> productIds);
+    
     /**
      * 批量删除商品标签
      */
@@ -9,6 +9,8 @@ import org.springframework.stereotype.Repository;
 
 import javax.transaction.Transactional;
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -22,6 +24,13 @@ public interface UserRepository extends JpaRepository<User, Long> {
     
     boolean existsByEmail(String email);
     
+    /**
+     * 批量查询用户摘要（用户名、头像）
+     */
+    @Query("SELECT new com.fliliy.secondhand.repository.UserSummaryRow(u.id, u.username, u.avatar) " +
+           "FROM User u WHERE u.id IN :ids")
+    List<UserSummaryRow> findSummariesByIds(@Param("ids") Collection<Long> ids);
+    
     @Modifying
     @Transactional
     @Query("UPDATE User u SET u.loginAttempts = :attempts WHERE u.id = :userId")
@@ -0,0 +1,18 @@
+package com.fliliy.secondhand.repository;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 用户摘要行：只包含消息、聊天列表展示所需的用户名和头像
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserSummaryRow {
+    
+    private Long id;
+    private String username;
+    private String avatar;
+}
@@ -0,0 +1,139 @@
+package com.fliliy.secondhand.service;
+
+import com.fliliy.secondhand.entity.Category;
+
+import java.util.*;
+
+/**
+ * 分类层级快照（不可变）：预先计算每个分类的祖先链和全部后代（任意深度）
+ * 分类ID按升序存放，通过二分查找定位，闭包以int数组保存
+ */
+public final class CategoryHierarchy {
+
+    private static final int[] EMPTY = new int[0];
+
+    private final int[] ids;
+    private final String[] names;
+    // 从顶级分类到自身的ID路径
+    private final int[][] ancestors;
+    // 自身及所有后代分类ID（先序）
+    private final int[][] descendants;
+
+    private CategoryHierarchy(int[] ids, String[] names, int[][] ancestors, int[][] descendants) {
+        this.ids = ids;
+        this.names = names;
+        this.ancestors = ancestors;
+        this.descendants = descendants;
+    }
+
+    public static CategoryHierarchy empty() {
+        return new CategoryHierarchy(EMPTY, new String[0], new int[0][], new int[0][]);
+    }
+
+    /**
+     * 根据启用的分类构建快照；父分类未启用的分类视为断开，不计入上级的后代
+     */
+    public static CategoryHierarchy build(List<Category> categories) {
+        int[] ids = categories.stream().mapToInt(Category::getId).sorted().distinct().toArray();
+        int size = ids.length;
+
+        String[] names = new String[size];
+        int[] parentPos = new int[size];
+        Arrays.fill(parentPos, -1);
+        for (Category category : categories) {
+            int pos = Arrays.binarySearch(ids, category.getId());
+            names[pos] = category.getName();
+            Integer parentId = category.getParentId();
+            if (parentId != null && parentId != 0) {
+                int parent = Arrays.binarySearch(ids, parentId);
+                parentPos[pos] = parent >= 0 ? parent : -1;
+            }
+        }
+
+        // 子节点邻接表
+        List<List<Integer>> children = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            children.add(new ArrayList<>());
+        }
+        for (int i = 0; i < size; i++) {
+            if (parentPos[i] >= 0) {
+                children.get(parentPos[i]).add(i);
+            }
+        }
+
+        // 祖先路径（沿父链向上，遇到环则截断）
+        int[][] ancestors = new int[size][];
+        for (int i = 0; i < size; i++) {
+            Deque<Integer> path = new ArrayDeque<>();
+            Set<Integer> visited = new HashSet<>();
+            for (int pos = i; pos >= 0 && visited.add(pos); pos = parentPos[pos]) {
+                path.addFirst(ids[pos]);
+            }
+            ancestors[i] = path.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        // 后代闭包（深度优先，防环）
+        int[][] descendants = new int[size][];
+        for (int i = 0; i < size; i++) {
+            List<Integer> collected = new ArrayList<>();
+            boolean[] visited = new boolean[size];
+            Deque<Integer> stack = new ArrayDeque<>();
+            stack.push(i);
+            while (!stack.isEmpty()) {
+                int pos = stack.pop();
+                if (visited[pos]) {
+                    continue;
+                }
+                visited[pos] = true;
+                collected.add(ids[pos]);
+                List<Integer> childList = children.get(pos);
+                for (int c = childList.size() - 1; c >= 0; c--) {
+                    stack.push(childList.get(c));
+                }
+            }
+            descendants[i] = collected.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        return new CategoryHierarchy(ids, names, ancestors, descendants);
+    }
+
+    public boolean contains(int categoryId) {
+        return Arrays.binarySearch(ids, categoryId) >= 0;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * 自身及所有后代分类ID；分类不在快照中时只返回自身
+     */
+    public int[] getSelfAndDescendants(int categoryId) {
+        int pos = Arrays.binarySearch(ids, categoryId);
+        return pos >= 0 ? descendants[pos] : new int[]{categoryId};
+    }
+
+    /**
+     * 从顶级分类到自身的ID路径；分类不在快照中时返回空数组
+     */
+    public int[] getAncestorsAndSelf(int categoryId) {
+        int pos = Arrays.binarySearch(ids, categoryId);
+        return pos >= 0 ? ancestors[pos] : EMPTY;
+    }
+
+    /**
+     * 分类路径（如：电子产品 > 手机 > 苹果）；分类不在快照中时返回null
+     */
+    public String getPath(int categoryId) {
+        int[] path = getAncestorsAndSelf(categoryId);
+        if (path.length == 0) {
+            return null;
+        }
+
+        StringJoiner joiner = new StringJoiner(" > ");
+        for (int id : path) {
+            joiner.add(names[Arrays.binarySearch(ids, id)]);
+        }
+        return joiner.toString();
+    }
+}
@@ -0,0 +1,167 @@
+package com.fliliy.secondhand.service;
+
+import com.fliliy.secondhand.repository.CategoryRepository;
+import com.fliliy.secondhand.repository.ProductRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 分类商品数量增量计数：商品上架、售出、下架时只记录增减量，定时批量写回；
+ * 另有定时校准任务按批重新统计，修正异常导致的偏差
+ * 增量在写回（或校准）提交后才扣减，扣减只减去已写入的部分，期间新记录的增量保留
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class CategoryProductCounter {
+    
+    private final CategoryRepository categoryRepository;
+    private final ProductRepository productRepository;
+    private final TransactionTemplate transactionTemplate;
+    
+    @Value("${category.product-count.reconcile-batch-size:100}")
+    private int reconcileBatchSize;
+    
+    // 增量的累加和扣减归零移除都在按键加锁的原子操作中完成，不会丢失并发记录的增量
+    private final ConcurrentHashMap<Integer, Long> pending = new ConcurrentHashMap<>();
+    
+    /**
+     * 调整分类在售商品数量；处于事务中时在提交后才计入，回滚则丢弃
+     */
+    public void adjust(Integer categoryId, int delta) {
+        if (categoryId == null || delta == 0) {
+            return;
+        }
+    
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    record(categoryId, delta);
+                }
+            });
+        } else {
+            record(categoryId, delta);
+        }
+    }
+    
+    /**
+     * 定时写回数据库（与校准互斥，避免同一增量既被写回又被校准扣减）
+     */
+    @Scheduled(fixedDelayString = "${category.product-count.flush-interval-ms:5000}")
+    public synchronized void flush() {
+        Map<Integer, Long> batch = new HashMap<>(pending);
+        if (batch.isEmpty()) {
+            return;
+        }
+    
+        try {
+            transactionTemplate.executeWithoutResult(status -> batch.forEach(
+                    (categoryId, delta) -> categoryRepository.adjustProductCount(categoryId, delta.intValue())));
+        } catch (Exception e) {
+            // 写入失败时增量仍在缓冲中，下次重试
+            log.error("Flush category product counts failed: categories={}", batch.size(), e);
+            return;
+        }
+        log.debug("Flushed category product counts: categories={}", batch.size());
+        subtract(batch);
+    }
+    
+    /**
+     * 定时校准：按分类ID顺序分批重新统计在售商品数，每批一个短事务
+     */
+    @Scheduled(fixedDelayString = "${category.product-count.reconcile-interval-ms:3600000}",
+               initialDelayString = "${category.product-count.reconcile-initial-delay-ms:60000}")
+    public synchronized void reconcile() {
+        flush();
+    
+        int afterId = 0;
+        int corrected = 0;
+        while (true) {
+            List<Integer> categoryIds = categoryRepository.findIdsAfter(afterId, PageRequest.of(0, reconcileBatchSize));
+            if (categoryIds.isEmpty()) {
+                break;
+            }
+    
+            try {
+                Map<Integer, Long> overwritten = transactionTemplate.execute(status -> reconcileBatch(categoryIds));
+                if (overwritten != null) {
+                    // 校准已提交：覆盖后的数量已包含统计前记录的增量，只扣减这部分
+                    subtract(overwritten);
+                    corrected += overwritten.size();
+                }
+            } catch (Exception e) {
+                log.error("Reconcile category product counts failed: from={}", categoryIds.get(0), e);
+            }
+            afterId = categoryIds.get(categoryIds.size() - 1);
+        }
+    
+        log.info("Reconciled category product counts: corrected={}", corrected);
+    }
+    
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+    
+    // 返回被覆盖的分类及统计前记录的未写回增量
+    private Map<Integer, Long> reconcileBatch(List<Integer> categoryIds) {
+        // 统计前记录的增量已计入实际数量；统计后才提交的事务不在统计结果中，其增量需保留
+        Map<Integer, Long> unflushed = new HashMap<>();
+        for (Integer categoryId : categoryIds) {
+            Long delta = pending.get(categoryId);
+            if (delta != null) {
+                unflushed.put(categoryId, delta);
+            }
+        }
+    
+        Map<Integer, Integer> actual = new HashMap<>();
+        for (Object[] row : productRepository.countActiveByCategoryIds(categoryIds)) {
+            actual.put((Integer) row[0], ((Number) row[1]).intValue());
+        }
+    
+        Map<Integer, Integer> stored = new HashMap<>();
+        categoryRepository.findAllById(categoryIds)
+                .forEach(category -> stored.put(category.getId(), category.getProductCount()));
+    
+        Map<Integer, Long> overwritten = new HashMap<>();
+        for (Integer categoryId : categoryIds) {
+            int count = actual.getOrDefault(categoryId, 0);
+            Integer storedCount = stored.get(categoryId);
+            long delta = unflushed.getOrDefault(categoryId, 0L);
+            long expected = (storedCount != null ? storedCount : 0) + delta;
+            if (storedCount == null || expected != count) {
+                categoryRepository.setProductCount(categoryId, count);
+                overwritten.put(categoryId, delta);
+            }
+        }
+        return overwritten;
+    }
+    
+    private void record(Integer categoryId, long delta) {
+        // 上架和下架相互抵消为0时移出缓冲
+        pending.merge(categoryId, delta, (current, added) -> current + added != 0 ? current + added : null);
+    }
+    
+    // 扣减已写入数据库的增量，减为0的分类移出缓冲
+    private void subtract(Map<Integer, Long> written) {
+        written.forEach((categoryId, delta) -> {
+            if (delta != 0) {
+                pending.computeIfPresent(categoryId, (id, current) -> current - delta != 0 ? current - delta : null);
+            }
+        });
+    }
+}
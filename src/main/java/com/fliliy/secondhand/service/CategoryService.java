@@ -4,9 +4,11 @@ import com.fliliy.secondhand.entity.Category;
 import com.fliliy.secondhand.repository.CategoryRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -18,6 +20,9 @@ public class CategoryService {
     
     private final CategoryRepository categoryRepository;
     
+    // 分类层级快照，整体替换保证读取时一致
+    private volatile CategoryHierarchy hierarchy;
+    
     /**
      * 获取分类树结构
      */
@@ -59,34 +64,67 @@ public class CategoryService {
     }
     
     /**
-     * 获取分类路径（如：电子产品 > 手机）
+     * 获取分类路径（如：电子产品 > 手机 > 苹果），支持任意层级
      */
-    @Cacheable(value = "categories", key = "'path_' + #categoryId")
     public String getCategoryPath(Integer categoryId) {
+        String path = getHierarchy().getPath(categoryId);
+        if (path != null) {
+            return path;
+        }
+        // 已禁用的分类不在快照中，回退到数据库查询
         return categoryRepository.getCategoryPath(categoryId);
     }
     
     /**
-     * 获取包含所有子分类的分类ID列表（用于商品查询）
+     * 获取包含所有子分类（任意深度）的分类ID列表（用于商品查询）
      */
     public List<Integer> getCategoryIdsIncludeChildren(Integer categoryId) {
-        List<Integer> categoryIds = new ArrayList<>();
-        categoryIds.add(categoryId);
-        
-        // 添加子分类ID
-        List<Integer> childIds = categoryRepository.findChildCategoryIds(categoryId);
-        categoryIds.addAll(childIds);
-        
+        int[] ids = getHierarchy().getSelfAndDescendants(categoryId);
+        List<Integer> categoryIds = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            categoryIds.add(id);
+        }
         return categoryIds;
     }
     
     /**
-     * 更新分类商品数量
+     * 重新构建分类层级快照（分类变更后调用）
      */
-    @Transactional
-    public void updateCategoryProductCount(Integer categoryId) {
-        categoryRepository.updateProductCount(categoryId);
-        log.info("Updated product count for category: {}", categoryId);
+    public void refreshHierarchy() {
+        CategoryHierarchy rebuilt = CategoryHierarchy.build(categoryRepository.findAllActiveCategories());
+        hierarchy = rebuilt;
+        log.info("Category hierarchy rebuilt: categories={}", rebuilt.size());
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        refreshHierarchy();
+    }
+    
+    /**
+     * 定时刷新，兜底直接修改数据库等未经过服务层的分类变更
+     */
+    @Scheduled(fixedDelayString = "${category.hierarchy.refresh-interval-ms:300000}",
+               initialDelayString = "${category.hierarchy.refresh-interval-ms:300000}")
+    public void scheduledRefresh() {
+        try {
+            refreshHierarchy();
+        } catch (Exception e) {
+            log.error("Refresh category hierarchy failed", e);
+        }
+    }
+    
+    private CategoryHierarchy getHierarchy() {
+        CategoryHierarchy current = hierarchy;
+        if (current == null) {
+            synchronized (this) {
+                if (hierarchy == null) {
+                    refreshHierarchy();
+                }
+                current = hierarchy;
+            }
+        }
+        return current;
     }
     
     /**
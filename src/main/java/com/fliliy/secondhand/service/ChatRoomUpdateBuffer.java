@@ -0,0 +1,264 @@
+package com.fliliy.secondhand.service;
+
+import com.fliliy.secondhand.entity.ChatMessage;
+import com.fliliy.secondhand.entity.ChatRoom;
+import com.fliliy.secondhand.repository.ChatRoomRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 聊天室新消息记录：每条消息只对chat_rooms执行一条UPDATE（消息序号、最后消息、消息总数、双方未读数）
+ * 开启合并提交后，序号在独立的短事务中分配，不在发送事务中持有聊天室行锁；发送事务提交时消息先进入缓冲，
+ * 同一聊天室窗口期内的消息合并为一次更新，由后台线程在独立事务中写入；
+ * 代价是序号可能不按顺序提交，发送事务回滚时序号留空；进程异常退出时可能丢失窗口期内的计数（消息本身已落库）
+ * 合并写入时对方可能已读到缓冲中的消息，未读数只计入序号高于对方当前已读水位的消息
+ */
+@Component
+@Slf4j
+public class ChatRoomUpdateBuffer {
+
+    private static final long RETRY_DELAY_MILLIS = 1000;
+    // 读取已读水位后被并发推进时的重试次数，超过后按写入失败稍后重试
+    private static final int MAX_READ_SEQ_ATTEMPTS = 3;
+
+    private final ChatRoomRepository chatRoomRepository;
+    private final ResourceVersionService resourceVersionService;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate seqTransactionTemplate;
+    private final boolean groupCommitEnabled;
+    private final long windowMillis;
+
+    private final Map<Long, PendingUpdate> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+
+    public ChatRoomUpdateBuffer(ChatRoomRepository chatRoomRepository,
+                                ResourceVersionService resourceVersionService,
+                                PlatformTransactionManager transactionManager,
+                                @Value("${chat.room-update.group-commit.enabled:false}") boolean groupCommitEnabled,
+                                @Value("${chat.room-update.group-commit.window-ms:5}") long windowMillis) {
+        this.chatRoomRepository = chatRoomRepository;
+        this.resourceVersionService = resourceVersionService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.seqTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.seqTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.groupCommitEnabled = groupCommitEnabled;
+        this.windowMillis = windowMillis;
+        this.scheduler = groupCommitEnabled ? Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "chat-room-update");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    /**
+     * 为新消息分配序号并记录到聊天室，返回分配的序号（消息保存前调用）
+     * 未开启合并提交时在当前事务中用一条UPDATE完成；开启时序号在独立事务中分配，聊天室更新在提交后合并写入
+     */
+    public long allocateAndRecord(ChatRoom chatRoom, ChatMessage message) {
+        if (!groupCommitEnabled) {
+            PendingUpdate update = new PendingUpdate(chatRoom, message);
+            int buyerUnread = update.buyerUnreadSeqs.size();
+            int sellerUnread = update.sellerUnreadSeqs.size();
+            if (chatRoomRepository.recordMessageWithSeq(update.chatRoomId, update.lastMessageId,
+                    update.lastMessageContent, update.lastMessageType, update.lastMessageSenderId,
+                    update.messageCount, buyerUnread, sellerUnread) == 0) {
+                throw new RuntimeException("聊天室不存在");
+            }
+            incrementUnreadVersions(update, buyerUnread, sellerUnread);
+            return chatRoomRepository.findMessageSeq(chatRoom.getId());
+        }
+
+        Long seq = seqTransactionTemplate.execute(status -> chatRoomRepository.allocateMessageSeq(chatRoom.getId()));
+        message.setSeq(seq);
+        record(chatRoom, message);
+        return seq;
+    }
+
+    // 合并提交：发送事务提交后进入缓冲
+    private void record(ChatRoom chatRoom, ChatMessage message) {
+        PendingUpdate update = new PendingUpdate(chatRoom, message);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue(update);
+                }
+            });
+        } else {
+            enqueue(update);
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdownNow();
+        for (Long chatRoomId : new ArrayList<>(pending.keySet())) {
+            flush(chatRoomId);
+        }
+    }
+
+    // 合并到聊天室的待写入更新；该聊天室没有待写入更新时，窗口期结束后写入
+    private void enqueue(PendingUpdate update) {
+        boolean[] created = new boolean[1];
+        pending.compute(update.chatRoomId, (id, existing) -> {
+            if (existing == null) {
+                created[0] = true;
+                return update;
+            }
+            existing.merge(update);
+            return existing;
+        });
+
+        if (created[0] && !scheduler.isShutdown()) {
+            scheduler.schedule(() -> flush(update.chatRoomId), windowMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flush(Long chatRoomId) {
+        PendingUpdate update = pending.remove(chatRoomId);
+        if (update == null) {
+            return;
+        }
+
+        try {
+            writeAfterReadSeqs(update);
+        } catch (Exception e) {
+            // 写入失败时放回缓冲，稍后重试
+            log.error("Flush chat room update failed: chatRoomId={}, messages={}",
+                    chatRoomId, update.messageCount, e);
+            if (!scheduler.isShutdown()) {
+                requeue(update);
+            }
+        }
+    }
+
+    // 失败的更新早于期间新到的消息，合并时以新消息作为最后消息
+    private void requeue(PendingUpdate failed) {
+        boolean[] created = new boolean[1];
+        pending.compute(failed.chatRoomId, (id, newer) -> {
+            if (newer == null) {
+                created[0] = true;
+            } else {
+                failed.merge(newer);
+            }
+            return failed;
+        });
+
+        if (created[0]) {
+            scheduler.schedule(() -> flush(failed.chatRoomId), RETRY_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // 合并写入：按当前已读水位计算未读增量，写入时水位未变才生效；
+    // 每次尝试使用独立事务，重试时读到的是最新提交的水位而不是同一事务的快照
+    private void writeAfterReadSeqs(PendingUpdate update) {
+        for (int attempt = 0; attempt < MAX_READ_SEQ_ATTEMPTS; attempt++) {
+            if (Boolean.TRUE.equals(transactionTemplate.execute(status -> tryWriteAtReadSeqs(update)))) {
+                return;
+            }
+        }
+        throw new IllegalStateException("read seq kept changing");
+    }
+
+    private boolean tryWriteAtReadSeqs(PendingUpdate update) {
+        List<Object[]> rows = chatRoomRepository.findReadSeqs(update.chatRoomId);
+        if (rows.isEmpty()) {
+            log.warn("Chat room not found for pending update: chatRoomId={}", update.chatRoomId);
+            return true;
+        }
+        Long buyerReadSeq = (Long) rows.get(0)[0];
+        Long sellerReadSeq = (Long) rows.get(0)[1];
+        int buyerUnread = countAfter(update.buyerUnreadSeqs, buyerReadSeq);
+        int sellerUnread = countAfter(update.sellerUnreadSeqs, sellerReadSeq);
+        if (chatRoomRepository.recordMessagesAtReadSeqs(update.chatRoomId, update.lastMessageId,
+                update.lastMessageContent, update.lastMessageType, update.lastMessageSenderId,
+                update.messageCount, buyerUnread, sellerUnread, buyerReadSeq, sellerReadSeq) == 0) {
+            return false;
+        }
+        incrementUnreadVersions(update, buyerUnread, sellerUnread);
+        return true;
+    }
+
+    // 未读数版本号在更新提交后递增
+    private void incrementUnreadVersions(PendingUpdate update, int buyerUnread, int sellerUnread) {
+        if (buyerUnread > 0) {
+            resourceVersionService.increment(ResourceVersionService.unreadCount(update.buyerId));
+        }
+        if (sellerUnread > 0) {
+            resourceVersionService.increment(ResourceVersionService.unreadCount(update.sellerId));
+        }
+    }
+
+    private static int countAfter(List<Long> seqs, Long readSeq) {
+        int count = 0;
+        for (Long seq : seqs) {
+            // 没有序号的消息无法与水位比较，按未读计入
+            if (seq == null || readSeq == null || seq > readSeq) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static final class PendingUpdate {
+        private final Long chatRoomId;
+        private final Long buyerId;
+        private final Long sellerId;
+        private int messageCount;
+        // 计入买家/卖家未读的消息序号
+        private final List<Long> buyerUnreadSeqs = new ArrayList<>(1);
+        private final List<Long> sellerUnreadSeqs = new ArrayList<>(1);
+        private Long lastMessageId;
+        private String lastMessageContent;
+        private ChatRoom.MessageType lastMessageType;
+        private Long lastMessageSenderId;
+
+        private PendingUpdate(ChatRoom chatRoom, ChatMessage message) {
+            Long senderId = message.getSenderId();
+            this.chatRoomId = chatRoom.getId();
+            this.buyerId = chatRoom.getBuyerId();
+            this.sellerId = chatRoom.getSellerId();
+            this.messageCount = 1;
+            // 与原先按发送者区分的更新一致：发送者为空（系统消息）时双方都不增加
+            if (senderId != null && !senderId.equals(buyerId)) {
+                buyerUnreadSeqs.add(message.getSeq());
+            }
+            if (senderId != null && !senderId.equals(sellerId)) {
+                sellerUnreadSeqs.add(message.getSeq());
+            }
+            this.lastMessageId = message.getId();
+            this.lastMessageContent = message.getDisplayContent();
+            this.lastMessageType = ChatRoom.MessageType.valueOf(message.getMessageType().name());
+            this.lastMessageSenderId = senderId;
+        }
+
+        // 合并后来的消息：计数累加，最后消息取后来的
+        private void merge(PendingUpdate later) {
+            messageCount += later.messageCount;
+            buyerUnreadSeqs.addAll(later.buyerUnreadSeqs);
+            sellerUnreadSeqs.addAll(later.sellerUnreadSeqs);
+            lastMessageId = later.lastMessageId;
+            lastMessageContent = later.lastMessageContent;
+            lastMessageType = later.lastMessageType;
+            lastMessageSenderId = later.lastMessageSenderId;
+        }
+    }
+}
@@ -6,22 +6,30 @@ import com.fliliy.secondhand.entity.ChatMessage;
 import com.fliliy.secondhand.entity.ChatRoom;
 import com.fliliy.secondhand.entity.Product;
 import com.fliliy.secondhand.entity.User;
+import com.fliliy.secondhand.event.ProductDiscussedEvent;
 import com.fliliy.secondhand.repository.ChatMessageRepository;
 import com.fliliy.secondhand.repository.ChatRoomRepository;
 import com.fliliy.secondhand.repository.ProductRepository;
 import com.fliliy.secondhand.repository.UserRepository;
+import com.fliliy.secondhand.repository.UserSummaryRow;
 import com.fliliy.secondhand.util.IdGenerator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -49,6 +57,21 @@ public class ChatService {
     @Autowired
     private WebSocketMessageService webSocketMessageService;
     
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    
+    @Autowired
+    private ResourceVersionService resourceVersionService;
+    
+    @Autowired
+    private ChatRoomUpdateBuffer chatRoomUpdateBuffer;
+    
+    @Autowired
+    private RecentChatMessageCache recentChatMessageCache;
+    
+    @Autowired
+    private UserSummaryCache userSummaryCache;
+    
     
     /**
      * 创建或获取聊天室 - 基于用户对唯一性
@@ -125,6 +148,10 @@ public class ChatService {
         return chatMessageRepository.getDiscussedProducts(chatRoomId);
     }
     
+    private static long toLong(Object value) {
+        return value != null ? ((Number) value).longValue() : 0L;
+    }
+    
     /**
      * 创建商品快照JSON
      */
@@ -180,22 +207,131 @@ public class ChatService {
     }
     
     /**
-     * 获取聊天记录
+     * 获取聊天记录：按消息序号做键集分页，不查询总数
+     * afterSeq用于断线重连，返回该序号之后的消息（按序号正序）；否则按序号倒序返回beforeSeq（或before时间）之前的消息
      */
     @Transactional(readOnly = true)
-    public Page<ChatMessage> getChatMessages(Long chatRoomId, Long userId, int page, int size, LocalDateTime before) {
+    public Slice<ChatMessage> getChatMessages(Long chatRoomId, Long userId, int page, int size,
+                                              LocalDateTime before, Long beforeSeq, Long afterSeq) {
         // 验证访问权限
         if (!canAccessChatRoom(chatRoomId, userId)) {
             throw new RuntimeException("无权限访问此聊天室");
         }
         
-        Pageable pageable = PageRequest.of(page - 1, size);
-        
+        if (afterSeq != null) {
+            return chatMessageRepository.findAfterSeq(chatRoomId, afterSeq, PageRequest.of(0, size));
+        }
+        if (beforeSeq != null) {
+            return chatMessageRepository.findBeforeSeq(chatRoomId, beforeSeq, PageRequest.of(0, size));
+        }
         if (before != null) {
-            return chatMessageRepository.findByChatRoomIdAndSentAtBefore(chatRoomId, before, pageable);
+            return chatMessageRepository.findByChatRoomIdAndSentAtBefore(chatRoomId, before, PageRequest.of(0, size));
+        }
+        // 兼容按页码加载，建议使用beforeSeq
+        return chatMessageRepository.findByChatRoomIdOrderBySeqDesc(chatRoomId, PageRequest.of(page - 1, size));
+    }
+    
+    /**
+     * 获取聊天记录响应：活跃聊天室的第一页直接从最近消息缓存返回，其余按getChatMessages查询
+     */
+    @Transactional(readOnly = true)
+    public Slice<ChatMessageResponse> getChatMessageResponses(Long chatRoomId, Long userId, int page, int size,
+                                                              LocalDateTime before, Long beforeSeq, Long afterSeq) {
+        boolean latestPage = page == 1 && before == null && beforeSeq == null && afterSeq == null;
+        if (!latestPage || !recentChatMessageCache.canServe(size)) {
+            Slice<ChatMessage> messages = getChatMessages(chatRoomId, userId, page, size, before, beforeSeq, afterSeq);
+            return new SliceImpl<>(toHistoryResponses(messages.getContent(), userId), messages.getPageable(), messages.hasNext());
+        }
+        
+        List<Object[]> state = chatRoomRepository.findCacheState(chatRoomId);
+        Slice<ChatMessageResponse> cached = state.isEmpty() ? null
+                : recentChatMessageCache.getLatest(chatRoomId, userId, size, (Long) state.get(0)[0], (Long) state.get(0)[1]);
+        if (cached != null) {
+            return cached;
+        }
+        
+        // 首次读取：加载最近N条消息填充缓存
+        long loadToken = recentChatMessageCache.beginLoad(chatRoomId);
+        ChatRoom chatRoom = getChatRoomById(chatRoomId);
+        if (!chatRoom.isParticipant(userId)) {
+            throw new RuntimeException("无权限访问此聊天室");
+        }
+        
+        Slice<ChatMessageResponse> mirrored = recentChatMessageCache.loadFromMirror(chatRoom, loadToken, userId, size);
+        if (mirrored != null) {
+            return mirrored;
+        }
+        
+        Slice<ChatMessage> latest = chatMessageRepository.findByChatRoomIdOrderBySeqDesc(chatRoomId,
+                PageRequest.of(0, recentChatMessageCache.getRoomSize()));
+        List<ChatMessageResponse> responses = toHistoryResponses(latest.getContent(), userId);
+        recentChatMessageCache.fill(chatRoom, loadToken, responses, latest.hasNext());
+        
+        return new SliceImpl<>(responses.subList(0, Math.min(size, responses.size())), PageRequest.of(0, size),
+                responses.size() > size || latest.hasNext());
+    }
+    
+    /**
+     * 聊天记录中的消息响应；currentUserId为null时isFromMe为false
+     */
+    public ChatMessageResponse toHistoryResponse(ChatMessage message, Long currentUserId) {
+        return toHistoryResponse(message, currentUserId, getChatRoomById(message.getChatRoomId()),
+                userSummaryCache.getSummaries(Collections.singleton(message.getSenderId())));
+    }
+    
+    /**
+     * 批量转换同一聊天室的消息响应，发送者一次批量查询
+     */
+    public List<ChatMessageResponse> toHistoryResponses(List<ChatMessage> messages, Long currentUserId) {
+        if (messages.isEmpty()) {
+            return new ArrayList<>();
+        }
+        
+        ChatRoom chatRoom = getChatRoomById(messages.get(0).getChatRoomId());
+        Map<Long, UserSummaryRow> senders = userSummaryCache.getSummaries(messages.stream()
+                .map(ChatMessage::getSenderId)
+                .collect(Collectors.toSet()));
+        return messages.stream()
+                .map(message -> toHistoryResponse(message, currentUserId, chatRoom, senders))
+                .collect(Collectors.toList());
+    }
+    
+    private ChatMessageResponse toHistoryResponse(ChatMessage message, Long currentUserId, ChatRoom chatRoom,
+                                                  Map<Long, UserSummaryRow> senders) {
+        ChatMessageResponse response = new ChatMessageResponse();
+        response.setId(message.getId());
+        response.setSeq(message.getSeq());
+        response.setSenderId(message.getSenderId());
+        response.setType(message.getMessageType().toString());
+        response.setContent(message.getDisplayContent());
+        response.setSentAt(message.getSentAt());
+        response.setIsFromMe(message.getSenderId() != null && message.getSenderId().equals(currentUserId));
+        response.setStatus(chatRoom.getMessageStatus(message).toString());
+        response.setIsRecalled(message.getIsRecalled());
+        response.setRecalledAt(message.getRecalledAt());
+        
+        // 设置发送者姓名
+        if (message.getSenderId() != null) {
+            UserSummaryRow sender = senders.get(message.getSenderId());
+            response.setSenderName(sender != null ? sender.getUsername() : "未知用户");
         } else {
-            return chatMessageRepository.findByChatRoomIdOrderBySentAtDesc(chatRoomId, pageable);
+            response.setSenderName("系统");
+        }
+        
+        // 图片消息相关字段
+        if (message.getMessageType() == ChatMessage.MessageType.IMAGE) {
+            response.setThumbnail(message.getThumbnailUrl());
+            if (message.getImageWidth() != null && message.getImageHeight() != null) {
+                response.setImageSize(new ChatMessageResponse.ImageSize(message.getImageWidth(), message.getImageHeight()));
+            }
         }
+        
+        // 语音消息相关字段
+        if (message.getMessageType() == ChatMessage.MessageType.VOICE) {
+            response.setDuration(message.getDuration());
+        }
+        
+        return response;
     }
     
     /**
@@ -212,11 +348,8 @@ public class ChatService {
         ChatMessage message = ChatMessage.createTextMessage(chatRoomId, senderId, content);
         message.setId(IdGenerator.generateProductId());
         
-        // 保存消息
-        message = chatMessageRepository.save(message);
-        
-        // 更新聊天室最后消息信息
-        updateChatRoomLastMessage(chatRoom, message);
+        // 保存消息，同时分配序号并更新聊天室最后消息信息
+        message = saveAndRecordMessage(chatRoom, message);
         
         // WebSocket实时推送
         try {
@@ -255,11 +388,8 @@ public class ChatService {
                 thumbnailUrl, width, height, fileSize);
         message.setId(IdGenerator.generateProductId());
         
-        // 保存消息
-        message = chatMessageRepository.save(message);
-        
-        // 更新聊天室最后消息信息
-        updateChatRoomLastMessage(chatRoom, message);
+        // 保存消息，同时分配序号并更新聊天室最后消息信息
+        message = saveAndRecordMessage(chatRoom, message);
         
         logger.info("发送图片消息 - 聊天室ID: {}, 发送者ID: {}, 文件URL: {}", chatRoomId, senderId, fileUrl);
         
@@ -281,11 +411,8 @@ public class ChatService {
         ChatMessage message = ChatMessage.createVoiceMessage(chatRoomId, senderId, fileUrl, duration, fileSize);
         message.setId(IdGenerator.generateProductId());
         
-        // 保存消息
-        message = chatMessageRepository.save(message);
-        
-        // 更新聊天室最后消息信息
-        updateChatRoomLastMessage(chatRoom, message);
+        // 保存消息，同时分配序号并更新聊天室最后消息信息
+        message = saveAndRecordMessage(chatRoom, message);
         
         logger.info("发送语音消息 - 聊天室ID: {}, 发送者ID: {}, 时长: {}秒", chatRoomId, senderId, duration);
         
@@ -304,7 +431,7 @@ public class ChatService {
         message.setId(IdGenerator.generateProductId());
         
         // 保存消息
-        message = chatMessageRepository.save(message);
+        message = saveNewMessage(message);
         
         // 更新聊天室最后消息信息（系统消息不增加未读数）
         chatRoom.setLastMessageId(message.getId());
@@ -322,21 +449,24 @@ public class ChatService {
     }
     
     /**
-     * 标记消息为已读
+     * 标记消息为已读：已读水位推进到聊天室最新消息并清零未读数，一条更新，与未读消息数量无关
      */
     public void markMessagesAsRead(Long chatRoomId, Long userId) {
         // 验证权限
-        if (!canAccessChatRoom(chatRoomId, userId)) {
+        ChatRoom chatRoom = getChatRoomById(chatRoomId);
+        if (!chatRoom.isParticipant(userId)) {
             throw new RuntimeException("无权限访问此聊天室");
         }
         
-        // 批量标记消息为已读
-        chatMessageRepository.markChatRoomMessagesAsRead(chatRoomId, userId);
-        
-        // 更新聊天室未读计数
-        ChatRoom chatRoom = getChatRoomById(chatRoomId);
-        chatRoom.markAsRead(userId);
-        chatRoomRepository.save(chatRoom);
+        if (userId.equals(chatRoom.getBuyerId())) {
+            chatRoomRepository.markAsReadForBuyer(chatRoomId, userId);
+        } else {
+            chatRoomRepository.markAsReadForSeller(chatRoomId, userId);
+        }
+        // 更新后持有聊天室行锁，读到的最新序号即已读水位
+        Object[] state = chatRoomRepository.findCacheState(chatRoomId).get(0);
+        recentChatMessageCache.markRead(chatRoomId, userId, (Long) state[0], (Long) state[1]);
+        resourceVersionService.increment(ResourceVersionService.unreadCount(userId));
         
         logger.info("标记消息为已读 - 聊天室ID: {}, 用户ID: {}", chatRoomId, userId);
     }
@@ -354,7 +484,14 @@ public class ChatService {
             throw new RuntimeException("无权限标记此消息");
         }
         
-        chatMessageRepository.markAsDelivered(messageId);
+        // 送达水位推进到该消息，之前的消息一并视为已送达
+        if (userId.equals(chatRoom.getBuyerId())) {
+            chatRoomRepository.advanceBuyerDeliveredSeq(chatRoom.getId(), userId, message.getSeq());
+        } else {
+            chatRoomRepository.advanceSellerDeliveredSeq(chatRoom.getId(), userId, message.getSeq());
+        }
+        recentChatMessageCache.markDelivered(chatRoom.getId(), userId, message.getSeq(),
+                chatRoomRepository.findStateVersion(chatRoom.getId()));
         logger.info("标记消息为已送达 - 消息ID: {}, 用户ID: {}", messageId, userId);
     }
     
@@ -371,7 +508,14 @@ public class ChatService {
             throw new RuntimeException("无权限标记此消息");
         }
         
-        chatMessageRepository.markAsRead(messageId);
+        // 已读水位推进到该消息，之前的消息一并视为已读
+        if (userId.equals(chatRoom.getBuyerId())) {
+            chatRoomRepository.advanceBuyerReadSeq(chatRoom.getId(), userId, message.getSeq());
+        } else {
+            chatRoomRepository.advanceSellerReadSeq(chatRoom.getId(), userId, message.getSeq());
+        }
+        recentChatMessageCache.markRead(chatRoom.getId(), userId, message.getSeq(),
+                chatRoomRepository.findStateVersion(chatRoom.getId()));
         logger.info("标记消息为已读 - 消息ID: {}, 用户ID: {}", messageId, userId);
     }
     
@@ -385,11 +529,18 @@ public class ChatService {
             throw new RuntimeException("无权限访问此聊天室");
         }
         
+        // 按对方的水位统计，一次查询
+        ChatRoom chatRoom = getChatRoomById(chatRoomId);
+        Long recipientId = chatRoom.getOtherParticipant(userId);
+        List<Object[]> rows = chatMessageRepository.countDeliveryStats(chatRoomId, userId,
+                chatRoom.getReadSeqOf(recipientId), chatRoom.getDeliveredSeqOf(recipientId));
+        Object[] counts = rows.isEmpty() ? new Object[4] : rows.get(0);
+        
         Map<String, Long> stats = new HashMap<>();
-        stats.put("sent", chatMessageRepository.countByChatRoomIdAndSenderIdAndStatus(chatRoomId, userId, ChatMessage.MessageStatus.SENT));
-        stats.put("delivered", chatMessageRepository.countByChatRoomIdAndSenderIdAndStatus(chatRoomId, userId, ChatMessage.MessageStatus.DELIVERED));
-        stats.put("read", chatMessageRepository.countByChatRoomIdAndSenderIdAndStatus(chatRoomId, userId, ChatMessage.MessageStatus.READ));
-        stats.put("failed", chatMessageRepository.countByChatRoomIdAndSenderIdAndStatus(chatRoomId, userId, ChatMessage.MessageStatus.FAILED));
+        stats.put("sent", toLong(counts[0]));
+        stats.put("delivered", toLong(counts[1]));
+        stats.put("read", toLong(counts[2]));
+        stats.put("failed", toLong(counts[3]));
         
         return stats;
     }
@@ -408,6 +559,10 @@ public class ChatService {
         
         // 撤回消息
         chatMessageRepository.recallMessage(messageId);
+        // 递增消息状态版本，其他节点缓存的该聊天室最近消息随之失效
+        chatRoomRepository.incrementStateVersion(message.getChatRoomId());
+        recentChatMessageCache.markRecalled(message.getChatRoomId(), messageId,
+                chatRoomRepository.findStateVersion(message.getChatRoomId()));
         
         logger.info("撤回消息 - 消息ID: {}, 用户ID: {}", messageId, userId);
         
@@ -463,24 +618,30 @@ public class ChatService {
     }
     
     /**
-     * 更新聊天室最后消息信息
+     * 保存新消息，保存前分配聊天室内的消息序号（调用方自行更新聊天室最后消息信息）
      */
-    private void updateChatRoomLastMessage(ChatRoom chatRoom, ChatMessage message) {
-        // 1. 更新基本的最后消息信息
-        chatRoomRepository.updateLastMessage(
-            chatRoom.getId(), 
-            message.getId(), 
-            message.getDisplayContent(),
-            ChatRoom.MessageType.valueOf(message.getMessageType().name()), 
-            message.getSenderId()
-        );
-        
-        // 2. 增加消息总数
-        chatRoomRepository.incrementTotalMessages(chatRoom.getId());
-        
-        // 3. 增加未读数（根据发送者不同分别处理）
-        chatRoomRepository.incrementBuyerUnreadCount(chatRoom.getId(), message.getSenderId());
-        chatRoomRepository.incrementSellerUnreadCount(chatRoom.getId(), message.getSenderId());
+    private ChatMessage saveNewMessage(ChatMessage message) {
+        message.setSeq(chatRoomRepository.allocateMessageSeq(message.getChatRoomId()));
+        return saveWithSeq(message);
+    }
+    
+    /**
+     * 保存新消息：分配序号与更新聊天室最后消息、消息总数、未读数合并为一次更新
+     */
+    private ChatMessage saveAndRecordMessage(ChatRoom chatRoom, ChatMessage message) {
+        message.setSeq(chatRoomUpdateBuffer.allocateAndRecord(chatRoom, message));
+        return saveWithSeq(message);
+    }
+    
+    // 聊天室未缓存时不构建消息响应（避免查询聊天室和发送者），只在提交后使其缓存失效
+    private ChatMessage saveWithSeq(ChatMessage message) {
+        ChatMessage saved = chatMessageRepository.save(message);
+        if (recentChatMessageCache.isCached(saved.getChatRoomId())) {
+            recentChatMessageCache.append(saved.getChatRoomId(), toHistoryResponse(saved, null));
+        } else {
+            recentChatMessageCache.evict(saved.getChatRoomId());
+        }
+        return saved;
     }
     
     /**
@@ -605,8 +766,9 @@ public class ChatService {
         }
         
         // 获取聊天室参与者信息
-        User buyer = userRepository.findById(chatRoom.getBuyerId()).orElse(null);
-        User seller = userRepository.findById(chatRoom.getSellerId()).orElse(null);
+        Map<Long, UserSummaryRow> users = userSummaryCache.getSummaries(Arrays.asList(chatRoom.getBuyerId(), chatRoom.getSellerId()));
+        UserSummaryRow buyer = users.get(chatRoom.getBuyerId());
+        UserSummaryRow seller = users.get(chatRoom.getSellerId());
         
         Map<String, Object> exportData = new HashMap<>();
         exportData.put("chatRoomId", chatRoomId);
@@ -640,6 +802,8 @@ public class ChatService {
                     Map<String, Object> msgMap = new HashMap<>();
                     msgMap.put("id", msg.getId());
                     msgMap.put("senderId", msg.getSenderId());
+                    UserSummaryRow sender = msg.getSenderId() != null ? users.get(msg.getSenderId()) : null;
+                    msgMap.put("senderName", msg.getSenderId() == null ? "系统" : sender != null ? sender.getUsername() : "未知用户");
                     msgMap.put("type", msg.getMessageType().name());
                     msgMap.put("content", msg.getDisplayContent());
                     msgMap.put("sentAt", msg.getSentAt());
@@ -684,6 +848,7 @@ public class ChatService {
     private ChatMessageResponse convertToChatMessageResponse(ChatMessage message) {
         ChatMessageResponse response = new ChatMessageResponse();
         response.setId(message.getId());
+        response.setSeq(message.getSeq());
         response.setSenderId(message.getSenderId());
         response.setType(message.getMessageType().name());
         response.setContent(message.getContent());
@@ -753,6 +918,8 @@ public class ChatService {
         
         // 3. 创建或获取聊天室
         ChatRoom chatRoom = createOrGetChatRoom(buyerId, product.getSellerId());
+        // 同一买家再次发起讨论不重复计入咨询次数
+        boolean firstDiscussion = !chatMessageRepository.hasDiscussedProduct(chatRoom.getId(), productId);
         
         // 4. 创建商品卡片消息
         ChatMessage productCard = new ChatMessage();
@@ -778,13 +945,16 @@ public class ChatService {
         productCard.setStatus(ChatMessage.MessageStatus.SENT);
         productCard.setSentAt(LocalDateTime.now());
         
-        // 5. 保存消息
-        productCard = chatMessageRepository.save(productCard);
+        // 5. 保存消息，同时分配序号并更新聊天室最后消息信息
+        productCard = saveAndRecordMessage(chatRoom, productCard);
         
-        // 6. 更新聊天室最后消息信息
-        updateChatRoomLastMessage(chatRoom, productCard);
+        // 更新商品咨询次数
+        if (firstDiscussion) {
+            productRepository.incrementChatCount(productId);
+            eventPublisher.publishEvent(new ProductDiscussedEvent(productId, buyerId));
+        }
         
-        // 7. 发送WebSocket通知
+        // 6. 发送WebSocket通知
         try {
             ChatMessageResponse response = convertToChatMessageResponse(productCard);
             webSocketMessageService.sendMessageToUser(product.getSellerId(), response);
@@ -804,12 +974,9 @@ public class ChatService {
     public void sendTransactionRequestMessage(ChatMessage message) {
         logger.info("发送交易申请消息 - 聊天室ID: {}, 交易ID: {}", message.getChatRoomId(), message.getTransactionId());
         
-        // 保存消息
-        ChatMessage savedMessage = chatMessageRepository.save(message);
-        
-        // 更新聊天室最后消息信息
+        // 保存消息，同时分配序号并更新聊天室最后消息信息
         ChatRoom chatRoom = getChatRoomById(message.getChatRoomId());
-        updateChatRoomLastMessage(chatRoom, savedMessage);
+        ChatMessage savedMessage = saveAndRecordMessage(chatRoom, message);
         
         // WebSocket实时推送
         try {
@@ -830,7 +997,7 @@ public class ChatService {
         logger.info("发送交易响应消息 - 聊天室ID: {}, 交易ID: {}", message.getChatRoomId(), message.getTransactionId());
         
         // 保存消息
-        ChatMessage savedMessage = chatMessageRepository.save(message);
+        ChatMessage savedMessage = saveNewMessage(message);
         
         // 更新聊天室最后消息信息
         ChatRoom chatRoom = getChatRoomById(message.getChatRoomId());
@@ -0,0 +1,206 @@
+package com.fliliy.secondhand.service;
+
+import com.fliliy.secondhand.event.FavoriteToggledEvent;
+import com.fliliy.secondhand.repository.ProductFavoriteRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * 用户收藏关系缓存：每个用户的收藏商品ID保存为有序long[]，二分查找判断是否收藏
+ * 按LRU淘汰并按TTL过期，本节点收藏/取消收藏时原地更新，并通过Redis发布订阅通知其他节点移除该用户的缓存
+ */
+@Component
+@Slf4j
+public class FavoriteMembershipCache implements MessageListener {
+    
+    public static final String INVALIDATION_CHANNEL = "favorites:membership-invalidation";
+    
+    private static final long[] EMPTY = new long[0];
+    private static final int STRIPES = 64;
+    
+    private final ProductFavoriteRepository productFavoriteRepository;
+    private final StringRedisTemplate redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final long ttlMillis;
+    private final Map<Long, Entry> cache;
+    
+    // 按用户分段的变更计数，加载期间同一分段发生变更时不写入缓存，避免覆盖为旧数据
+    private final long[] modificationCounts = new long[STRIPES];
+    
+    // 区分本节点发出的失效通知
+    private final String nodeId = UUID.randomUUID().toString();
+    
+    public FavoriteMembershipCache(ProductFavoriteRepository productFavoriteRepository,
+                                   StringRedisTemplate redisTemplate,
+                                   RedisMessageListenerContainer cacheInvalidationListenerContainer,
+                                   @Value("${favorites.cache.max-users:10000}") int maxUsers,
+                                   @Value("${favorites.cache.ttl-ms:300000}") long ttlMillis) {
+        this.productFavoriteRepository = productFavoriteRepository;
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = cacheInvalidationListenerContainer;
+        this.ttlMillis = ttlMillis;
+        this.cache = new LinkedHashMap<Long, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                return size() > maxUsers;
+            }
+        };
+    }
+    
+    @PostConstruct
+    public void subscribe() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(INVALIDATION_CHANNEL));
+    }
+    
+    /**
+     * 判断用户是否收藏了商品
+     */
+    public boolean isFavorited(Long userId, long productId) {
+        if (userId == null) {
+            return false;
+        }
+        return Arrays.binarySearch(getFavoriteIds(userId), productId) >= 0;
+    }
+    
+    /**
+     * 从给定商品中筛选出用户已收藏的商品
+     */
+    public Set<Long> filterFavorited(Long userId, Collection<Long> productIds) {
+        if (userId == null || productIds.isEmpty()) {
+            return new HashSet<>();
+        }
+        
+        long[] favoriteIds = getFavoriteIds(userId);
+        Set<Long> favorited = new HashSet<>();
+        for (Long productId : productIds) {
+            if (Arrays.binarySearch(favoriteIds, productId) >= 0) {
+                favorited.add(productId);
+            }
+        }
+        return favorited;
+    }
+    
+    /**
+     * 收藏变更后原地更新（事务提交后执行），并通知其他节点
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFavoriteToggled(FavoriteToggledEvent event) {
+        apply(event);
+        publishEviction(event.getUserId());
+    }
+    
+    /**
+     * 移除用户缓存，并通知其他节点
+     */
+    public void evict(Long userId) {
+        evictLocal(userId);
+        publishEviction(userId);
+    }
+    
+    /**
+     * 接收其他节点的失效通知（nodeId|userId）
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split("\\|", 2);
+        if (parts.length < 2 || nodeId.equals(parts[0])) {
+            return;
+        }
+        try {
+            evictLocal(Long.valueOf(parts[1]));
+        } catch (NumberFormatException e) {
+            log.warn("Invalid favorite cache invalidation message: {}", parts[1]);
+        }
+    }
+    
+    private synchronized void apply(FavoriteToggledEvent event) {
+        modificationCounts[stripe(event.getUserId())]++;
+        
+        Entry entry = cache.get(event.getUserId());
+        if (entry == null) {
+            return;
+        }
+        
+        // 原地更新不延长过期时间，其他节点通知丢失时最多滞后一个TTL
+        long[] current = entry.productIds;
+        long productId = event.getProductId();
+        int pos = Arrays.binarySearch(current, productId);
+        if (event.isFavorited() && pos < 0) {
+            int insertAt = -pos - 1;
+            long[] updated = new long[current.length + 1];
+            System.arraycopy(current, 0, updated, 0, insertAt);
+            updated[insertAt] = productId;
+            System.arraycopy(current, insertAt, updated, insertAt + 1, current.length - insertAt);
+            cache.put(event.getUserId(), new Entry(updated, entry.expiresAt));
+        } else if (!event.isFavorited() && pos >= 0) {
+            long[] updated = new long[current.length - 1];
+            System.arraycopy(current, 0, updated, 0, pos);
+            System.arraycopy(current, pos + 1, updated, pos, current.length - pos - 1);
+            cache.put(event.getUserId(), new Entry(updated, entry.expiresAt));
+        }
+    }
+    
+    private synchronized void evictLocal(Long userId) {
+        modificationCounts[stripe(userId)]++;
+        cache.remove(userId);
+    }
+    
+    private void publishEviction(Long userId) {
+        try {
+            redisTemplate.convertAndSend(INVALIDATION_CHANNEL, nodeId + "|" + userId);
+        } catch (Exception e) {
+            // 发布失败时其他节点的缓存依靠TTL过期
+            log.warn("Publish favorite cache invalidation failed: userId={}, error={}", userId, e.getMessage());
+        }
+    }
+    
+    private long[] getFavoriteIds(Long userId) {
+        long expectedModificationCount;
+        synchronized (this) {
+            Entry cached = cache.get(userId);
+            if (cached != null && cached.expiresAt >= System.currentTimeMillis()) {
+                return cached.productIds;
+            }
+            expectedModificationCount = modificationCounts[stripe(userId)];
+        }
+        
+        List<Long> productIds = productFavoriteRepository.findProductIdsByUserId(userId);
+        long[] loaded = productIds.isEmpty() ? EMPTY : new long[productIds.size()];
+        for (int i = 0; i < loaded.length; i++) {
+            loaded[i] = productIds.get(i);
+        }
+        Arrays.sort(loaded);
+        
+        synchronized (this) {
+            if (ttlMillis > 0 && modificationCounts[stripe(userId)] == expectedModificationCount) {
+                cache.put(userId, new Entry(loaded, System.currentTimeMillis() + ttlMillis));
+            }
+        }
+        return loaded;
+    }
+    
+    private static int stripe(Long userId) {
+        return (int) (userId ^ (userId >>> 32)) & (STRIPES - 1);
+    }
+    
+    private static final class Entry {
+        private final long[] productIds;
+        private final long expiresAt;
+        
+        private Entry(long[] productIds, long expiresAt) {
+            this.productIds = productIds;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
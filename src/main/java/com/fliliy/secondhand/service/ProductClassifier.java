@@ -0,0 +1,230 @@
+package com.fliliy.secondhand.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fliliy.secondhand.entity.Product;
+import com.fliliy.secondhand.event.FavoriteToggledEvent;
+import com.fliliy.secondhand.event.ViewCountsFlushedEvent;
+import com.fliliy.secondhand.repository.ProductRepository;
+import com.fliliy.secondhand.util.KeywordAutomaton;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * 商品分类标记：发布和编辑时用关键词自动机识别品牌、配件商品，并按浏览量和收藏数维护热门标记
+ * 关键词词典保存在系统配置中，词典变更后自动回填存量商品
+ */
+@Service
+@Slf4j
+public class ProductClassifier {
+    
+    public static final String LABEL_BRAND = "brand";
+    public static final String LABEL_ACCESSORIES = "accessories";
+    
+    private static final String DICTIONARY_KEY = "product.classifier.dictionary";
+    private static final String APPLIED_FINGERPRINT_KEY = "product.classifier.applied_fingerprint";
+    private static final int BACKFILL_BATCH_SIZE = 500;
+    
+    private static final Map<String, List<String>> DEFAULT_DICTIONARY = new LinkedHashMap<>();
+    
+    static {
+        DEFAULT_DICTIONARY.put(LABEL_BRAND, Arrays.asList(
+                "apple", "samsung", "sony", "nike", "iphone", "ps5", "playstation", "品牌"));
+        DEFAULT_DICTIONARY.put(LABEL_ACCESSORIES, Arrays.asList(
+                "耳机", "充电器", "数据线", "保护壳", "手机壳", "移动电源", "充电宝", "支架",
+                "adapter", "cable", "case", "charger", "headset", "earphone", "配件"));
+    }
+    
+    private final ProductRepository productRepository;
+    private final SystemConfigService systemConfigService;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final ResourceVersionService resourceVersionService;
+    private final int minViewCount;
+    private final int minFavoriteCount;
+    
+    private volatile KeywordAutomaton automaton = KeywordAutomaton.build(DEFAULT_DICTIONARY);
+    private volatile String fingerprint;
+    
+    public ProductClassifier(ProductRepository productRepository,
+                             SystemConfigService systemConfigService,
+                             ObjectMapper objectMapper,
+                             PlatformTransactionManager transactionManager,
+                             ResourceVersionService resourceVersionService,
+                             @Value("${product.popular.min-view-count:50}") int minViewCount,
+                             @Value("${product.popular.min-favorite-count:5}") int minFavoriteCount) {
+        this.productRepository = productRepository;
+        this.systemConfigService = systemConfigService;
+        this.objectMapper = objectMapper;
+        // 事件监听在原事务提交后执行，需要独立事务
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.resourceVersionService = resourceVersionService;
+        this.minViewCount = minViewCount;
+        this.minFavoriteCount = minFavoriteCount;
+    }
+    
+    /**
+     * 按标题设置商品的分类标记（保存前调用）
+     */
+    public void classify(Product product) {
+        Set<String> labels = automaton.match(product.getTitle());
+        product.setIsBrand(labels.contains(LABEL_BRAND));
+        product.setIsAccessory(labels.contains(LABEL_ACCESSORIES));
+        product.setIsPopular(isPopular(product.getViewCount(), product.getFavoriteCount()));
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        refreshDictionary();
+    }
+    
+    /**
+     * 定时检查词典是否变更，变更后重建自动机并回填存量商品
+     */
+    @Scheduled(fixedDelayString = "${product.classifier.refresh-interval-ms:300000}",
+               initialDelayString = "${product.classifier.refresh-interval-ms:300000}")
+    public void scheduledRefresh() {
+        try {
+            refreshDictionary();
+        } catch (Exception e) {
+            log.error("Refresh product classifier dictionary failed", e);
+        }
+    }
+    
+    public synchronized void refreshDictionary() {
+        String json = systemConfigService.getConfigValue(DICTIONARY_KEY, null);
+        Map<String, List<String>> dictionary = parseDictionary(json);
+        String current = DigestUtils.md5DigestAsHex(dictionary.toString().getBytes(StandardCharsets.UTF_8));
+        
+        if (!current.equals(fingerprint)) {
+            automaton = KeywordAutomaton.build(dictionary);
+            fingerprint = current;
+            log.info("Product classifier dictionary loaded: labels={}", dictionary.keySet());
+        }
+        
+        if (!current.equals(systemConfigService.getConfigValue(APPLIED_FINGERPRINT_KEY, null))) {
+            backfill();
+            systemConfigService.saveConfigValue(APPLIED_FINGERPRINT_KEY, current, "商品分类词典已回填版本");
+        }
+    }
+    
+    /**
+     * 按ID顺序分批重新计算存量商品的分类标记，只更新有变化的商品
+     */
+    public void backfill() {
+        long afterId = 0;
+        int updated = 0;
+        while (true) {
+            List<Object[]> rows = productRepository.findClassificationBatch(afterId, PageRequest.of(0, BACKFILL_BATCH_SIZE));
+            if (rows.isEmpty()) {
+                break;
+            }
+            
+            List<Long> batchIds = new ArrayList<>(rows.size());
+            Map<String, List<Long>> changed = new HashMap<>();
+            for (Object[] row : rows) {
+                Long productId = (Long) row[0];
+                batchIds.add(productId);
+                
+                Set<String> labels = automaton.match((String) row[1]);
+                boolean brand = labels.contains(LABEL_BRAND);
+                boolean accessory = labels.contains(LABEL_ACCESSORIES);
+                if (!Boolean.valueOf(brand).equals(row[2]) || !Boolean.valueOf(accessory).equals(row[3])) {
+                    changed.computeIfAbsent(brand + "|" + accessory, key -> new ArrayList<>()).add(productId);
+                }
+            }
+            
+            updated += transactionTemplate.execute(status -> {
+                int count = 0;
+                for (Map.Entry<String, List<Long>> group : changed.entrySet()) {
+                    String[] flags = group.getKey().split("\\|");
+                    count += productRepository.updateClassification(group.getValue(),
+                            Boolean.valueOf(flags[0]), Boolean.valueOf(flags[1]));
+                }
+                int popularChanged = productRepository.refreshPopularFlags(batchIds, minViewCount, minFavoriteCount);
+                if (count > 0 || popularChanged > 0) {
+                    // 品牌/配件/热门筛选的列表结果变化
+                    resourceVersionService.increment(ResourceVersionService.PRODUCTS);
+                }
+                return count;
+            });
+            afterId = batchIds.get(batchIds.size() - 1);
+        }
+        
+        log.info("Product classification backfill finished: updated={}", updated);
+    }
+    
+    /**
+     * 浏览量写回后刷新热门标记
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onViewCountsFlushed(ViewCountsFlushedEvent event) {
+        refreshPopular(event.getProductIds());
+    }
+    
+    /**
+     * 收藏数变化后刷新热门标记
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFavoriteToggled(FavoriteToggledEvent event) {
+        refreshPopular(Collections.singleton(event.getProductId()));
+    }
+    
+    private void refreshPopular(Collection<Long> productIds) {
+        if (productIds.isEmpty()) {
+            return;
+        }
+        
+        try {
+            transactionTemplate.execute(status -> {
+                // 热门标记有变化时热门筛选的列表结果变化，版本号在该事务提交后递增
+                if (productRepository.refreshPopularFlags(productIds, minViewCount, minFavoriteCount) > 0) {
+                    resourceVersionService.increment(ResourceVersionService.PRODUCTS);
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            // 热门标记由下次刷新或回填修正
+            log.warn("Refresh popular flags failed: products={}, error={}", productIds.size(), e.getMessage());
+        }
+    }
+    
+    /**
+     * 是否满足热门条件（与is_popular标记的计算规则一致）
+     */
+    public boolean isPopular(Integer viewCount, Integer favoriteCount) {
+        return (viewCount != null && viewCount > minViewCount)
+                || (favoriteCount != null && favoriteCount > minFavoriteCount);
+    }
+    
+    private Map<String, List<String>> parseDictionary(String json) {
+        if (json == null || json.trim().isEmpty()) {
+            return DEFAULT_DICTIONARY;
+        }
+        
+        try {
+            Map<String, List<String>> dictionary = new TreeMap<>(objectMapper.readValue(json,
+                    new TypeReference<Map<String, List<String>>>() {}));
+            // 只有品牌和配件两类筛选
+            dictionary.keySet().retainAll(DEFAULT_DICTIONARY.keySet());
+            return dictionary.isEmpty() ? DEFAULT_DICTIONARY : dictionary;
+        } catch (Exception e) {
+            log.warn("Invalid product classifier dictionary config, using default: {}", e.getMessage());
+            return DEFAULT_DICTIONARY;
+        }
+    }
+}
@@ -0,0 +1,581 @@
+package com.fliliy.secondhand.service;
+
+import com.fliliy.secondhand.dto.request.ProductQueryRequest;
+import com.fliliy.secondhand.entity.Product;
+import com.fliliy.secondhand.event.FavoriteToggledEvent;
+import com.fliliy.secondhand.event.ProductChangedEvent;
+import com.fliliy.secondhand.event.ViewCountsFlushedEvent;
+import com.fliliy.secondhand.repository.ProductRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.util.StringUtils;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * 在售商品列存快照（可选）：结构化筛选和排序在内存中完成，只返回当前页的商品ID
+ * 价格以分为单位存long[]，省市区字典编码为int[]，商品状况、保修、分类等用位图表示
+ * 无法处理的查询（非在售状态、关键词索引未就绪、相关度排序等）返回null，由调用方走数据库查询
+ */
+@Component
+@Slf4j
+public class ProductColumnStore {
+
+    private static final int LOAD_BATCH_SIZE = 500;
+
+    private final ProductRepository productRepository;
+    private final CategoryService categoryService;
+    private final ProductClassifier productClassifier;
+    private final boolean enabled;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private Columns columns = new Columns();
+    private volatile boolean ready = false;
+
+    // 全量重建期间到达的增量变更，重建完成后回放
+    private List<Consumer<Columns>> pendingDuringRebuild;
+
+    public ProductColumnStore(ProductRepository productRepository,
+                              CategoryService categoryService,
+                              ProductClassifier productClassifier,
+                              @Value("${catalog.column-store.enabled:false}") boolean enabled) {
+        this.productRepository = productRepository;
+        this.categoryService = categoryService;
+        this.productClassifier = productClassifier;
+        this.enabled = enabled;
+    }
+
+    /**
+     * 按查询条件筛选并排序，返回当前页的商品ID和总数；无法处理时返回null
+     *
+     * @param keywordCandidates 关键词倒排索引返回的候选ID，无关键词时为null
+     */
+    public PageResult query(ProductQueryRequest request, List<Long> keywordCandidates) {
+        if (!enabled || !ready || !isSupported(request, keywordCandidates)) {
+            return null;
+        }
+
+        List<Integer> categoryIds = request.getCategoryId() != null
+                ? categoryService.getCategoryIdsIncludeChildren(request.getCategoryId())
+                : null;
+
+        lock.readLock().lock();
+        try {
+            return columns.query(request, keywordCandidates, categoryIds);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 商品发布/编辑/下架/售出后增量更新（事务提交后执行）
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        Product product = event.getProduct();
+        boolean active = event.getType() != ProductChangedEvent.ChangeType.DELETED
+                && product.getDeletedAt() == null
+                && product.getStatus() == Product.ProductStatus.ACTIVE;
+
+        if (active) {
+            Row row = Row.of(product);
+            update(target -> target.upsert(row));
+        } else {
+            Long productId = product.getId();
+            update(target -> target.remove(productId));
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFavoriteToggled(FavoriteToggledEvent event) {
+        Long productId = event.getProductId();
+        int delta = event.isFavorited() ? 1 : -1;
+        update(target -> target.addFavoriteCount(productId, delta));
+    }
+
+    /**
+     * 浏览量写回后同步最新计数
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onViewCountsFlushed(ViewCountsFlushedEvent event) {
+        if (!enabled || event.getProductIds().isEmpty()) {
+            return;
+        }
+
+        Map<Long, int[]> counts = new HashMap<>();
+        for (Object[] row : productRepository.findCountsByIds(event.getProductIds())) {
+            counts.put((Long) row[0], new int[]{toInt((Integer) row[1]), toInt((Integer) row[2])});
+        }
+        update(target -> counts.forEach((productId, values) -> target.setCounts(productId, values[0], values[1])));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        rebuild();
+    }
+
+    /**
+     * 定时全量重建，纠正其他节点写入造成的偏差
+     */
+    @Scheduled(fixedDelayString = "${catalog.column-store.rebuild-interval-ms:600000}",
+               initialDelayString = "${catalog.column-store.rebuild-interval-ms:600000}")
+    public void scheduledRebuild() {
+        rebuild();
+    }
+
+    /**
+     * 全量重建：在新结构上加载完成后整体替换
+     */
+    public void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+
+        lock.writeLock().lock();
+        try {
+            pendingDuringRebuild = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Columns rebuilt = new Columns();
+        try {
+            int page = 0;
+            Page<Product> batch;
+            do {
+                batch = productRepository.findByStatus(Product.ProductStatus.ACTIVE,
+                        PageRequest.of(page++, LOAD_BATCH_SIZE, Sort.by("id")));
+                for (Product product : batch.getContent()) {
+                    rebuilt.upsert(Row.of(product));
+                }
+            } while (batch.hasNext());
+        } catch (Exception e) {
+            log.error("Rebuild product column store failed", e);
+            lock.writeLock().lock();
+            try {
+                pendingDuringRebuild = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            for (Consumer<Columns> change : pendingDuringRebuild) {
+                change.accept(rebuilt);
+            }
+            columns = rebuilt;
+            pendingDuringRebuild = null;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        log.info("Product column store rebuilt: products={}, cost={}ms",
+                rebuilt.slotById.size(), System.currentTimeMillis() - start);
+    }
+
+    private void update(Consumer<Columns> change) {
+        if (!enabled) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (pendingDuringRebuild != null) {
+                pendingDuringRebuild.add(change);
+            }
+            change.accept(columns);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static boolean isSupported(ProductQueryRequest request, List<Long> keywordCandidates) {
+        // 只保存在售商品
+        if (!"ACTIVE".equals(request.getStatus())) {
+            return false;
+        }
+        // 附近商品由网格索引处理
+        if (request.getLatitude() != null || request.getLongitude() != null) {
+            return false;
+        }
+        // 关键词需由倒排索引先解析为候选ID，相关度排序由倒排索引得分决定
+        if (StringUtils.hasText(request.getKeyword()) && keywordCandidates == null) {
+            return false;
+        }
+        return !"relevance".equals(request.getSort()) || keywordCandidates == null;
+    }
+
+    private static int toInt(Integer value) {
+        return value != null ? value : 0;
+    }
+
+    private static long toCents(BigDecimal price, RoundingMode roundingMode) {
+        return price.setScale(2, roundingMode).movePointRight(2).longValueExact();
+    }
+
+    private static long toSortableTime(LocalDateTime time) {
+        return time == null ? Long.MIN_VALUE
+                : time.toEpochSecond(ZoneOffset.UTC) * 1_000_000_000L + time.getNano();
+    }
+
+    /**
+     * 查询结果：当前页商品ID（已排序）和符合条件的总数
+     */
+    public static final class PageResult {
+        private final List<Long> productIds;
+        private final long total;
+
+        private PageResult(List<Long> productIds, long total) {
+            this.productIds = productIds;
+            this.total = total;
+        }
+
+        public List<Long> getProductIds() {
+            return productIds;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+    }
+
+    /**
+     * 单个商品的列值（在锁外从实体中提取）
+     */
+    private static final class Row {
+        private long id;
+        private long priceCents;
+        private long originalPriceCents;
+        private long sellerId;
+        private long publishedAt;
+        private int categoryId;
+        private String province;
+        private String city;
+        private String district;
+        private int viewCount;
+        private int favoriteCount;
+        private Product.ConditionType condition;
+        private boolean warranty;
+        private boolean brand;
+        private boolean accessory;
+
+        private static Row of(Product product) {
+            Row row = new Row();
+            row.id = product.getId();
+            row.priceCents = toCents(product.getPrice(), RoundingMode.HALF_UP);
+            row.originalPriceCents = product.getOriginalPrice() != null
+                    ? toCents(product.getOriginalPrice(), RoundingMode.HALF_UP) : -1;
+            row.sellerId = product.getSellerId();
+            row.publishedAt = toSortableTime(product.getPublishedAt());
+            row.categoryId = product.getCategoryId();
+            row.province = product.getProvince();
+            row.city = product.getCity();
+            row.district = product.getDistrict();
+            row.viewCount = toInt(product.getViewCount());
+            row.favoriteCount = toInt(product.getFavoriteCount());
+            row.condition = product.getProductCondition();
+            row.warranty = Boolean.TRUE.equals(product.getHasWarranty());
+            row.brand = Boolean.TRUE.equals(product.getIsBrand());
+            row.accessory = Boolean.TRUE.equals(product.getIsAccessory());
+            return row;
+        }
+    }
+
+    /**
+     * 列存数据（调用方持有锁）；槽位删除后回收复用
+     */
+    private final class Columns {
+
+        private int capacity = 1024;
+        private int highWater = 0;
+
+        private long[] ids = new long[capacity];
+        private long[] priceCents = new long[capacity];
+        private long[] originalPriceCents = new long[capacity];
+        private long[] sellerIds = new long[capacity];
+        private long[] publishedAt = new long[capacity];
+        private int[] categoryIds = new int[capacity];
+        private int[] provinces = new int[capacity];
+        private int[] cities = new int[capacity];
+        private int[] districts = new int[capacity];
+        private int[] viewCounts = new int[capacity];
+        private int[] favoriteCounts = new int[capacity];
+
+        private final BitSet live = new BitSet();
+        private final BitSet warranty = new BitSet();
+        private final BitSet brand = new BitSet();
+        private final BitSet accessory = new BitSet();
+        private final Map<Product.ConditionType, BitSet> conditions = new EnumMap<>(Product.ConditionType.class);
+        private final Map<Integer, BitSet> categories = new HashMap<>();
+
+        // 地区字典：0表示空值
+        private final Map<String, Integer> regionCodes = new HashMap<>();
+
+        private final Map<Long, Integer> slotById = new HashMap<>();
+        private final Deque<Integer> freeSlots = new ArrayDeque<>();
+
+        private void upsert(Row row) {
+            Integer existing = slotById.get(row.id);
+            if (existing != null) {
+                clearBitmaps(existing);
+            }
+            int slot = existing != null ? existing : allocate();
+
+            ids[slot] = row.id;
+            priceCents[slot] = row.priceCents;
+            originalPriceCents[slot] = row.originalPriceCents;
+            sellerIds[slot] = row.sellerId;
+            publishedAt[slot] = row.publishedAt;
+            categoryIds[slot] = row.categoryId;
+            provinces[slot] = encodeRegion(row.province);
+            cities[slot] = encodeRegion(row.city);
+            districts[slot] = encodeRegion(row.district);
+            viewCounts[slot] = row.viewCount;
+            favoriteCounts[slot] = row.favoriteCount;
+
+            live.set(slot);
+            warranty.set(slot, row.warranty);
+            brand.set(slot, row.brand);
+            accessory.set(slot, row.accessory);
+            if (row.condition != null) {
+                conditions.computeIfAbsent(row.condition, c -> new BitSet()).set(slot);
+            }
+            categories.computeIfAbsent(row.categoryId, c -> new BitSet()).set(slot);
+            slotById.put(row.id, slot);
+        }
+
+        private void remove(Long productId) {
+            Integer slot = slotById.remove(productId);
+            if (slot != null) {
+                clearBitmaps(slot);
+                freeSlots.push(slot);
+            }
+        }
+
+        private void addFavoriteCount(Long productId, int delta) {
+            Integer slot = slotById.get(productId);
+            if (slot != null) {
+                favoriteCounts[slot] = Math.max(0, favoriteCounts[slot] + delta);
+            }
+        }
+
+        private void setCounts(Long productId, int viewCount, int favoriteCount) {
+            Integer slot = slotById.get(productId);
+            if (slot != null) {
+                viewCounts[slot] = viewCount;
+                favoriteCounts[slot] = favoriteCount;
+            }
+        }
+
+        private PageResult query(ProductQueryRequest request, List<Long> keywordCandidates, List<Integer> categoryIdList) {
+            // 1. 位图条件求交
+            BitSet matched = (BitSet) live.clone();
+            if (keywordCandidates != null) {
+                BitSet candidates = new BitSet();
+                for (Long productId : keywordCandidates) {
+                    Integer slot = slotById.get(productId);
+                    if (slot != null) {
+                        candidates.set(slot);
+                    }
+                }
+                matched.and(candidates);
+            }
+            if (categoryIdList != null) {
+                BitSet inCategories = new BitSet();
+                for (Integer categoryId : categoryIdList) {
+                    BitSet bits = categories.get(categoryId);
+                    if (bits != null) {
+                        inCategories.or(bits);
+                    }
+                }
+                matched.and(inCategories);
+            }
+            if (StringUtils.hasText(request.getCondition())) {
+                BitSet bits = conditions.get(Product.ConditionType.valueOf(request.getCondition()));
+                if (bits == null) {
+                    return emptyResult();
+                }
+                matched.and(bits);
+            }
+            if (request.getHasWarranty() != null) {
+                if (request.getHasWarranty()) {
+                    matched.and(warranty);
+                } else {
+                    matched.andNot(warranty);
+                }
+            }
+            String filter = request.getFilter();
+            if ("brand".equals(filter)) {
+                matched.and(brand);
+            } else if ("accessories".equals(filter)) {
+                matched.and(accessory);
+            }
+
+            // 2. 逐槽位检查数值和字典编码列
+            long minCents = request.getMinPrice() != null ? toCents(request.getMinPrice(), RoundingMode.CEILING) : Long.MIN_VALUE;
+            long maxCents = request.getMaxPrice() != null ? toCents(request.getMaxPrice(), RoundingMode.FLOOR) : Long.MAX_VALUE;
+            int province = StringUtils.hasText(request.getProvince()) ? lookupRegion(request.getProvince()) : 0;
+            int city = StringUtils.hasText(request.getCity()) ? lookupRegion(request.getCity()) : 0;
+            int district = StringUtils.hasText(request.getDistrict()) ? lookupRegion(request.getDistrict()) : 0;
+            if (province < 0 || city < 0 || district < 0) {
+                return emptyResult();
+            }
+            long sellerId = request.getSellerId() != null ? request.getSellerId() : 0;
+            boolean discount = "discount".equals(filter);
+            boolean popular = "popular".equals(filter);
+
+            int[] hits = new int[matched.cardinality()];
+            int count = 0;
+            for (int slot = matched.nextSetBit(0); slot >= 0; slot = matched.nextSetBit(slot + 1)) {
+                if (priceCents[slot] < minCents || priceCents[slot] > maxCents) {
+                    continue;
+                }
+                if ((province != 0 && provinces[slot] != province)
+                        || (city != 0 && cities[slot] != city)
+                        || (district != 0 && districts[slot] != district)) {
+                    continue;
+                }
+                if (sellerId != 0 && sellerIds[slot] != sellerId) {
+                    continue;
+                }
+                if (discount && (originalPriceCents[slot] < 0 || priceCents[slot] >= originalPriceCents[slot])) {
+                    continue;
+                }
+                if (popular && !productClassifier.isPopular(viewCounts[slot], favoriteCounts[slot])) {
+                    continue;
+                }
+                hits[count++] = slot;
+            }
+
+            // 3. 只对前 offset+size 条做有界堆排序
+            long offset = (long) (request.getPage() - 1) * request.getSize();
+            if (offset >= count) {
+                return new PageResult(Collections.emptyList(), count);
+            }
+            int limit = (int) Math.min(count, offset + request.getSize());
+
+            Comparator<Integer> order = comparator(request.getSort());
+            PriorityQueue<Integer> heap = new PriorityQueue<>(limit + 1, order.reversed());
+            for (int i = 0; i < count; i++) {
+                heap.offer(hits[i]);
+                if (heap.size() > limit) {
+                    heap.poll();
+                }
+            }
+            List<Integer> top = new ArrayList<>(heap);
+            top.sort(order);
+
+            List<Long> pageIds = new ArrayList<>(limit - (int) offset);
+            for (int i = (int) offset; i < top.size(); i++) {
+                pageIds.add(ids[top.get(i)]);
+            }
+            return new PageResult(pageIds, count);
+        }
+
+        /**
+         * 与数据库查询的排序方式一致，排序值相同时按ID同向排序
+         */
+        private Comparator<Integer> comparator(String sort) {
+            Comparator<Integer> order;
+            boolean descending = true;
+            switch (sort != null ? sort : "time_desc") {
+                case "time_asc":
+                    order = Comparator.comparingLong(slot -> publishedAt[slot]);
+                    descending = false;
+                    break;
+                case "price_asc":
+                    order = Comparator.comparingLong(slot -> priceCents[slot]);
+                    descending = false;
+                    break;
+                case "price_desc":
+                    order = Comparator.comparingLong(slot -> priceCents[slot]);
+                    break;
+                case "view_desc":
+                    order = Comparator.comparingInt(slot -> viewCounts[slot]);
+                    break;
+                case "favorite_desc":
+                    order = Comparator.comparingInt(slot -> favoriteCounts[slot]);
+                    break;
+                default:
+                    order = Comparator.comparingLong(slot -> publishedAt[slot]);
+                    break;
+            }
+            order = order.thenComparingLong(slot -> ids[slot]);
+            return descending ? order.reversed() : order;
+        }
+
+        private PageResult emptyResult() {
+            return new PageResult(Collections.emptyList(), 0);
+        }
+
+        private int allocate() {
+            if (!freeSlots.isEmpty()) {
+                return freeSlots.pop();
+            }
+            if (highWater == capacity) {
+                grow();
+            }
+            return highWater++;
+        }
+
+        private void grow() {
+            capacity *= 2;
+            ids = Arrays.copyOf(ids, capacity);
+            priceCents = Arrays.copyOf(priceCents, capacity);
+            originalPriceCents = Arrays.copyOf(originalPriceCents, capacity);
+            sellerIds = Arrays.copyOf(sellerIds, capacity);
+            publishedAt = Arrays.copyOf(publishedAt, capacity);
+            categoryIds = Arrays.copyOf(categoryIds, capacity);
+            provinces = Arrays.copyOf(provinces, capacity);
+            cities = Arrays.copyOf(cities, capacity);
+            districts = Arrays.copyOf(districts, capacity);
+            viewCounts = Arrays.copyOf(viewCounts, capacity);
+            favoriteCounts = Arrays.copyOf(favoriteCounts, capacity);
+        }
+
+        private void clearBitmaps(int slot) {
+            live.clear(slot);
+            warranty.clear(slot);
+            brand.clear(slot);
+            accessory.clear(slot);
+            for (BitSet bits : conditions.values()) {
+                bits.clear(slot);
+            }
+            BitSet category = categories.get(categoryIds[slot]);
+            if (category != null) {
+                category.clear(slot);
+            }
+        }
+
+        private int encodeRegion(String region) {
+            if (!StringUtils.hasText(region)) {
+                return 0;
+            }
+            return regionCodes.computeIfAbsent(region, r -> regionCodes.size() + 1);
+        }
+
+        // 字典中不存在说明没有商品位于该地区，返回-1
+        private int lookupRegion(String region) {
+            return regionCodes.getOrDefault(region, -1);
+        }
+    }
+}
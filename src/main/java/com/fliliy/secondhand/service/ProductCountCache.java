@@ -0,0 +1,143 @@
+package com.fliliy.secondhand.service;
+
+import com.fliliy.secondhand.dto.request.ProductQueryRequest;
+import com.fliliy.secondhand.event.ProductChangedEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.util.StringUtils;
+
+import java.math.BigDecimal;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * 商品列表总数缓存：按归一化的筛选条件缓存COUNT结果（与页码、排序无关），短TTL过期
+ * 商品发布、编辑、下架、售出后失效涉及该商品分类的条件
+ */
+@Component
+public class ProductCountCache {
+
+    private final CategoryService categoryService;
+    private final long ttlMillis;
+    private final int maxEntries;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // 每次失效递增；计数期间发生过失效的结果不写入缓存
+    private final AtomicLong generation = new AtomicLong();
+
+    public ProductCountCache(CategoryService categoryService,
+                             @Value("${product.count-cache.ttl-ms:30000}") long ttlMillis,
+                             @Value("${product.count-cache.max-entries:5000}") int maxEntries) {
+        this.categoryService = categoryService;
+        this.ttlMillis = ttlMillis;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * 获取缓存的总数，未缓存时返回null
+     */
+    public Long getIfPresent(ProductQueryRequest request) {
+        Entry entry = entries.get(cacheKey(request));
+        return entry != null && entry.expiresAt >= System.currentTimeMillis() ? entry.total : null;
+    }
+
+    /**
+     * 获取总数，未缓存时执行counter并缓存结果
+     */
+    public long getOrCount(ProductQueryRequest request, LongSupplier counter) {
+        String key = cacheKey(request);
+        Entry entry = entries.get(key);
+        if (entry != null && entry.expiresAt >= System.currentTimeMillis()) {
+            return entry.total;
+        }
+
+        long startGeneration = generation.get();
+        long total = counter.getAsLong();
+        if (ttlMillis > 0 && generation.get() == startGeneration) {
+            store(key, new Entry(total, coveredCategories(request), System.currentTimeMillis() + ttlMillis));
+        }
+        return total;
+    }
+
+    /**
+     * 商品变更提交后失效：发布、下架、售出只影响包含该商品分类的条件（未限定分类的条件全部失效），
+     * 编辑可能更换分类或改变价格等筛选字段，全部失效
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        generation.incrementAndGet();
+        if (event.getType() == ProductChangedEvent.ChangeType.UPDATED) {
+            entries.clear();
+            return;
+        }
+
+        Integer categoryId = event.getProduct().getCategoryId();
+        entries.values().removeIf(entry -> entry.categoryIds == null || entry.categoryIds.contains(categoryId));
+    }
+
+    // 归一化的筛选条件：只包含影响查询条件的字段，未传的筛选标签按all处理
+    private String cacheKey(ProductQueryRequest request) {
+        String keyword = StringUtils.hasText(request.getKeyword())
+                ? request.getKeyword().trim().toLowerCase(Locale.ROOT) : "";
+        String filter = StringUtils.hasText(request.getFilter()) ? request.getFilter() : "all";
+        String location = request.getLatitude() != null && request.getLongitude() != null
+                ? normalize(request.getLatitude()) + "," + normalize(request.getLongitude()) + "," + request.getRadius()
+                : "";
+        return request.getStatus()
+                + "|" + (request.getCategoryId() != null ? request.getCategoryId() : "")
+                + "|" + keyword
+                + "|" + filter
+                + "|" + normalize(request.getMinPrice()) + "-" + normalize(request.getMaxPrice())
+                + "|" + nullToEmpty(request.getCondition())
+                + "|" + (request.getHasWarranty() != null ? request.getHasWarranty() : "")
+                + "|" + location
+                + "|" + nullToEmpty(request.getProvince())
+                + "|" + nullToEmpty(request.getCity())
+                + "|" + nullToEmpty(request.getDistrict())
+                + "|" + (request.getSellerId() != null ? request.getSellerId() : "");
+    }
+
+    // 条件涉及的分类（含子分类），null表示全部分类
+    private Set<Integer> coveredCategories(ProductQueryRequest request) {
+        return request.getCategoryId() != null
+                ? new HashSet<>(categoryService.getCategoryIdsIncludeChildren(request.getCategoryId()))
+                : null;
+    }
+
+    private void store(String key, Entry entry) {
+        if (entries.size() >= maxEntries && !entries.containsKey(key)) {
+            long now = System.currentTimeMillis();
+            entries.values().removeIf(existing -> existing.expiresAt < now);
+            if (entries.size() >= maxEntries) {
+                return;
+            }
+        }
+        entries.put(key, entry);
+    }
+
+    private static String normalize(BigDecimal value) {
+        return value != null ? value.stripTrailingZeros().toPlainString() : "";
+    }
+
+    private static String nullToEmpty(String value) {
+        return value != null ? value : "";
+    }
+
+    private static final class Entry {
+        private final long total;
+        private final Set<Integer> categoryIds;
+        private final long expiresAt;
+
+        private Entry(long total, Set<Integer> categoryIds, long expiresAt) {
+            this.total = total;
+            this.categoryIds = categoryIds;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.fliliy.secondhand.service;
+
+import com.fliliy.secondhand.dto.response.ProductDetailResponse;
+import com.fliliy.secondhand.event.FavoriteToggledEvent;
+import com.fliliy.secondhand.event.ProductChangedEvent;
+import com.fliliy.secondhand.event.ProductDiscussedEvent;
+import com.fliliy.secondhand.event.ViewCountsFlushedEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * 商品详情缓存（products缓存区）
+ * 只缓存与当前用户无关的部分，isFavorited/isOwn在读取时叠加
+ * 失效通过事件驱动；缓存管理器开启了事务感知，事务内的失效在提交后生效
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ProductDetailCache {
+    
+    private static final String CACHE_NAME = "products";
+    
+    private final CacheManager cacheManager;
+    
+    /**
+     * 获取缓存的商品详情，未命中或缓存不可用时返回null
+     */
+    public ProductDetailResponse get(Long productId) {
+        try {
+            Cache cache = cacheManager.getCache(CACHE_NAME);
+            return cache != null ? cache.get(productId, ProductDetailResponse.class) : null;
+        } catch (RuntimeException e) {
+            log.warn("Read product detail cache failed: productId={}, error={}", productId, e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * 写入商品详情缓存
+     */
+    public void put(Long productId, ProductDetailResponse detail) {
+        try {
+            Cache cache = cacheManager.getCache(CACHE_NAME);
+            if (cache != null) {
+                cache.put(productId, detail);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Write product detail cache failed: productId={}, error={}", productId, e.getMessage());
+        }
+    }
+    
+    /**
+     * 移除商品详情缓存
+     */
+    public void evict(Long productId) {
+        try {
+            Cache cache = cacheManager.getCache(CACHE_NAME);
+            if (cache != null) {
+                cache.evict(productId);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Evict product detail cache failed: productId={}, error={}", productId, e.getMessage());
+        }
+    }
+    
+    /**
+     * 商品编辑、下架、售出后失效
+     */
+    @EventListener
+    public void onProductChanged(ProductChangedEvent event) {
+        if (event.getType() != ProductChangedEvent.ChangeType.PUBLISHED) {
+            evict(event.getProduct().getId());
+        }
+    }
+    
+    /**
+     * 收藏数变化后失效
+     */
+    @EventListener
+    public void onFavoriteToggled(FavoriteToggledEvent event) {
+        evict(event.getProductId());
+    }
+    
+    /**
+     * 发起商品讨论后咨询次数变化
+     */
+    @EventListener
+    public void onProductDiscussed(ProductDiscussedEvent event) {
+        evict(event.getProductId());
+    }
+    
+    /**
+     * 浏览次数写回后失效，避免缓存中的已持久化次数与待写回增量重复或遗漏
+     */
+    @EventListener
+    public void onViewCountsFlushed(ViewCountsFlushedEvent event) {
+        for (Long productId : event.getProductIds()) {
+            evict(productId);
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package com.fliliy.secondhand.service;
+
+import com.fliliy.secondhand.entity.Category;
+import com.fliliy.secondhand.entity.Product;
+import com.fliliy.secondhand.entity.ProductImage;
+import com.fliliy.secondhand.entity.User;
+import com.fliliy.secondhand.repository.ProductImageRepository;
+import com.fliliy.secondhand.repository.ProductRepository;
+import com.fliliy.secondhand.repository.ProductSummaryRow;
+import com.fliliy.secondhand.repository.ProductTagRepository;
+import com.fliliy.secondhand.repository.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 商品详情聚合加载：按主键查出商品后，卖家、图片、标签、相关商品在有界线程池上并发查询，整体受截止时间约束
+ * 卖家和图片是必需数据，超时即失败；标签和相关商品超时按空处理，结果标记为不完整（调用方不缓存）
+ * 各阶段耗时通过/health/product-detail查看
+ */
+@Component
+@Slf4j
+public class ProductDetailLoader {
+
+    private static final String STAGE_PRODUCT = "product";
+    private static final String STAGE_SELLER = "seller";
+    private static final String STAGE_IMAGES = "images";
+    private static final String STAGE_TAGS = "tags";
+    private static final String STAGE_CATEGORY = "category";
+    private static final String STAGE_RELATED = "related";
+    private static final String STAGE_TOTAL = "total";
+
+    private static final int RELATED_PRODUCT_COUNT = 4;
+    private static final Sort RELATED_SORT = Sort.by(Sort.Direction.DESC, "viewCount");
+
+    private final ProductRepository productRepository;
+    private final ProductImageRepository productImageRepository;
+    private final ProductTagRepository productTagRepository;
+    private final UserRepository userRepository;
+    private final CategoryService categoryService;
+    private final long timeoutNanos;
+    private final ThreadPoolExecutor executor;
+
+    private final Map<String, StageStatistics> statistics = new LinkedHashMap<>();
+
+    public ProductDetailLoader(ProductRepository productRepository,
+                               ProductImageRepository productImageRepository,
+                               ProductTagRepository productTagRepository,
+                               UserRepository userRepository,
+                               CategoryService categoryService,
+                               @Value("${product.detail.loader.threads:8}") int threads,
+                               @Value("${product.detail.loader.queue-capacity:200}") int queueCapacity,
+                               @Value("${product.detail.loader.timeout-ms:2000}") long timeoutMillis) {
+        this.productRepository = productRepository;
+        this.productImageRepository = productImageRepository;
+        this.productTagRepository = productTagRepository;
+        this.userRepository = userRepository;
+        this.categoryService = categoryService;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+        // 线程数限制了详情加载占用的数据库连接数；队列满时由请求线程自己执行
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "product-detail-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+
+        for (String stage : Arrays.asList(STAGE_PRODUCT, STAGE_SELLER, STAGE_IMAGES, STAGE_TAGS,
+                STAGE_CATEGORY, STAGE_RELATED, STAGE_TOTAL)) {
+            statistics.put(stage, new StageStatistics());
+        }
+    }
+
+    /**
+     * 加载商品详情所需的全部数据
+     */
+    public ProductDetailAggregate load(Long productId) {
+        long start = System.nanoTime();
+        long deadline = start + timeoutNanos;
+
+        Product product = timed(STAGE_PRODUCT, () -> productRepository.findByIdAndNotDeleted(productId))
+                .orElseThrow(() -> new RuntimeException("商品不存在"));
+
+        Future<Optional<User>> seller = submit(STAGE_SELLER, () -> userRepository.findById(product.getSellerId()));
+        Future<List<ProductImage>> images = submit(STAGE_IMAGES,
+                () -> productImageRepository.findByProductIdOrderBySortOrder(productId));
+        Future<List<String>> tags = submit(STAGE_TAGS, () -> productTagRepository.findTagNamesByProductId(productId));
+        Future<List<ProductSummaryRow>> related = submit(STAGE_RELATED, () -> productRepository.findSummarySlice(
+                relatedSpecification(product), RELATED_SORT, RELATED_PRODUCT_COUNT));
+
+        try {
+            // 分类信息有缓存，在请求线程中获取
+            Category category = timed(STAGE_CATEGORY,
+                    () -> categoryService.getCategoryById(product.getCategoryId())).orElse(null);
+
+            ProductDetailAggregate aggregate = new ProductDetailAggregate(product, category);
+            aggregate.seller = awaitRequired(seller, deadline, STAGE_SELLER)
+                    .orElseThrow(() -> new RuntimeException("卖家信息不存在"));
+            aggregate.images = awaitRequired(images, deadline, STAGE_IMAGES);
+            aggregate.tags = awaitOptional(tags, deadline, STAGE_TAGS, aggregate);
+            aggregate.relatedProducts = awaitOptional(related, deadline, STAGE_RELATED, aggregate);
+            return aggregate;
+        } finally {
+            // 失败或超时时不再执行尚未开始的查询
+            seller.cancel(false);
+            images.cancel(false);
+            tags.cancel(false);
+            related.cancel(false);
+            statistics.get(STAGE_TOTAL).record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 各阶段耗时统计（毫秒）
+     */
+    public Map<String, Map<String, Object>> getStatistics() {
+        Map<String, Map<String, Object>> result = new LinkedHashMap<>();
+        statistics.forEach((stage, stats) -> result.put(stage, stats.snapshot()));
+        result.put("executor", executorStatistics());
+        return result;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private <T> Future<T> submit(String stage, Supplier<T> lookup) {
+        return executor.submit(() -> timed(stage, lookup));
+    }
+
+    private <T> T timed(String stage, Supplier<T> lookup) {
+        long start = System.nanoTime();
+        try {
+            return lookup.get();
+        } finally {
+            statistics.get(stage).record(System.nanoTime() - start);
+        }
+    }
+
+    private <T> T awaitRequired(Future<T> future, long deadline, String stage) {
+        try {
+            return await(future, deadline);
+        } catch (TimeoutException e) {
+            statistics.get(stage).timeouts.increment();
+            log.warn("Product detail stage timed out: stage={}", stage);
+            throw new RuntimeException("商品详情加载超时");
+        }
+    }
+
+    // 非必需数据超时或查询失败时返回空列表，并将结果标记为不完整
+    private <T> List<T> awaitOptional(Future<List<T>> future, long deadline, String stage,
+                                      ProductDetailAggregate aggregate) {
+        try {
+            return await(future, deadline);
+        } catch (TimeoutException e) {
+            statistics.get(stage).timeouts.increment();
+            log.warn("Product detail stage timed out, skipped: stage={}", stage);
+        } catch (RuntimeException e) {
+            log.warn("Product detail stage failed, skipped: stage={}, error={}", stage, e.getMessage());
+        }
+        aggregate.complete = false;
+        return new ArrayList<>();
+    }
+
+    private <T> T await(Future<T> future, long deadline) throws TimeoutException {
+        try {
+            return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("商品详情加载被中断");
+        }
+    }
+
+    // 相关商品：同分类在售商品按浏览量取前几个
+    private Specification<Product> relatedSpecification(Product product) {
+        return (root, query, criteriaBuilder) -> criteriaBuilder.and(
+                criteriaBuilder.equal(root.get("categoryId"), product.getCategoryId()),
+                criteriaBuilder.notEqual(root.get("id"), product.getId()),
+                criteriaBuilder.equal(root.get("status"), Product.ProductStatus.ACTIVE),
+                criteriaBuilder.isNull(root.get("deletedAt")));
+    }
+
+    private Map<String, Object> executorStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("activeThreads", executor.getActiveCount());
+        stats.put("poolSize", executor.getPoolSize());
+        stats.put("queued", executor.getQueue().size());
+        stats.put("completedTasks", executor.getCompletedTaskCount());
+        return stats;
+    }
+
+    /**
+     * 商品详情聚合数据
+     */
+    public static final class ProductDetailAggregate {
+        private final Product product;
+        private final Category category;
+        private User seller;
+        private List<ProductImage> images;
+        private List<String> tags;
+        private List<ProductSummaryRow> relatedProducts;
+        private boolean complete = true;
+
+        private ProductDetailAggregate(Product product, Category category) {
+            this.product = product;
+            this.category = category;
+        }
+
+        public Product getProduct() {
+            return product;
+        }
+
+        public Category getCategory() {
+            return category;
+        }
+
+        public User getSeller() {
+            return seller;
+        }
+
+        public List<ProductImage> getImages() {
+            return images;
+        }
+
+        public List<String> getTags() {
+            return tags;
+        }
+
+        public List<ProductSummaryRow> getRelatedProducts() {
+            return relatedProducts;
+        }
+
+        /**
+         * 是否所有数据都已加载（标签或相关商品超时跳过时为false）
+         */
+        public boolean isComplete() {
+            return complete;
+        }
+    }
+
+    private static final class StageStatistics {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0);
+        private final LongAdder timeouts = new LongAdder();
+
+        private void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+
+        private Map<String, Object> snapshot() {
+            long requests = count.sum();
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("count", requests);
+            stats.put("avgMs", requests == 0 ? 0.0 : totalNanos.sum() / 1e6 / requests);
+            stats.put("maxMs", maxNanos.get() / 1e6);
+            stats.put("timeouts", timeouts.sum());
+            return stats;
+        }
+    }
+}
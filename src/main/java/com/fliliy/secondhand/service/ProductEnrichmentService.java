@@ -0,0 +1,35 @@
+package com.fliliy.secondhand.service;
+
+import com.fliliy.secondhand.repository.ProductTagRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * 商品列表数据补全：按商品ID批量获取标签，只查询一次（主图随摘要查询，见ProductRepositoryCustomImpl）
+ */
+@Service
+@RequiredArgsConstructor
+public class ProductEnrichmentService {
+    
+    private final ProductTagRepository productTagRepository;
+    
+    /**
+     * 批量获取商品标签（商品ID -> 标签列表），无标签的商品对应空列表
+     */
+    public Map<Long, List<String>> getProductTags(Collection<Long> productIds) {
+        Map<Long, List<String>> productTags = new HashMap<>();
+        for (Long productId : productIds) {
+            productTags.put(productId, new ArrayList<>());
+        }
+        if (productIds.isEmpty()) {
+            return productTags;
+        }
+        
+        for (Object[] row : productTagRepository.findTagNamesByProductIds(productIds)) {
+            productTags.computeIfAbsent((Long) row[0], k -> new ArrayList<>()).add((String) row[1]);
+        }
+        return productTags;
+    }
+}
@@ -0,0 +1,192 @@
+package com.fliliy.secondhand.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fliliy.secondhand.dto.request.ProductQueryRequest;
+import com.fliliy.secondhand.event.ProductChangedEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.util.StringUtils;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 匿名用户商品列表首页响应缓存：按分类、筛选标签、排序和每页数量缓存序列化后的响应字节，短TTL过期
+ * 同一key未命中时只有一个请求查询数据库，其余请求等待其结果
+ * 商品发布、编辑、下架、售出后失效涉及该商品分类的列表
+ */
+@Component
+@Slf4j
+public class ProductFeedCache {
+
+    private static final Set<String> CACHEABLE_SORTS = new HashSet<>(Arrays.asList(
+            "time_desc", "time_asc", "price_asc", "price_desc", "view_desc", "favorite_desc", "hot"));
+
+    private final ObjectMapper objectMapper;
+    private final CategoryService categoryService;
+    private final long ttlMillis;
+    private final int maxEntries;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<byte[]>> loading = new ConcurrentHashMap<>();
+    // 每次失效递增；查询期间发生过失效的结果不写入缓存
+    private final AtomicLong generation = new AtomicLong();
+
+    public ProductFeedCache(ObjectMapper objectMapper,
+                            CategoryService categoryService,
+                            @Value("${product.feed-cache.ttl-ms:10000}") long ttlMillis,
+                            @Value("${product.feed-cache.max-entries:1000}") int maxEntries) {
+        this.objectMapper = objectMapper;
+        this.categoryService = categoryService;
+        this.ttlMillis = ttlMillis;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * 是否可以使用缓存：匿名用户、页码分页第一页，只按分类、筛选标签和排序查询在售商品
+     */
+    public boolean isCacheable(ProductQueryRequest request, Long currentUserId) {
+        return ttlMillis > 0
+                && currentUserId == null
+                && !request.isCursorMode()
+                && request.getPage() == 1
+                && "ACTIVE".equals(request.getStatus())
+                && CACHEABLE_SORTS.contains(StringUtils.hasText(request.getSort()) ? request.getSort() : "time_desc")
+                && !StringUtils.hasText(request.getKeyword())
+                && request.getLatitude() == null && request.getLongitude() == null
+                && request.getMinPrice() == null && request.getMaxPrice() == null
+                && !StringUtils.hasText(request.getCondition())
+                && request.getHasWarranty() == null
+                && !StringUtils.hasText(request.getProvince())
+                && !StringUtils.hasText(request.getCity())
+                && !StringUtils.hasText(request.getDistrict())
+                && request.getSellerId() == null;
+    }
+
+    /**
+     * 获取缓存的响应字节，未命中时调用loader生成响应并序列化（调用前需确认isCacheable）
+     */
+    public byte[] getOrLoad(ProductQueryRequest request, Supplier<?> loader) {
+        String key = cacheKey(request);
+        byte[] cached = lookup(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        CompletableFuture<byte[]> created = new CompletableFuture<>();
+        CompletableFuture<byte[]> inFlight = loading.putIfAbsent(key, created);
+        if (inFlight != null) {
+            return await(inFlight);
+        }
+
+        try {
+            // 等待期间其他请求可能已经写入
+            byte[] body = lookup(key);
+            if (body == null) {
+                long startGeneration = generation.get();
+                body = serialize(loader.get());
+                if (generation.get() == startGeneration) {
+                    store(key, new Entry(body, coveredCategories(request), System.currentTimeMillis() + ttlMillis));
+                }
+            }
+            created.complete(body);
+            return body;
+        } catch (RuntimeException e) {
+            created.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, created);
+        }
+    }
+
+    /**
+     * 商品变更提交后失效相关列表：发布、下架、售出只影响商品所在分类及其上级分类的列表，
+     * 编辑可能更换分类，全部失效
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        generation.incrementAndGet();
+        if (event.getType() == ProductChangedEvent.ChangeType.UPDATED) {
+            entries.clear();
+            return;
+        }
+
+        Integer categoryId = event.getProduct().getCategoryId();
+        entries.values().removeIf(entry -> entry.categoryIds == null || entry.categoryIds.contains(categoryId));
+    }
+
+    // 归一化的缓存key：未传的筛选标签和排序按默认值处理
+    private String cacheKey(ProductQueryRequest request) {
+        String filter = StringUtils.hasText(request.getFilter()) ? request.getFilter() : "all";
+        String sort = StringUtils.hasText(request.getSort()) ? request.getSort() : "time_desc";
+        return (request.getCategoryId() != null ? request.getCategoryId() : "*")
+                + "|" + filter + "|" + sort + "|" + request.getSize()
+                + (Boolean.TRUE.equals(request.getApproximateTotal()) ? "|~" : "");
+    }
+
+    // 列表覆盖的分类（含子分类），null表示全部分类
+    private Set<Integer> coveredCategories(ProductQueryRequest request) {
+        return request.getCategoryId() != null
+                ? new HashSet<>(categoryService.getCategoryIdsIncludeChildren(request.getCategoryId()))
+                : null;
+    }
+
+    private byte[] lookup(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt < System.currentTimeMillis()) {
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry.body;
+    }
+
+    private void store(String key, Entry entry) {
+        if (entries.size() >= maxEntries && !entries.containsKey(key)) {
+            long now = System.currentTimeMillis();
+            entries.values().removeIf(existing -> existing.expiresAt < now);
+            if (entries.size() >= maxEntries) {
+                return;
+            }
+        }
+        entries.put(key, entry);
+    }
+
+    private byte[] serialize(Object response) {
+        try {
+            return objectMapper.writeValueAsBytes(response);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("商品列表序列化失败", e);
+        }
+    }
+
+    private byte[] await(CompletableFuture<byte[]> inFlight) {
+        try {
+            return inFlight.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+        }
+    }
+
+    private static final class Entry {
+        private final byte[] body;
+        private final Set<Integer> categoryIds;
+        private final long expiresAt;
+
+        private Entry(byte[] body, Set<Integer> categoryIds, long expiresAt) {
+            this.body = body;
+            this.categoryIds = categoryIds;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package com.fliliy.secondhand.service;
+
+import com.fliliy.secondhand.entity.Product;
+import com.fliliy.secondhand.event.ProductChangedEvent;
+import com.fliliy.secondhand.repository.ProductRepository;
+import com.fliliy.secondhand.util.GeoUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 在售商品经纬度网格索引：按固定经纬度间隔划分网格，半径查询只访问覆盖范围内的网格
+ */
+@Component
+@Slf4j
+public class ProductGeoIndex {
+
+    private static final int LOAD_BATCH_SIZE = 500;
+
+    private final ProductRepository productRepository;
+    private final double cellDegrees;
+    private final int lonCells;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // 网格 -> 商品ID
+    private Map<Long, Set<Long>> cells = new HashMap<>();
+    // 商品ID -> [纬度, 经度]
+    private Map<Long, double[]> points = new HashMap<>();
+
+    private volatile boolean ready = false;
+
+    // 全量重建期间到达的增量变更，重建完成后回放
+    private List<ProductChangedEvent> pendingDuringRebuild;
+
+    public ProductGeoIndex(ProductRepository productRepository,
+                           @Value("${product.geo.cell-degrees:0.02}") double cellDegrees) {
+        this.productRepository = productRepository;
+        this.cellDegrees = cellDegrees;
+        this.lonCells = (int) Math.ceil(360.0 / cellDegrees);
+    }
+
+    /**
+     * 索引是否可用（启动加载完成前走数据库范围查询）
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 半径查询：返回距离不超过radiusMeters的商品，按距离由近到远排序，最多limit条
+     */
+    public List<NearbyProduct> searchNearby(double latitude, double longitude, double radiusMeters, int limit) {
+        double latSpan = radiusMeters / GeoUtils.METERS_PER_DEGREE;
+        double minLat = Math.max(-90.0, latitude - latSpan);
+        double maxLat = Math.min(90.0, latitude + latSpan);
+
+        // 经度跨度随纬度变大，靠近极点时覆盖全部经度
+        double cosLat = Math.cos(Math.toRadians(Math.max(Math.abs(minLat), Math.abs(maxLat))));
+        double lonSpan = cosLat < 1e-6 ? 180.0 : Math.min(180.0, latSpan / cosLat);
+
+        int fromLat = latIndex(minLat);
+        int toLat = latIndex(maxLat);
+        int fromLon = lonIndex(longitude - lonSpan);
+        int lonCount = Math.min(lonCells, lonIndexSpan(longitude - lonSpan, longitude + lonSpan));
+
+        List<NearbyProduct> matches = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (int lat = fromLat; lat <= toLat; lat++) {
+                for (int i = 0; i < lonCount; i++) {
+                    Set<Long> cell = cells.get(cellKey(lat, Math.floorMod(fromLon + i, lonCells)));
+                    if (cell == null) {
+                        continue;
+                    }
+                    for (Long productId : cell) {
+                        double[] point = points.get(productId);
+                        double distance = GeoUtils.distanceMeters(latitude, longitude, point[0], point[1]);
+                        if (distance <= radiusMeters) {
+                            matches.add(new NearbyProduct(productId, distance));
+                        }
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        matches.sort(Comparator.comparingDouble(NearbyProduct::getDistanceMeters)
+                .thenComparing(NearbyProduct::getProductId));
+        return matches.size() > limit ? new ArrayList<>(matches.subList(0, limit)) : matches;
+    }
+
+    /**
+     * 商品发布/编辑/下架后增量更新索引（事务提交后执行）
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        lock.writeLock().lock();
+        try {
+            if (pendingDuringRebuild != null) {
+                pendingDuringRebuild.add(event);
+            }
+            apply(cells, points, event);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        rebuild();
+    }
+
+    /**
+     * 定时全量重建，纠正其他节点写入造成的偏差
+     */
+    @Scheduled(fixedDelayString = "${product.geo.rebuild-interval-ms:600000}",
+               initialDelayString = "${product.geo.rebuild-interval-ms:600000}")
+    public void scheduledRebuild() {
+        rebuild();
+    }
+
+    /**
+     * 全量重建索引：在新结构上构建完成后整体替换
+     */
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+
+        lock.writeLock().lock();
+        try {
+            pendingDuringRebuild = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Map<Long, Set<Long>> newCells = new HashMap<>();
+        Map<Long, double[]> newPoints = new HashMap<>();
+        try {
+            int page = 0;
+            Page<Product> batch;
+            do {
+                batch = productRepository.findByStatus(Product.ProductStatus.ACTIVE,
+                        PageRequest.of(page++, LOAD_BATCH_SIZE, Sort.by("id")));
+                for (Product product : batch.getContent()) {
+                    add(newCells, newPoints, product);
+                }
+            } while (batch.hasNext());
+        } catch (Exception e) {
+            log.error("Rebuild product geo index failed", e);
+            lock.writeLock().lock();
+            try {
+                pendingDuringRebuild = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            for (ProductChangedEvent event : pendingDuringRebuild) {
+                apply(newCells, newPoints, event);
+            }
+            cells = newCells;
+            points = newPoints;
+            pendingDuringRebuild = null;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        log.info("Product geo index rebuilt: products={}, cells={}, cost={}ms",
+                newPoints.size(), newCells.size(), System.currentTimeMillis() - start);
+    }
+
+    // 私有方法（调用方需持有写锁）
+
+    private void apply(Map<Long, Set<Long>> cells, Map<Long, double[]> points, ProductChangedEvent event) {
+        Product product = event.getProduct();
+        remove(cells, points, product.getId());
+
+        boolean indexable = event.getType() != ProductChangedEvent.ChangeType.DELETED
+                && product.getDeletedAt() == null
+                && product.getStatus() == Product.ProductStatus.ACTIVE;
+        if (indexable) {
+            add(cells, points, product);
+        }
+    }
+
+    private void add(Map<Long, Set<Long>> cells, Map<Long, double[]> points, Product product) {
+        if (product.getLatitude() == null || product.getLongitude() == null) {
+            return;
+        }
+
+        double latitude = product.getLatitude().doubleValue();
+        double longitude = product.getLongitude().doubleValue();
+        points.put(product.getId(), new double[]{latitude, longitude});
+        cells.computeIfAbsent(cellKey(latIndex(latitude), lonIndex(longitude)), k -> new HashSet<>())
+                .add(product.getId());
+    }
+
+    private void remove(Map<Long, Set<Long>> cells, Map<Long, double[]> points, Long productId) {
+        double[] point = points.remove(productId);
+        if (point == null) {
+            return;
+        }
+
+        long key = cellKey(latIndex(point[0]), lonIndex(point[1]));
+        Set<Long> cell = cells.get(key);
+        if (cell != null) {
+            cell.remove(productId);
+            if (cell.isEmpty()) {
+                cells.remove(key);
+            }
+        }
+    }
+
+    private int latIndex(double latitude) {
+        return (int) Math.floor((latitude + 90.0) / cellDegrees);
+    }
+
+    private int lonIndex(double longitude) {
+        return Math.floorMod((int) Math.floor((longitude + 180.0) / cellDegrees), lonCells);
+    }
+
+    // 经度区间覆盖的网格列数（不做取模，跨越180度经线时由调用方回绕）
+    private int lonIndexSpan(double fromLongitude, double toLongitude) {
+        return (int) Math.floor((toLongitude + 180.0) / cellDegrees)
+                - (int) Math.floor((fromLongitude + 180.0) / cellDegrees) + 1;
+    }
+
+    private static long cellKey(int latIndex, int lonIndex) {
+        return ((long) latIndex << 32) | (lonIndex & 0xffffffffL);
+    }
+
+    /**
+     * 附近商品及距离
+     */
+    public static final class NearbyProduct {
+        private final Long productId;
+        private final double distanceMeters;
+
+        private NearbyProduct(Long productId, double distanceMeters) {
+            this.productId = productId;
+            this.distanceMeters = distanceMeters;
+        }
+
+        public Long getProductId() {
+            return productId;
+        }
+
+        public double getDistanceMeters() {
+            return distanceMeters;
+        }
+    }
+}
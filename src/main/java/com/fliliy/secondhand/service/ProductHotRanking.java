@@ -0,0 +1,382 @@
+package com.fliliy.secondhand.service;
+
+import com.fliliy.secondhand.entity.Product;
+import com.fliliy.secondhand.event.FavoriteToggledEvent;
+import com.fliliy.secondhand.event.ProductChangedEvent;
+import com.fliliy.secondhand.event.ProductDiscussedEvent;
+import com.fliliy.secondhand.event.ViewCountsFlushedEvent;
+import com.fliliy.secondhand.repository.ProductRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 商品热度排行：浏览、收藏、咨询和发布时间合成按时间指数衰减的热度分，
+ * 每个分类及全站各维护全部在售商品按热度的有序集合，增减商品和更新热度都是O(log n)，售出、下架时无需补位
+ * 热度分以固定基准时间归一化保存（事件权重乘以e^(λ·(t - 基准时间))），
+ * 新事件只需累加，不必对所有商品重新衰减；基准时间定期前移，防止数值溢出
+ */
+@Component
+@Slf4j
+public class ProductHotRanking {
+
+    private static final int LOAD_BATCH_SIZE = 500;
+    // 全站榜单使用的分类键（分类ID从1开始）
+    private static final int ALL_CATEGORIES = 0;
+    private static final double SECONDS_PER_HOUR = 3600.0;
+    // 基准时间前移周期
+    private static final double REBASE_AFTER_HOURS = 24 * 7;
+
+    private static final Comparator<HotEntry> BY_SCORE_DESC = Comparator
+            .comparingDouble((HotEntry entry) -> entry.score).reversed()
+            .thenComparing(entry -> entry.productId, Comparator.reverseOrder());
+
+    private final ProductRepository productRepository;
+    private final double decayPerHour;
+    private final double publishWeight;
+    private final double viewWeight;
+    private final double favoriteWeight;
+    private final double chatWeight;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // 全部在售商品的热度
+    private final Map<Long, HotEntry> entries = new HashMap<>();
+    // 分类 -> 该分类全部在售商品，按热度降序
+    private final Map<Integer, TreeSet<HotEntry>> ranked = new HashMap<>();
+
+    private long epochSecond = now();
+    private volatile boolean ready = false;
+
+    // 核对期间发生增量变更的商品，以增量结果为准
+    private Set<Long> changedDuringReconcile;
+
+    public ProductHotRanking(ProductRepository productRepository,
+                             @Value("${product.hot.half-life-hours:48}") double halfLifeHours,
+                             @Value("${product.hot.weight.publish:20}") double publishWeight,
+                             @Value("${product.hot.weight.view:1}") double viewWeight,
+                             @Value("${product.hot.weight.favorite:5}") double favoriteWeight,
+                             @Value("${product.hot.weight.chat:8}") double chatWeight) {
+        this.productRepository = productRepository;
+        this.decayPerHour = Math.log(2) / halfLifeHours;
+        this.publishWeight = publishWeight;
+        this.viewWeight = viewWeight;
+        this.favoriteWeight = favoriteWeight;
+        this.chatWeight = chatWeight;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 按热度降序返回商品ID，最多limit条
+     *
+     * @param categoryIds 分类范围（含子分类），null表示全站
+     */
+    public List<Long> getHotProductIds(Collection<Integer> categoryIds, int limit) {
+        lock.readLock().lock();
+        try {
+            List<HotEntry> top = new ArrayList<>();
+            if (categoryIds == null) {
+                takeFirst(ranked.get(ALL_CATEGORIES), limit, top);
+            } else {
+                // 各分类的前limit名合并后取前limit名，结果与在并集上直接取前limit名一致
+                for (Integer categoryId : categoryIds) {
+                    takeFirst(ranked.get(categoryId), limit, top);
+                }
+                top.sort(BY_SCORE_DESC);
+            }
+
+            List<Long> productIds = new ArrayList<>(Math.min(limit, top.size()));
+            for (int i = 0; i < top.size() && i < limit; i++) {
+                productIds.add(top.get(i).productId);
+            }
+            return productIds;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static void takeFirst(TreeSet<HotEntry> entries, int limit, List<HotEntry> target) {
+        if (entries == null) {
+            return;
+        }
+        int taken = 0;
+        for (Iterator<HotEntry> it = entries.iterator(); it.hasNext() && taken < limit; taken++) {
+            target.add(it.next());
+        }
+    }
+
+    /**
+     * 商品发布/编辑/下架/售出（事务提交后执行）
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        Product product = event.getProduct();
+        boolean active = event.getType() != ProductChangedEvent.ChangeType.DELETED
+                && product.getDeletedAt() == null
+                && product.getStatus() == Product.ProductStatus.ACTIVE;
+
+        lock.writeLock().lock();
+        try {
+            if (changedDuringReconcile != null) {
+                changedDuringReconcile.add(product.getId());
+            }
+            HotEntry existing = entries.get(product.getId());
+            if (!active) {
+                if (existing != null) {
+                    remove(existing);
+                }
+            } else if (existing == null) {
+                add(product.getId(), product.getCategoryId(), initialScore(product));
+            } else if (!existing.categoryId.equals(product.getCategoryId())) {
+                // 更换分类：保留热度，移到新分类榜单
+                remove(existing);
+                add(product.getId(), product.getCategoryId(), existing.score);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onViewCountsFlushed(ViewCountsFlushedEvent event) {
+        lock.writeLock().lock();
+        try {
+            double growth = growth(now());
+            event.getViewDeltas().forEach((productId, views) -> increase(productId, viewWeight * views * growth));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 收藏计入热度；取消收藏不扣减（热度反映的是近期关注度）
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFavoriteToggled(FavoriteToggledEvent event) {
+        if (!event.isFavorited()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            increase(event.getProductId(), favoriteWeight * growth(now()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductDiscussed(ProductDiscussedEvent event) {
+        lock.writeLock().lock();
+        try {
+            increase(event.getProductId(), chatWeight * growth(now()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 应用启动后加载
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        reconcile();
+    }
+
+    /**
+     * 与数据库核对在售商品：补入其他节点发布的商品，移除其他节点售出、下架、删除的商品，更换分类的移到新分类榜单
+     * 已在榜单中的商品保留累计热度；新补入的商品历史累计数据没有发生时间，按发布时间计算衰减
+     */
+    @Scheduled(fixedDelayString = "${product.hot.reconcile-interval-ms:600000}",
+               initialDelayString = "${product.hot.reconcile-interval-ms:600000}")
+    public void reconcile() {
+        long start = System.currentTimeMillis();
+
+        lock.writeLock().lock();
+        try {
+            changedDuringReconcile = new HashSet<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        List<Product> products = new ArrayList<>();
+        try {
+            int page = 0;
+            Page<Product> batch;
+            do {
+                batch = productRepository.findByStatus(Product.ProductStatus.ACTIVE,
+                        PageRequest.of(page++, LOAD_BATCH_SIZE, Sort.by("id")));
+                products.addAll(batch.getContent());
+            } while (batch.hasNext());
+        } catch (Exception e) {
+            log.error("Load product hot ranking failed", e);
+            lock.writeLock().lock();
+            try {
+                changedDuringReconcile = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return;
+        }
+
+        int added = 0;
+        int removed = 0;
+        lock.writeLock().lock();
+        try {
+            Set<Long> activeIds = new HashSet<>();
+            for (Product product : products) {
+                if (product.getDeletedAt() != null) {
+                    continue;
+                }
+                activeIds.add(product.getId());
+                if (changedDuringReconcile.contains(product.getId())) {
+                    continue;
+                }
+                HotEntry existing = entries.get(product.getId());
+                if (existing == null) {
+                    double engagement = viewWeight * toInt(product.getViewCount())
+                            + favoriteWeight * toInt(product.getFavoriteCount())
+                            + chatWeight * toInt(product.getChatCount());
+                    add(product.getId(), product.getCategoryId(),
+                            initialScore(product) + engagement * growth(publishedSecond(product)));
+                    added++;
+                } else if (!existing.categoryId.equals(product.getCategoryId())) {
+                    remove(existing);
+                    add(product.getId(), product.getCategoryId(), existing.score);
+                }
+            }
+            for (HotEntry entry : new ArrayList<>(entries.values())) {
+                if (!activeIds.contains(entry.productId) && !changedDuringReconcile.contains(entry.productId)) {
+                    remove(entry);
+                    removed++;
+                }
+            }
+            changedDuringReconcile = null;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        log.info("Product hot ranking reconciled: products={}, added={}, removed={}, cost={}ms",
+                products.size(), added, removed, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 定期前移基准时间：所有分数同比例缩小，相对顺序不变
+     */
+    @Scheduled(fixedDelayString = "${product.hot.rebase-check-interval-ms:3600000}")
+    public void rebase() {
+        long current = now();
+        lock.writeLock().lock();
+        try {
+            if ((current - epochSecond) / SECONDS_PER_HOUR < REBASE_AFTER_HOURS) {
+                return;
+            }
+
+            // 缩放后浮点舍入可能改变分数接近的商品的顺序，有序集合整体重建
+            double factor = 1.0 / growth(current);
+            ranked.clear();
+            for (HotEntry entry : entries.values()) {
+                entry.score *= factor;
+            }
+            epochSecond = current;
+            for (HotEntry entry : entries.values()) {
+                rankedIn(entry.categoryId).add(entry);
+                rankedIn(ALL_CATEGORIES).add(entry);
+            }
+            log.info("Product hot ranking rebased: products={}", entries.size());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // 私有方法（调用方需持有写锁）
+
+    private void add(Long productId, Integer categoryId, double score) {
+        HotEntry entry = new HotEntry(productId, categoryId, score);
+        entries.put(productId, entry);
+        rankedIn(categoryId).add(entry);
+        rankedIn(ALL_CATEGORIES).add(entry);
+    }
+
+    private void remove(HotEntry entry) {
+        entries.remove(entry.productId);
+        TreeSet<HotEntry> categoryRanked = ranked.get(entry.categoryId);
+        if (categoryRanked != null) {
+            categoryRanked.remove(entry);
+            if (categoryRanked.isEmpty()) {
+                ranked.remove(entry.categoryId);
+            }
+        }
+        rankedIn(ALL_CATEGORIES).remove(entry);
+    }
+
+    /**
+     * 热度只增不减：先移出有序集合，更新分数后重新插入
+     */
+    private void increase(Long productId, double delta) {
+        HotEntry entry = entries.get(productId);
+        if (entry == null || delta <= 0) {
+            return;
+        }
+
+        TreeSet<HotEntry> categoryRanked = rankedIn(entry.categoryId);
+        TreeSet<HotEntry> allRanked = rankedIn(ALL_CATEGORIES);
+        categoryRanked.remove(entry);
+        allRanked.remove(entry);
+        entry.score += delta;
+        categoryRanked.add(entry);
+        allRanked.add(entry);
+    }
+
+    private TreeSet<HotEntry> rankedIn(Integer categoryId) {
+        return ranked.computeIfAbsent(categoryId, c -> new TreeSet<>(BY_SCORE_DESC));
+    }
+
+    private double initialScore(Product product) {
+        return publishWeight * growth(publishedSecond(product));
+    }
+
+    private double growth(long second) {
+        return Math.exp(decayPerHour * (second - epochSecond) / SECONDS_PER_HOUR);
+    }
+
+    private long publishedSecond(Product product) {
+        LocalDateTime publishedAt = product.getPublishedAt() != null ? product.getPublishedAt() : product.getCreatedAt();
+        return publishedAt != null ? publishedAt.toEpochSecond(ZoneOffset.UTC) : now();
+    }
+
+    private static long now() {
+        return LocalDateTime.now().toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static int toInt(Integer value) {
+        return value != null ? value : 0;
+    }
+
+    private static final class HotEntry {
+        private final Long productId;
+        private final Integer categoryId;
+        private double score;
+
+        private HotEntry(Long productId, Integer categoryId, double score) {
+            this.productId = productId;
+            this.categoryId = categoryId;
+            this.score = score;
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package com.fliliy.secondhand.service;
+
+import com.fliliy.secondhand.entity.Product;
+import com.fliliy.secondhand.event.ProductChangedEvent;
+import com.fliliy.secondhand.repository.ProductRepository;
+import com.fliliy.secondhand.util.SearchTokenizer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 商品关键词内存倒排索引（仅收录在售商品），BM25排序
+ * 拉丁字母/数字查询词按前缀匹配（iph可命中iphone），中文按二元组精确匹配
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ProductSearchIndex {
+
+    private static final int LOAD_BATCH_SIZE = 500;
+    private static final int TITLE_WEIGHT = 3;
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    // 单个查询词前缀展开的最多词数
+    private static final int MAX_PREFIX_TERMS = 64;
+
+    private final ProductRepository productRepository;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // 词 -> (商品ID -> 加权词频)，按词有序以支持前缀匹配
+    private TreeMap<String, Map<Long, Integer>> postings = new TreeMap<>();
+    // 商品ID -> 文档信息（用于删除和长度归一化）
+    private Map<Long, IndexedDoc> docs = new HashMap<>();
+    private long totalDocLength = 0;
+
+    private volatile boolean ready = false;
+
+    // 全量重建期间到达的增量变更，重建完成后回放
+    private List<ProductChangedEvent> pendingDuringRebuild;
+
+    /**
+     * 索引是否可用（启动加载完成前走数据库LIKE查询）
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 关键词检索：所有查询词都必须命中，按BM25得分降序返回商品ID
+     */
+    public List<Long> search(String keyword, int limit) {
+        Set<String> terms = SearchTokenizer.tokenizeForQuery(keyword);
+        if (terms.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        lock.readLock().lock();
+        try {
+            List<Map<Long, Integer>> termPostings = new ArrayList<>(terms.size());
+            for (String term : terms) {
+                Map<Long, Integer> posting = isLatin(term) ? prefixPosting(term) : postings.get(term);
+                if (posting == null || posting.isEmpty()) {
+                    return Collections.emptyList();
+                }
+                termPostings.add(posting);
+            }
+
+            // 从最短的倒排链开始求交集
+            termPostings.sort(Comparator.comparingInt(Map::size));
+
+            int docCount = docs.size();
+            double avgDocLength = docCount == 0 ? 1.0 : (double) totalDocLength / docCount;
+            double[] idf = new double[termPostings.size()];
+            for (int i = 0; i < idf.length; i++) {
+                int df = termPostings.get(i).size();
+                idf[i] = Math.log(1 + (docCount - df + 0.5) / (df + 0.5));
+            }
+
+            List<ScoredDoc> matches = new ArrayList<>();
+            candidates:
+            for (Map.Entry<Long, Integer> entry : termPostings.get(0).entrySet()) {
+                Long productId = entry.getKey();
+                double norm = K1 * (1 - B + B * docs.get(productId).length / avgDocLength);
+                double score = 0;
+                for (int i = 0; i < termPostings.size(); i++) {
+                    Integer tf = i == 0 ? entry.getValue() : termPostings.get(i).get(productId);
+                    if (tf == null) {
+                        continue candidates;
+                    }
+                    score += idf[i] * tf * (K1 + 1) / (tf + norm);
+                }
+                matches.add(new ScoredDoc(productId, score));
+            }
+
+            matches.sort((a, b) -> Double.compare(b.score, a.score));
+
+            List<Long> result = new ArrayList<>(Math.min(limit, matches.size()));
+            for (int i = 0; i < matches.size() && i < limit; i++) {
+                result.add(matches.get(i).productId);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 商品发布/编辑/下架后增量更新索引（事务提交后执行）
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        lock.writeLock().lock();
+        try {
+            if (pendingDuringRebuild != null) {
+                pendingDuringRebuild.add(event);
+            }
+            apply(event);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 应用启动后加载索引
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        rebuild();
+    }
+
+    /**
+     * 定时全量重建，纠正其他节点写入或状态变更造成的偏差
+     */
+    @Scheduled(fixedDelayString = "${search.index.rebuild-interval-ms:600000}",
+               initialDelayString = "${search.index.rebuild-interval-ms:600000}")
+    public void scheduledRebuild() {
+        rebuild();
+    }
+
+    /**
+     * 全量重建索引：在新结构上构建完成后整体替换
+     */
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+
+        lock.writeLock().lock();
+        try {
+            pendingDuringRebuild = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        TreeMap<String, Map<Long, Integer>> newPostings = new TreeMap<>();
+        Map<Long, IndexedDoc> newDocs = new HashMap<>();
+        long newTotalLength = 0;
+
+        try {
+            int page = 0;
+            Page<Product> batch;
+            do {
+                batch = productRepository.findByStatus(Product.ProductStatus.ACTIVE,
+                        PageRequest.of(page++, LOAD_BATCH_SIZE, Sort.by("id")));
+                for (Product product : batch.getContent()) {
+                    newTotalLength += addDocument(newPostings, newDocs, product);
+                }
+            } while (batch.hasNext());
+        } catch (Exception e) {
+            log.error("Rebuild product search index failed", e);
+            lock.writeLock().lock();
+            try {
+                pendingDuringRebuild = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            postings = newPostings;
+            docs = newDocs;
+            totalDocLength = newTotalLength;
+            for (ProductChangedEvent event : pendingDuringRebuild) {
+                apply(event);
+            }
+            pendingDuringRebuild = null;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        log.info("Product search index rebuilt: docs={}, terms={}, cost={}ms",
+                newDocs.size(), newPostings.size(), System.currentTimeMillis() - start);
+    }
+
+    // 前缀匹配的倒排链（调用方需持有读锁）：以查询词开头的词合并，同一商品取最大词频
+    private Map<Long, Integer> prefixPosting(String prefix) {
+        SortedMap<String, Map<Long, Integer>> matched = postings.subMap(prefix, prefix + Character.MAX_VALUE);
+        if (matched.size() == 1) {
+            return matched.values().iterator().next();
+        }
+
+        Map<Long, Integer> merged = new HashMap<>();
+        int expanded = 0;
+        // 精确匹配的词排在最前，必然包含在内
+        for (Map<Long, Integer> posting : matched.values()) {
+            if (expanded++ >= MAX_PREFIX_TERMS) {
+                break;
+            }
+            posting.forEach((productId, tf) -> merged.merge(productId, tf, Math::max));
+        }
+        return merged;
+    }
+
+    private static boolean isLatin(String term) {
+        for (int i = 0; i < term.length(); i++) {
+            char c = term.charAt(i);
+            if (c >= 0x80 || !Character.isLetterOrDigit(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 私有方法（调用方需持有写锁）
+
+    private void apply(ProductChangedEvent event) {
+        Product product = event.getProduct();
+        totalDocLength -= removeDocument(postings, docs, product.getId());
+
+        boolean indexable = event.getType() != ProductChangedEvent.ChangeType.DELETED
+                && product.getDeletedAt() == null
+                && product.getStatus() == Product.ProductStatus.ACTIVE;
+        if (indexable) {
+            totalDocLength += addDocument(postings, docs, product);
+        }
+    }
+
+    private static int addDocument(Map<String, Map<Long, Integer>> postings,
+                                   Map<Long, IndexedDoc> docs,
+                                   Product product) {
+        Map<String, Integer> termFrequencies = new HashMap<>();
+        for (String term : SearchTokenizer.tokenizeForIndex(product.getTitle())) {
+            termFrequencies.merge(term, TITLE_WEIGHT, Integer::sum);
+        }
+        for (String term : SearchTokenizer.tokenizeForIndex(product.getDescription())) {
+            termFrequencies.merge(term, 1, Integer::sum);
+        }
+
+        int length = 0;
+        for (Map.Entry<String, Integer> entry : termFrequencies.entrySet()) {
+            postings.computeIfAbsent(entry.getKey(), k -> new HashMap<>())
+                    .put(product.getId(), entry.getValue());
+            length += entry.getValue();
+        }
+
+        docs.put(product.getId(), new IndexedDoc(
+                termFrequencies.keySet().toArray(new String[0]), length));
+        return length;
+    }
+
+    private static int removeDocument(Map<String, Map<Long, Integer>> postings,
+                                      Map<Long, IndexedDoc> docs,
+                                      Long productId) {
+        IndexedDoc doc = docs.remove(productId);
+        if (doc == null) {
+            return 0;
+        }
+
+        for (String term : doc.terms) {
+            Map<Long, Integer> posting = postings.get(term);
+            if (posting != null) {
+                posting.remove(productId);
+                if (posting.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+        return doc.length;
+    }
+
+    private static final class IndexedDoc {
+        private final String[] terms;
+        private final int length;
+
+        private IndexedDoc(String[] terms, int length) {
+            this.terms = terms;
+            this.length = length;
+        }
+    }
+
+    private static final class ScoredDoc {
+        private final Long productId;
+        private final double score;
+
+        private ScoredDoc(Long productId, double score) {
+            this.productId = productId;
+            this.score = score;
+        }
+    }
+}
@@ -6,11 +6,17 @@ import com.fliliy.secondhand.dto.response.PagedResponse;
 import com.fliliy.secondhand.dto.response.ProductDetailResponse;
 import com.fliliy.secondhand.dto.response.ProductSummaryResponse;
 import com.fliliy.secondhand.entity.*;
+import com.fliliy.secondhand.event.FavoriteToggledEvent;
+import com.fliliy.secondhand.event.ProductChangedEvent;
 import com.fliliy.secondhand.repository.*;
+import com.fliliy.secondhand.util.GeoUtils;
 import com.fliliy.secondhand.util.IdGenerator;
+import com.fliliy.secondhand.util.PageCursor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
@@ -19,6 +25,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 
+import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Predicate;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
@@ -32,13 +39,37 @@ import java.util.stream.Collectors;
 @Slf4j
 public class ProductService {
     
+    // 按相关度排序时最多取倒排索引得分最高的候选数量，超出时总数标记为近似值
+    private static final int MAX_KEYWORD_CANDIDATES = 1000;
+    // 按其他字段排序时关键词候选作为ID过滤条件交给数据库/列存排序，上限更高，超出时同样标记为近似值
+    private static final int MAX_KEYWORD_FILTER_CANDIDATES = 10000;
+    // 候选ID拆分为多个IN列表，避免单个IN列表过长
+    private static final int ID_IN_CHUNK_SIZE = 1000;
+    // 网格索引最多取最近的候选数量：按距离排序时超出部分截断并标记总数为近似值，其他排序改走数据库范围查询
+    private static final int MAX_NEARBY_CANDIDATES = 1000;
+    // 按热度排序时最多取热度最高的候选数量，超出时总数标记为近似值
+    private static final int MAX_HOT_CANDIDATES = 1000;
+    
     private final ProductRepository productRepository;
-    private final CategoryRepository categoryRepository;
     private final ProductImageRepository productImageRepository;
     private final ProductTagRepository productTagRepository;
     private final ProductFavoriteRepository productFavoriteRepository;
     private final UserRepository userRepository;
     private final CategoryService categoryService;
+    private final CategoryProductCounter categoryProductCounter;
+    private final ProductClassifier productClassifier;
+    private final ProductColumnStore productColumnStore;
+    private final ProductGeoIndex productGeoIndex;
+    private final ProductHotRanking productHotRanking;
+    private final ProductSearchIndex productSearchIndex;
+    private final ProductEnrichmentService productEnrichmentService;
+    private final FavoriteMembershipCache favoriteMembershipCache;
+    private final ViewCountBuffer viewCountBuffer;
+    private final ProductDetailCache productDetailCache;
+    private final ProductDetailLoader productDetailLoader;
+    private final ProductCountCache productCountCache;
+    private final SearchKeywordTracker searchKeywordTracker;
+    private final ApplicationEventPublisher eventPublisher;
     
     /**
      * 发布商品
@@ -98,6 +129,7 @@ public class ProductService {
         }
         
         product.setPublishedAt(LocalDateTime.now());
+        productClassifier.classify(product);
         
         // 保存商品
         Product savedProduct = productRepository.save(product);
@@ -111,7 +143,9 @@ public class ProductService {
         }
         
         // 6. 更新分类商品数量
-        categoryService.updateCategoryProductCount(request.getCategoryId());
+        categoryProductCounter.adjust(request.getCategoryId(), 1);
+        
+        eventPublisher.publishEvent(new ProductChangedEvent(ProductChangedEvent.ChangeType.PUBLISHED, savedProduct));
         
         log.info("Product published successfully: id={}, title={}, seller={}", 
                 savedProduct.getId(), savedProduct.getTitle(), sellerId);
@@ -123,63 +157,131 @@ public class ProductService {
      * 获取商品列表（主页/搜索/筛选）
      */
     public PagedResponse<ProductSummaryResponse> getProducts(ProductQueryRequest request, Long currentUserId) {
+        // 统计搜索词，翻页不重复计数
+        boolean firstPage = request.isCursorMode() ? !StringUtils.hasText(request.getCursor()) : request.getPage() == 1;
+        if (firstPage && StringUtils.hasText(request.getKeyword())) {
+            searchKeywordTracker.record(request.getKeyword());
+        }
+        
+        // 关键词优先走内存倒排索引，位置优先走网格索引，数据库只处理其余结构化条件
+        ListingCandidates candidates = resolveCandidates(request);
+        
         // 构建查询规格
-        Specification<Product> spec = buildProductSpecification(request);
+        Specification<Product> spec = buildProductSpecification(request, candidates);
+        
+        // 游标分页（无限滚动）：不使用OFFSET，也不执行COUNT
+        if (request.isCursorMode()) {
+            return getProductsByCursor(request, spec, candidates, currentUserId);
+        }
         
         // 构建排序
         Sort sort = buildSort(request.getSort());
         Pageable pageable = PageRequest.of(request.getPage() - 1, request.getSize(), sort);
         
-        // 执行查询
-        Page<Product> productsPage = productRepository.findAll(spec, pageable);
+        // 执行查询（只查询摘要列）；关键词或位置候选被截断时总数只是下限
+        Page<ProductSummaryRow> productsPage;
+        boolean approximate = candidates.truncated;
+        ProductColumnStore.PageResult columnResult;
+        if (candidates.ids != null && candidates.ids.isEmpty()) {
+            productsPage = new PageImpl<>(Collections.emptyList(), pageable, 0);
+        } else if (candidates.ranked) {
+            List<Long> rankedIds = filterRankedIds(spec, candidates);
+            int from = (int) Math.min(pageable.getOffset(), rankedIds.size());
+            int to = Math.min(from + pageable.getPageSize(), rankedIds.size());
+            productsPage = new PageImpl<>(findSummariesInOrder(rankedIds.subList(from, to)), pageable, rankedIds.size());
+        } else if ((columnResult = productColumnStore.query(request, candidates.ids)) != null) {
+            // 列存快照已完成筛选排序，数据库只按主键取当前页
+            productsPage = new PageImpl<>(findSummariesInOrder(columnResult.getProductIds()),
+                    pageable, columnResult.getTotal());
+        } else if (Boolean.TRUE.equals(request.getApproximateTotal())
+                && productCountCache.getIfPresent(request) == null) {
+            productsPage = findSummariesWithoutCount(spec, pageable);
+            approximate = true;
+        } else {
+            // 总数按筛选条件缓存，翻页和切换排序时不重复COUNT
+            productsPage = productRepository.findSummaries(spec, pageable,
+                    () -> productCountCache.getOrCount(request, () -> productRepository.count(spec)));
+        }
         
         // 转换为响应对象
         List<ProductSummaryResponse> summaries = convertToSummaryResponses(
                 productsPage.getContent(), currentUserId);
+        fillDistances(summaries, productsPage.getContent(), request, candidates);
         
         // 构建筛选条件汇总
         Object filters = buildFiltersInfo(request);
         
-        return PagedResponse.of(summaries, productsPage, filters);
+        PagedResponse<ProductSummaryResponse> response = PagedResponse.of(summaries, productsPage, filters);
+        if (approximate) {
+            response.getPagination().setApproximate(true);
+        }
+        return response;
+    }
+    
+    /**
+     * 近似总数分页：多取一条判断是否有下一页，不执行COUNT；总数为已读取到的数量（有下一页时再加一）
+     */
+    private Page<ProductSummaryRow> findSummariesWithoutCount(Specification<Product> spec, Pageable pageable) {
+        List<ProductSummaryRow> rows = productRepository.findSummarySlice(spec, pageable.getSort(),
+                pageable.getOffset(), pageable.getPageSize() + 1);
+        boolean hasNext = rows.size() > pageable.getPageSize();
+        List<ProductSummaryRow> content = hasNext ? rows.subList(0, pageable.getPageSize()) : rows;
+        long total = pageable.getOffset() + content.size() + (hasNext ? 1 : 0);
+        return new PageImpl<>(content, pageable, total);
     }
     
     /**
      * 获取商品详情
+     * 不开启事务：详情数据由加载器并发查询，请求线程等待期间不占用数据库连接
      */
-    @Transactional
     public ProductDetailResponse getProductDetail(Long productId, Long currentUserId) {
-        // 查找商品
-        Product product = productRepository.findByIdAndNotDeleted(productId)
-                .orElseThrow(() -> new RuntimeException("商品不存在"));
-        
-        // 增加浏览次数（异步处理避免影响响应速度）
-        productRepository.incrementViewCount(productId);
-        
-        // 获取相关数据
-        List<ProductImage> images = productImageRepository.findByProductIdOrderBySortOrder(productId);
-        List<String> tags = productTagRepository.findTagNamesByProductId(productId);
-        
-        // 获取卖家信息
-        User seller = userRepository.findById(product.getSellerId())
-                .orElseThrow(() -> new RuntimeException("卖家信息不存在"));
-        
-        // 获取分类信息
-        Category category = categoryRepository.findById(product.getCategoryId())
-                .orElse(null);
-        
-        // 检查是否收藏
-        boolean isFavorited = false;
-        if (currentUserId != null) {
-            isFavorited = productFavoriteRepository.existsByUserIdAndProductId(currentUserId, productId);
+        // 与用户无关的详情优先从缓存读取
+        ProductDetailResponse shared = productDetailCache.get(productId);
+        if (shared == null) {
+            ProductDetailLoader.ProductDetailAggregate detail = productDetailLoader.load(productId);
+            // 收藏状态、是否本人发布由下方叠加
+            shared = convertToDetailResponse(detail, false, null);
+            // 标签或相关商品超时未取到时不缓存，下次请求重新加载
+            if (detail.isComplete()) {
+                productDetailCache.put(productId, shared);
+            }
         }
         
-        // 获取相关推荐商品
-        List<Product> relatedProducts = productRepository.findRelatedProducts(
-                product.getCategoryId(), productId, PageRequest.of(0, 4));
+        recordView(productId);
         
-        // 构建响应
-        return convertToDetailResponse(product, images, tags, seller, category, 
-                isFavorited, currentUserId, relatedProducts);
+        // 叠加当前用户相关信息（复制统计对象，不修改缓存中的实例）
+        ProductDetailResponse.StatsInfo sharedStats = shared.getStats();
+        ProductDetailResponse.StatsInfo stats = new ProductDetailResponse.StatsInfo();
+        long persistedViews = sharedStats.getViewCount() != null ? sharedStats.getViewCount() : 0;
+        stats.setViewCount((int) (persistedViews + viewCountBuffer.getPending(productId)));
+        stats.setFavoriteCount(sharedStats.getFavoriteCount());
+        stats.setChatCount(sharedStats.getChatCount());
+        stats.setIsOwn(currentUserId != null && shared.getSeller() != null
+                && currentUserId.toString().equals(shared.getSeller().getId()));
+        stats.setIsFavorited(favoriteMembershipCache.isFavorited(currentUserId, productId));
+        
+        return shared.toBuilder().stats(stats).build();
+    }
+    
+    /**
+     * 商品详情ETag依赖的版本号：商品本身、所属分类（相关商品）和卖家资料；商品不存在时只依赖商品本身
+     */
+    public String[] getDetailVersionResources(Long productId) {
+        List<Object[]> rows = productRepository.findCategoryAndSellerById(productId);
+        if (rows.isEmpty()) {
+            return new String[] {ResourceVersionService.product(productId)};
+        }
+        return new String[] {
+                ResourceVersionService.product(productId),
+                ResourceVersionService.category((Integer) rows.get(0)[0]),
+                ResourceVersionService.userProfile((Long) rows.get(0)[1])};
+    }
+    
+    /**
+     * 增加浏览次数（写入内存缓冲，定时批量写回数据库）；详情命中304时也要计数
+     */
+    public void recordView(Long productId) {
+        viewCountBuffer.increment(productId);
     }
     
     /**
@@ -211,6 +313,8 @@ public class ProductService {
             log.info("Product favorited: productId={}, userId={}", productId, userId);
         }
         
+        eventPublisher.publishEvent(new FavoriteToggledEvent(userId, productId, isFavorited));
+        
         // 获取最新收藏数
         Long favoriteCount = productFavoriteRepository.countByProductId(productId);
         
@@ -248,6 +352,7 @@ public class ProductService {
         
         // 更新其他信息...（类似发布商品的逻辑）
         
+        productClassifier.classify(product);
         productRepository.save(product);
         
         // 重新保存图片和标签
@@ -259,6 +364,8 @@ public class ProductService {
             saveProductTags(productId, request.getTags());
         }
         
+        eventPublisher.publishEvent(new ProductChangedEvent(ProductChangedEvent.ChangeType.UPDATED, product));
+        
         log.info("Product updated: id={}, seller={}", productId, sellerId);
     }
     
@@ -278,8 +385,12 @@ public class ProductService {
         // 软删除商品
         productRepository.softDeleteById(productId);
         
-        // 更新分类商品数量
-        categoryService.updateCategoryProductCount(product.getCategoryId());
+        // 更新分类商品数量（只有在售商品计入）
+        if (product.getStatus() == Product.ProductStatus.ACTIVE) {
+            categoryProductCounter.adjust(product.getCategoryId(), -1);
+        }
+        
+        eventPublisher.publishEvent(new ProductChangedEvent(ProductChangedEvent.ChangeType.DELETED, product));
         
         log.info("Product deleted: id={}, seller={}", productId, sellerId);
     }
@@ -314,7 +425,292 @@ public class ProductService {
         }
     }
     
-    private Specification<Product> buildProductSpecification(ProductQueryRequest request) {
+    /**
+     * 通过倒排索引解析关键词，返回按相关度排序的候选商品ID（多取一条用于判断是否截断）
+     * 相关度排序时候选顺序即结果顺序；其他排序时候选只作为ID过滤条件，由数据库或列存按排序字段排序
+     * 返回null表示无需或无法使用索引（未传关键词、索引未就绪或查询非在售商品），此时由数据库LIKE查询
+     */
+    private List<Long> resolveKeywordCandidates(ProductQueryRequest request) {
+        if (!StringUtils.hasText(request.getKeyword())) {
+            return null;
+        }
+        // 索引只收录在售商品
+        if (!productSearchIndex.isReady() || !"ACTIVE".equals(request.getStatus())) {
+            return null;
+        }
+        return productSearchIndex.search(request.getKeyword().trim(), keywordCandidateLimit(request) + 1);
+    }
+    
+    private int keywordCandidateLimit(ProductQueryRequest request) {
+        return "relevance".equals(request.getSort()) ? MAX_KEYWORD_CANDIDATES : MAX_KEYWORD_FILTER_CANDIDATES;
+    }
+    
+    /**
+     * 通过网格索引解析位置条件，返回按距离由近到远排序的商品及距离（多取一条用于判断是否截断）
+     * 返回null表示无需或无法使用索引（未传坐标、索引未就绪或查询非在售商品）
+     */
+    private Map<Long, Double> resolveNearbyProducts(ProductQueryRequest request) {
+        if (request.getLatitude() == null || request.getLongitude() == null) {
+            return null;
+        }
+        // 索引只收录在售商品
+        if (!productGeoIndex.isReady() || !"ACTIVE".equals(request.getStatus())) {
+            return null;
+        }
+        
+        Map<Long, Double> nearby = new LinkedHashMap<>();
+        for (ProductGeoIndex.NearbyProduct product : productGeoIndex.searchNearby(
+                request.getLatitude().doubleValue(), request.getLongitude().doubleValue(),
+                request.getRadius(), MAX_NEARBY_CANDIDATES + 1)) {
+            nearby.put(product.getProductId(), product.getDistanceMeters());
+        }
+        return nearby;
+    }
+    
+    /**
+     * 合并关键词和位置候选集；按相关度或距离排序时候选集的顺序即结果顺序
+     */
+    private ListingCandidates resolveCandidates(ProductQueryRequest request) {
+        List<Long> keywordIds = resolveKeywordCandidates(request);
+        int keywordLimit = keywordCandidateLimit(request);
+        boolean truncated = keywordIds != null && keywordIds.size() > keywordLimit;
+        if (truncated) {
+            keywordIds = keywordIds.subList(0, keywordLimit);
+        }
+        Map<Long, Double> nearby = resolveNearbyProducts(request);
+        if (nearby != null && nearby.size() > MAX_NEARBY_CANDIDATES) {
+            if ("distance".equals(request.getSort())) {
+                // 只保留最近的候选，总数标记为近似值
+                nearby = nearby.entrySet().stream()
+                        .limit(MAX_NEARBY_CANDIDATES)
+                        .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (a, b) -> a, LinkedHashMap::new));
+                truncated = true;
+            } else {
+                // 半径内商品过多，改由数据库按范围查询全部结果和准确总数
+                nearby = null;
+            }
+        }
+        List<Long> hotIds = resolveHotRanking(request);
+        if (hotIds != null && hotIds.size() > MAX_HOT_CANDIDATES) {
+            // 只在热度最高的候选中分页和筛选，总数只是下限
+            hotIds = hotIds.subList(0, MAX_HOT_CANDIDATES);
+            truncated = true;
+        }
+        
+        // 结果顺序由排序方式对应的候选集决定，其余候选集只做过滤
+        List<Long> ordered;
+        boolean ranked;
+        if (hotIds != null) {
+            ordered = hotIds;
+            ranked = true;
+        } else if (nearby != null && ("distance".equals(request.getSort()) || keywordIds == null)) {
+            ordered = new ArrayList<>(nearby.keySet());
+            ranked = "distance".equals(request.getSort());
+        } else if (keywordIds != null) {
+            ordered = keywordIds;
+            ranked = "relevance".equals(request.getSort());
+        } else {
+            return new ListingCandidates(null, false, false, false, false, null);
+        }
+        
+        Set<Long> keywordSet = keywordIds != null && ordered != keywordIds ? new HashSet<>(keywordIds) : null;
+        Map<Long, Double> nearbyFilter = nearby;
+        List<Long> ids = ordered.stream()
+                .filter(id -> keywordSet == null || keywordSet.contains(id))
+                .filter(id -> nearbyFilter == null || nearbyFilter.containsKey(id))
+                .collect(Collectors.toList());
+        
+        // 热度榜单只含在售商品并已按分类筛选，没有其他条件时可直接分页
+        boolean complete = hotIds != null && !StringUtils.hasText(request.getKeyword())
+                && request.getLatitude() == null && request.getLongitude() == null
+                && !hasStructuredFilters(request);
+        return new ListingCandidates(ids, ranked, complete, keywordIds != null, truncated, nearby);
+    }
+    
+    /**
+     * 按热度排序时从热度榜单取候选商品（已按分类范围筛选，多取一条用于判断是否截断）
+     * 返回null表示无需或无法使用榜单（非热度排序、榜单未就绪或查询非在售商品）
+     */
+    private List<Long> resolveHotRanking(ProductQueryRequest request) {
+        if (!"hot".equals(request.getSort()) || !productHotRanking.isReady() || !"ACTIVE".equals(request.getStatus())) {
+            return null;
+        }
+        
+        List<Integer> categoryIds = request.getCategoryId() != null
+                ? categoryService.getCategoryIdsIncludeChildren(request.getCategoryId())
+                : null;
+        return productHotRanking.getHotProductIds(categoryIds, MAX_HOT_CANDIDATES + 1);
+    }
+    
+    /**
+     * 是否有分类、关键词、位置以外的筛选条件
+     */
+    private boolean hasStructuredFilters(ProductQueryRequest request) {
+        return request.getMinPrice() != null || request.getMaxPrice() != null
+                || StringUtils.hasText(request.getCondition())
+                || request.getHasWarranty() != null
+                || StringUtils.hasText(request.getProvince())
+                || StringUtils.hasText(request.getCity())
+                || StringUtils.hasText(request.getDistrict())
+                || request.getSellerId() != null
+                || (StringUtils.hasText(request.getFilter()) && !"all".equals(request.getFilter()));
+    }
+    
+    /**
+     * 按候选集顺序排序（相关度/距离/热度）：候选集已有序且数量有限，数据库只查出符合其余条件的ID，
+     * 按原顺序返回，由调用方在内存中分页；候选集已满足全部条件时不查询数据库
+     */
+    private List<Long> filterRankedIds(Specification<Product> spec, ListingCandidates candidates) {
+        if (candidates.complete) {
+            return candidates.ids;
+        }
+        
+        Set<Long> matched = new HashSet<>(productRepository.findIds(spec));
+        return candidates.ids.stream()
+                .filter(matched::contains)
+                .collect(Collectors.toList());
+    }
+    
+    /**
+     * 游标分页查询：按(排序字段, id)做keyset定位，多取一条判断是否有下一页
+     */
+    private PagedResponse<ProductSummaryResponse> getProductsByCursor(ProductQueryRequest request,
+                                                                     Specification<Product> spec,
+                                                                     ListingCandidates candidates,
+                                                                     Long currentUserId) {
+        String sortKey = StringUtils.hasText(request.getSort()) ? request.getSort() : "time_desc";
+        PageCursor cursor = PageCursor.decode(request.getCursor(), sortKey);
+        int size = request.getSize();
+        
+        List<ProductSummaryRow> products;
+        String nextCursor = null;
+        
+        if (candidates.ids != null && candidates.ids.isEmpty()) {
+            products = Collections.emptyList();
+        } else if (candidates.ranked) {
+            // 相关度/距离/热度排序没有可比较的列值，游标记录在排序结果中的位置
+            List<Long> rankedIds = filterRankedIds(spec, candidates);
+            int from = Math.min(cursor != null ? cursor.getOffset() : 0, rankedIds.size());
+            int to = Math.min(from + size, rankedIds.size());
+            products = findSummariesInOrder(rankedIds.subList(from, to));
+            if (to < rankedIds.size() && !products.isEmpty()) {
+                nextCursor = PageCursor.encode(sortKey, String.valueOf(to), products.get(products.size() - 1).getId());
+            }
+        } else {
+            String property = getSortProperty(sortKey);
+            boolean descending = buildSort(sortKey).getOrderFor(property).isDescending();
+            
+            Specification<Product> keysetSpec = spec;
+            if (cursor != null) {
+                keysetSpec = spec.and(buildKeysetSpecification(property, descending,
+                        parseSortValue(property, cursor.getValue()), cursor.getLastId()));
+            }
+            
+            Sort.Direction direction = descending ? Sort.Direction.DESC : Sort.Direction.ASC;
+            Sort sort = Sort.by(direction, property).and(Sort.by(direction, "id"));
+            
+            List<ProductSummaryRow> rows = productRepository.findSummarySlice(keysetSpec, sort, size + 1);
+            products = rows.size() > size ? rows.subList(0, size) : rows;
+            if (rows.size() > size) {
+                ProductSummaryRow last = products.get(products.size() - 1);
+                nextCursor = PageCursor.encode(sortKey, formatSortValue(property, last), last.getId());
+            }
+        }
+        
+        List<ProductSummaryResponse> summaries = convertToSummaryResponses(products, currentUserId);
+        fillDistances(summaries, products, request, candidates);
+        
+        return PagedResponse.<ProductSummaryResponse>builder()
+                .content(summaries)
+                .pagination(PagedResponse.PaginationInfo.builder()
+                        .size(size)
+                        .hasNext(nextCursor != null)
+                        .hasPrevious(cursor != null)
+                        .isFirst(cursor == null)
+                        .isLast(nextCursor == null)
+                        .nextCursor(nextCursor)
+                        .approximate(candidates.truncated ? true : null)
+                        .build())
+                .filters(buildFiltersInfo(request))
+                .build();
+    }
+    
+    /**
+     * keyset条件：(field, id) 严格位于游标之后
+     * 排序字段为空的行按MySQL规则排列：升序时排在最前，降序时排在最后
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Specification<Product> buildKeysetSpecification(String property, boolean descending,
+                                                            Comparable value, Long lastId) {
+        return (root, query, criteriaBuilder) -> {
+            Path<Comparable> field = root.get(property);
+            Path<Long> id = root.get("id");
+            
+            if (value == null) {
+                Predicate nullTieBreak = criteriaBuilder.and(criteriaBuilder.isNull(field),
+                        descending ? criteriaBuilder.lessThan(id, lastId) : criteriaBuilder.greaterThan(id, lastId));
+                return descending ? nullTieBreak : criteriaBuilder.or(criteriaBuilder.isNotNull(field), nullTieBreak);
+            }
+            
+            Predicate beyond = descending
+                    ? criteriaBuilder.lessThan(field, value)
+                    : criteriaBuilder.greaterThan(field, value);
+            Predicate tieBreak = criteriaBuilder.and(
+                    criteriaBuilder.equal(field, value),
+                    descending ? criteriaBuilder.lessThan(id, lastId) : criteriaBuilder.greaterThan(id, lastId));
+            
+            if (descending) {
+                return criteriaBuilder.or(beyond, tieBreak, criteriaBuilder.isNull(field));
+            }
+            return criteriaBuilder.or(beyond, tieBreak);
+        };
+    }
+    
+    private String getSortProperty(String sortKey) {
+        return buildSort(sortKey).iterator().next().getProperty();
+    }
+    
+    // 排序字段为空时游标中记为空串
+    private Comparable<?> parseSortValue(String property, String value) {
+        if (value.isEmpty()) {
+            return null;
+        }
+        try {
+            switch (property) {
+                case "publishedAt":
+                    return LocalDateTime.parse(value);
+                case "price":
+                    return new BigDecimal(value);
+                default:
+                    return Integer.valueOf(value);
+            }
+        } catch (RuntimeException e) {
+            throw new RuntimeException("分页游标无效");
+        }
+    }
+    
+    private String formatSortValue(String property, ProductSummaryRow product) {
+        Object value;
+        switch (property) {
+            case "publishedAt":
+                value = product.getPublishedAt();
+                break;
+            case "price":
+                value = product.getPrice() != null ? product.getPrice().toPlainString() : null;
+                break;
+            case "viewCount":
+                value = product.getViewCount();
+                break;
+            case "favoriteCount":
+                value = product.getFavoriteCount();
+                break;
+            default:
+                throw new IllegalStateException("Unsupported cursor sort property: " + property);
+        }
+        return value != null ? value.toString() : "";
+    }
+    
+    private Specification<Product> buildProductSpecification(ProductQueryRequest request, ListingCandidates candidates) {
         return (root, query, criteriaBuilder) -> {
             List<Predicate> predicates = new ArrayList<>();
             
@@ -333,8 +729,19 @@ public class ProductService {
                 predicates.add(root.get("categoryId").in(categoryIds));
             }
             
-            // 关键词搜索
-            if (StringUtils.hasText(request.getKeyword())) {
+            // 关键词/位置已由内存索引解析时只按候选ID过滤
+            if (candidates.ids != null) {
+                List<Predicate> idChunks = new ArrayList<>();
+                for (int from = 0; from < candidates.ids.size(); from += ID_IN_CHUNK_SIZE) {
+                    idChunks.add(root.get("id").in(candidates.ids.subList(from,
+                            Math.min(from + ID_IN_CHUNK_SIZE, candidates.ids.size()))));
+                }
+                predicates.add(idChunks.size() == 1 ? idChunks.get(0)
+                        : criteriaBuilder.or(idChunks.toArray(new Predicate[0])));
+            }
+            
+            // 关键词搜索（未经倒排索引解析时）
+            if (!candidates.keywordResolved && StringUtils.hasText(request.getKeyword())) {
                 String keyword = "%" + request.getKeyword().trim() + "%";
                 Predicate titleMatch = criteriaBuilder.like(root.get("title"), keyword);
                 Predicate descMatch = criteriaBuilder.like(root.get("description"), keyword);
@@ -360,6 +767,18 @@ public class ProductService {
                 predicates.add(criteriaBuilder.equal(root.get("hasWarranty"), request.getHasWarranty()));
             }
             
+            // 附近商品（网格索引未就绪时按经纬度矩形范围近似过滤）
+            if (candidates.nearby == null && request.getLatitude() != null && request.getLongitude() != null) {
+                double latitude = request.getLatitude().doubleValue();
+                double latSpan = request.getRadius() / GeoUtils.METERS_PER_DEGREE;
+                double lonSpan = latSpan / Math.max(Math.cos(Math.toRadians(latitude)), 0.01);
+                predicates.add(criteriaBuilder.between(root.get("latitude"),
+                        BigDecimal.valueOf(latitude - latSpan), BigDecimal.valueOf(latitude + latSpan)));
+                predicates.add(criteriaBuilder.between(root.get("longitude"),
+                        request.getLongitude().subtract(BigDecimal.valueOf(lonSpan)),
+                        request.getLongitude().add(BigDecimal.valueOf(lonSpan))));
+            }
+            
             // 地区筛选
             if (StringUtils.hasText(request.getProvince())) {
                 predicates.add(criteriaBuilder.equal(root.get("province"), request.getProvince()));
@@ -388,46 +807,16 @@ public class ProductService {
                         predicates.add(criteriaBuilder.lessThan(root.get("price"), root.get("originalPrice")));
                         break;
                     case "brand":
-                        // brand：品牌商品（基于商品标题或描述包含品牌关键词）
-                        Predicate brandInTitle = criteriaBuilder.or(
-                            criteriaBuilder.like(criteriaBuilder.lower(root.get("title")), "%apple%"),
-                            criteriaBuilder.like(criteriaBuilder.lower(root.get("title")), "%samsung%"),
-                            criteriaBuilder.like(criteriaBuilder.lower(root.get("title")), "%sony%"),
-                            criteriaBuilder.like(criteriaBuilder.lower(root.get("title")), "%nike%"),
-                            criteriaBuilder.like(criteriaBuilder.lower(root.get("title")), "%iphone%"),
-                            criteriaBuilder.like(criteriaBuilder.lower(root.get("title")), "%ps5%"),
-                            criteriaBuilder.like(criteriaBuilder.lower(root.get("title")), "%playstation%"),
-                            criteriaBuilder.like(criteriaBuilder.lower(root.get("title")), "%品牌%")
-                        );
-                        predicates.add(brandInTitle);
+                        // brand：品牌商品（发布时按品牌关键词词典标记）
+                        predicates.add(criteriaBuilder.isTrue(root.get("isBrand")));
                         break;
                     case "popular":
                         // popular：热门商品（浏览量和收藏数较高的商品）
-                        predicates.add(criteriaBuilder.or(
-                            criteriaBuilder.greaterThan(root.get("viewCount"), 50),
-                            criteriaBuilder.greaterThan(root.get("favoriteCount"), 5)
-                        ));
+                        predicates.add(criteriaBuilder.isTrue(root.get("isPopular")));
                         break;
                     case "accessories":
-                        // accessories：电子配件商品（基于商品标题包含配件关键词）
-                        Predicate accessoriesInTitle = criteriaBuilder.or(
-                            criteriaBuilder.like(criteriaBuilder.lower(root.get("title")), "%耳机%"),
-                            criteriaBuilder.like(criteriaBuilder.lower(root.get("title")), "%充电器%"),
-                            criteriaBuilder.like(criteriaBuilder.lower(root.get("title")), "%数据线%"),
-                            criteriaBuilder.like(criteriaBuilder.lower(root.get("title")), "%保护壳%"),
-                            criteriaBuilder.like(criteriaBuilder.lower(root.get("title")), "%手机壳%"),
-                            criteriaBuilder.like(criteriaBuilder.lower(root.get("title")), "%移动电源%"),
-                            criteriaBuilder.like(criteriaBuilder.lower(root.get("title")), "%充电宝%"),
-                            criteriaBuilder.like(criteriaBuilder.lower(root.get("title")), "%支架%"),
-                            criteriaBuilder.like(criteriaBuilder.lower(root.get("title")), "%adapter%"),
-                            criteriaBuilder.like(criteriaBuilder.lower(root.get("title")), "%cable%"),
-                            criteriaBuilder.like(criteriaBuilder.lower(root.get("title")), "%case%"),
-                            criteriaBuilder.like(criteriaBuilder.lower(root.get("title")), "%charger%"),
-                            criteriaBuilder.like(criteriaBuilder.lower(root.get("title")), "%headset%"),
-                            criteriaBuilder.like(criteriaBuilder.lower(root.get("title")), "%earphone%"),
-                            criteriaBuilder.like(criteriaBuilder.lower(root.get("title")), "%配件%")
-                        );
-                        predicates.add(accessoriesInTitle);
+                        // accessories：电子配件商品（发布时按配件关键词词典标记）
+                        predicates.add(criteriaBuilder.isTrue(root.get("isAccessory")));
                         break;
                     default:
                         // 其他值默认显示所有商品
@@ -455,41 +844,40 @@ public class ProductService {
                 return Sort.by(Sort.Direction.DESC, "viewCount");
             case "favorite_desc":
                 return Sort.by(Sort.Direction.DESC, "favoriteCount");
+            case "relevance": // 相关度排序由倒排索引处理，无关键词时按时间倒序
+            case "distance": // 距离排序由网格索引处理，无坐标时按时间倒序
+            case "hot": // 热度排序由热度榜单处理，榜单未就绪时按时间倒序
             case "time_desc":
             default:
                 return Sort.by(Sort.Direction.DESC, "publishedAt");
         }
     }
     
-    private List<ProductSummaryResponse> convertToSummaryResponses(List<Product> products, Long currentUserId) {
+    private List<ProductSummaryResponse> convertToSummaryResponses(List<ProductSummaryRow> products, Long currentUserId) {
         if (products.isEmpty()) {
             return new ArrayList<>();
         }
         
-        // 批量获取相关数据
-        List<Long> productIds = products.stream().map(Product::getId).collect(Collectors.toList());
-        List<Long> sellerIds = products.stream().map(Product::getSellerId).distinct().collect(Collectors.toList());
-        
-        // 获取主图
-        Map<Long, String> mainImages = getMainImages(productIds);
+        // 批量获取相关数据（主图已随摘要查出）
+        List<Long> productIds = products.stream().map(ProductSummaryRow::getId).collect(Collectors.toList());
+        List<Long> sellerIds = products.stream().map(ProductSummaryRow::getSellerId).distinct().collect(Collectors.toList());
         
         // 获取卖家信息
         Map<Long, User> sellers = getSellers(sellerIds);
         
         // 获取标签
-        Map<Long, List<String>> productTags = getProductTags(productIds);
+        Map<Long, List<String>> productTags = productEnrichmentService.getProductTags(productIds);
         
         // 获取收藏状态
         Set<Long> favoritedProductIds = getCurrentUserFavorites(currentUserId, productIds);
         
         return products.stream()
-                .map(product -> convertToSummaryResponse(product, mainImages, sellers, 
+                .map(product -> convertToSummaryResponse(product, sellers,
                         productTags, favoritedProductIds, currentUserId))
                 .collect(Collectors.toList());
     }
     
-    private ProductSummaryResponse convertToSummaryResponse(Product product, 
-                                                          Map<Long, String> mainImages,
+    private ProductSummaryResponse convertToSummaryResponse(ProductSummaryRow product,
                                                           Map<Long, User> sellers,
                                                           Map<Long, List<String>> productTags,
                                                           Set<Long> favoritedProductIds,
@@ -499,7 +887,7 @@ public class ProductService {
         response.setTitle(product.getTitle());
         response.setPrice(product.getPrice());
         response.setOriginalPrice(product.getOriginalPrice());
-        response.setMainImage(mainImages.get(product.getId()));
+        response.setMainImage(product.getMainImageUrl());
         response.setCondition(product.getProductCondition().name());
         response.setConditionText(product.getProductCondition().getDescription());
         response.setPublishTime(product.getPublishedAt());
@@ -558,14 +946,16 @@ public class ProductService {
         return response;
     }
     
-    private ProductDetailResponse convertToDetailResponse(Product product, 
-                                                        List<ProductImage> images, 
-                                                        List<String> tags, 
-                                                        User seller, 
-                                                        Category category,
+    private ProductDetailResponse convertToDetailResponse(ProductDetailLoader.ProductDetailAggregate detail,
                                                         boolean isFavorited, 
-                                                        Long currentUserId,
-                                                        List<Product> relatedProducts) {
+                                                        Long currentUserId) {
+        Product product = detail.getProduct();
+        List<ProductImage> images = detail.getImages();
+        List<String> tags = detail.getTags();
+        User seller = detail.getSeller();
+        Category category = detail.getCategory();
+        List<ProductSummaryRow> relatedProducts = detail.getRelatedProducts();
+        
         ProductDetailResponse response = new ProductDetailResponse();
         
         // 基本信息
@@ -666,7 +1056,7 @@ public class ProductService {
         response.setStatus(product.getStatus().name());
         response.setTags(tags);
         
-        // 相关商品
+        // 相关商品（主图已随摘要查出）
         if (relatedProducts != null && !relatedProducts.isEmpty()) {
             List<ProductDetailResponse.RelatedProduct> related = relatedProducts.stream()
                     .map(p -> {
@@ -674,9 +1064,7 @@ public class ProductService {
                         rp.setId(p.getId().toString());
                         rp.setTitle(p.getTitle());
                         rp.setPrice(p.getPrice());
-                        // 获取主图
-                        productImageRepository.findMainImageUrl(p.getId())
-                                .ifPresent(rp::setMainImage);
+                        rp.setMainImage(p.getMainImageUrl());
                         return rp;
                     })
                     .collect(Collectors.toList());
@@ -687,38 +1075,13 @@ public class ProductService {
     }
     
     // 辅助方法
-    private Map<Long, String> getMainImages(List<Long> productIds) {
-        Map<Long, String> mainImages = new HashMap<>();
-        for (Long productId : productIds) {
-            productImageRepository.findMainImageUrl(productId)
-                    .ifPresent(url -> mainImages.put(productId, url));
-        }
-        return mainImages;
-    }
-    
     private Map<Long, User> getSellers(List<Long> sellerIds) {
         return userRepository.findAllById(sellerIds).stream()
                 .collect(Collectors.toMap(User::getId, user -> user));
     }
     
-    private Map<Long, List<String>> getProductTags(List<Long> productIds) {
-        Map<Long, List<String>> productTags = new HashMap<>();
-        for (Long productId : productIds) {
-            List<String> tags = productTagRepository.findTagNamesByProductId(productId);
-            productTags.put(productId, tags);
-        }
-        return productTags;
-    }
-    
     private Set<Long> getCurrentUserFavorites(Long currentUserId, List<Long> productIds) {
-        if (currentUserId == null) {
-            return new HashSet<>();
-        }
-        
-        List<Long> userFavorites = productFavoriteRepository.findProductIdsByUserId(currentUserId);
-        return productIds.stream()
-                .filter(userFavorites::contains)
-                .collect(Collectors.toSet());
+        return favoriteMembershipCache.filterFavorited(currentUserId, productIds);
     }
     
     private Object buildFiltersInfo(ProductQueryRequest request) {
@@ -767,11 +1130,30 @@ public class ProductService {
             return Collections.emptyList();
         }
         
-        // 批量查询商品，保持ID顺序
-        List<Product> products = productRepository.findAllById(productIds);
-        
         // 使用现有的转换方法
-        return convertToSummaryResponses(products, currentUserId);
+        return convertToSummaryResponses(findSummariesInOrder(productIds), currentUserId);
+    }
+    
+    /**
+     * 按ID批量查询在售商品摘要，保持ID顺序（IN查询不保证返回顺序）
+     * ID来自内存索引，可能滞后于其他节点的售出或删除，因此仍按状态过滤
+     */
+    private List<ProductSummaryRow> findSummariesInOrder(List<Long> productIds) {
+        if (productIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        
+        Specification<Product> byIds = (root, query, criteriaBuilder) -> criteriaBuilder.and(
+                root.get("id").in(productIds),
+                criteriaBuilder.isNull(root.get("deletedAt")),
+                criteriaBuilder.equal(root.get("status"), Product.ProductStatus.ACTIVE));
+        Map<Long, ProductSummaryRow> productMap = productRepository.findSummarySlice(byIds, Sort.unsorted(), productIds.size())
+                .stream()
+                .collect(Collectors.toMap(ProductSummaryRow::getId, product -> product));
+        return productIds.stream()
+                .map(productMap::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
     }
     
     /**
@@ -785,16 +1167,16 @@ public class ProductService {
         Sort sort = buildSort(request.getSort()); // 使用buildSort方法处理排序
         Pageable pageable = PageRequest.of(request.getPage() - 1, request.getSize(), sort);
         
-        // 根据状态筛选查询用户发布的商品
-        Page<Product> productPage;
+        // 根据状态筛选查询用户发布的商品（只查询摘要列）
+        Specification<Product> spec = (root, query, criteriaBuilder) -> criteriaBuilder.and(
+                criteriaBuilder.equal(root.get("sellerId"), userId),
+                criteriaBuilder.isNull(root.get("deletedAt")));
         if (request.getStatus() != null && !"ALL".equals(request.getStatus())) {
             // 按状态筛选
             Product.ProductStatus status = Product.ProductStatus.valueOf(request.getStatus());
-            productPage = productRepository.findBySellerIdAndStatusAndDeletedAtIsNull(userId, status, pageable);
-        } else {
-            // 查询所有状态的商品
-            productPage = productRepository.findBySellerIdAndDeletedAtIsNull(userId, pageable);
+            spec = spec.and((root, query, criteriaBuilder) -> criteriaBuilder.equal(root.get("status"), status));
         }
+        Page<ProductSummaryRow> productPage = productRepository.findSummaries(spec, pageable);
         
         // 转换为响应对象
         List<ProductSummaryResponse> products = convertToSummaryResponses(productPage.getContent(), userId);
@@ -814,4 +1196,54 @@ public class ProductService {
                         .build())
                 .build();
     }
-}
\ No newline at end of file
+    
+    /**
+     * 传入坐标时填充商品距离
+     */
+    private void fillDistances(List<ProductSummaryResponse> summaries, List<ProductSummaryRow> products,
+                               ProductQueryRequest request, ListingCandidates candidates) {
+        if (request.getLatitude() == null || request.getLongitude() == null) {
+            return;
+        }
+        
+        for (int i = 0; i < products.size(); i++) {
+            ProductSummaryRow product = products.get(i);
+            Double distance = candidates.nearby != null ? candidates.nearby.get(product.getId()) : null;
+            if (distance == null && product.getLatitude() != null && product.getLongitude() != null) {
+                distance = GeoUtils.distanceMeters(request.getLatitude().doubleValue(), request.getLongitude().doubleValue(),
+                        product.getLatitude().doubleValue(), product.getLongitude().doubleValue());
+            }
+            if (distance != null) {
+                summaries.get(i).setDistance(GeoUtils.formatDistance(distance));
+            }
+        }
+    }
+    
+    /**
+     * 内存索引解析出的候选商品
+     */
+    private static final class ListingCandidates {
+        // 候选商品ID，null表示不限制
+        private final List<Long> ids;
+        // 结果是否按候选顺序排列（相关度/距离/热度排序）
+        private final boolean ranked;
+        // 候选集是否已满足全部查询条件
+        private final boolean complete;
+        // 关键词是否已由倒排索引解析
+        private final boolean keywordResolved;
+        // 关键词、位置或热度候选是否因数量上限被截断
+        private final boolean truncated;
+        // 网格索引返回的商品距离（米），null表示未使用网格索引
+        private final Map<Long, Double> nearby;
+        
+        private ListingCandidates(List<Long> ids, boolean ranked, boolean complete,
+                                  boolean keywordResolved, boolean truncated, Map<Long, Double> nearby) {
+            this.ids = ids;
+            this.ranked = ranked;
+            this.complete = complete;
+            this.keywordResolved = keywordResolved;
+            this.truncated = truncated;
+            this.nearby = nearby;
+        }
+    }
+}
@@ -0,0 +1,589 @@
+package com.fliliy.secondhand.service;
+
+import com.fliliy.secondhand.dto.response.ProductSuggestionResponse;
+import com.fliliy.secondhand.entity.Category;
+import com.fliliy.secondhand.entity.Product;
+import com.fliliy.secondhand.event.ProductChangedEvent;
+import com.fliliy.secondhand.repository.ProductRepository;
+import com.fliliy.secondhand.repository.ProductTagRepository;
+import com.fliliy.secondhand.util.PinyinInitials;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 搜索联想词内存前缀树（仅收录在售商品）：候选词为商品标题、分类名和标签，权重为关联的在售商品数；
+ * 开启热门搜索词快照后，热门搜索词也作为候选词，权重为近期搜索次数
+ * 含汉字的候选词同时按拼音首字母收录，输入"pgsj"也能联想出"苹果手机"
+ * 每个节点缓存子树中权重最高的候选词，查询只需沿前缀走到节点
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ProductSuggestIndex {
+
+    public static final int MAX_SUGGESTIONS = 10;
+
+    private static final int LOAD_BATCH_SIZE = 500;
+    // 前缀树中键的最大长度，过长的标题只收录前缀
+    private static final int MAX_KEY_LENGTH = 32;
+
+    private final ProductRepository productRepository;
+    private final ProductTagRepository productTagRepository;
+    private final CategoryService categoryService;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private SuggestTrie trie = new SuggestTrie();
+
+    private volatile boolean ready = false;
+
+    // 全量重建期间到达的增量变更，重建完成后回放（值为null表示移除）
+    private List<Map.Entry<Long, ProductTerms>> pendingDuringRebuild;
+
+    // 热门搜索词 -> 搜索次数，重建后重新加入
+    private Map<String, Long> keywords = Collections.emptyMap();
+
+    /**
+     * 候选词类型，序号越小展示越靠前
+     */
+    public enum SuggestionType {
+        CATEGORY, TAG, KEYWORD, TITLE
+    }
+
+    /**
+     * 索引是否可用
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 按前缀联想：返回权重最高的候选词，索引未就绪或前缀为空时返回空列表
+     */
+    public List<ProductSuggestionResponse> suggest(String prefix, int limit) {
+        String key = normalizeKey(prefix);
+        if (key.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        lock.readLock().lock();
+        try {
+            return trie.lookup(key, Math.max(1, Math.min(limit, MAX_SUGGESTIONS)));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 商品发布/编辑/下架后增量更新（事务提交后执行）
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        Product product = event.getProduct();
+        boolean indexable = event.getType() != ProductChangedEvent.ChangeType.DELETED
+                && product.getDeletedAt() == null
+                && product.getStatus() == Product.ProductStatus.ACTIVE;
+
+        ProductTerms terms = null;
+        if (indexable) {
+            // 标签在写锁外查询
+            List<String> tags;
+            try {
+                tags = productTagRepository.findTagNamesByProductId(product.getId());
+            } catch (Exception e) {
+                log.warn("Load product tags for suggestion failed: productId={}, error={}",
+                        product.getId(), e.getMessage());
+                tags = Collections.emptyList();
+            }
+            terms = termsOf(product, tags);
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (pendingDuringRebuild != null) {
+                pendingDuringRebuild.add(new AbstractMap.SimpleEntry<>(product.getId(), terms));
+            }
+            apply(trie, product.getId(), terms);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 替换热门搜索词候选（由热门搜索词快照调用）
+     */
+    public void updateKeywords(Map<String, Long> keywords) {
+        lock.writeLock().lock();
+        try {
+            this.keywords = new LinkedHashMap<>(keywords);
+            trie.replaceKeywords(this.keywords);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 应用启动后加载
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        rebuild();
+    }
+
+    /**
+     * 定时全量重建，纠正其他节点写入、标签和分类变更造成的偏差，并回收已无商品的节点
+     */
+    @Scheduled(fixedDelayString = "${product.suggest.rebuild-interval-ms:600000}",
+               initialDelayString = "${product.suggest.rebuild-interval-ms:600000}")
+    public void scheduledRebuild() {
+        rebuild();
+    }
+
+    /**
+     * 全量重建：在新前缀树上构建完成后整体替换
+     */
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+
+        lock.writeLock().lock();
+        try {
+            pendingDuringRebuild = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        SuggestTrie rebuilt = new SuggestTrie();
+        rebuilt.bulkLoading = true;
+        try {
+            int page = 0;
+            Page<Product> batch;
+            do {
+                batch = productRepository.findByStatus(Product.ProductStatus.ACTIVE,
+                        PageRequest.of(page++, LOAD_BATCH_SIZE, Sort.by("id")));
+                Map<Long, List<String>> tags = loadTags(batch.getContent());
+                for (Product product : batch.getContent()) {
+                    rebuilt.add(product.getId(),
+                            termsOf(product, tags.getOrDefault(product.getId(), Collections.emptyList())));
+                }
+            } while (batch.hasNext());
+            rebuilt.finishBulkLoad();
+        } catch (Exception e) {
+            log.error("Rebuild product suggest index failed", e);
+            lock.writeLock().lock();
+            try {
+                pendingDuringRebuild = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            trie = rebuilt;
+            for (Map.Entry<Long, ProductTerms> change : pendingDuringRebuild) {
+                apply(trie, change.getKey(), change.getValue());
+            }
+            trie.replaceKeywords(keywords);
+            pendingDuringRebuild = null;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        log.info("Product suggest index rebuilt: products={}, entries={}, cost={}ms",
+                rebuilt.productEntries.size(), rebuilt.entryIds.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 前缀树的键：全角转半角、统一小写，只保留字母、数字和汉字
+     */
+    static String normalizeKey(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        StringBuilder key = new StringBuilder(Math.min(normalized.length(), MAX_KEY_LENGTH));
+        for (int i = 0; i < normalized.length() && key.length() < MAX_KEY_LENGTH; i++) {
+            char c = normalized.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                key.append(c);
+            }
+        }
+        return key.toString();
+    }
+
+    // 私有方法
+
+    private static void apply(SuggestTrie trie, Long productId, ProductTerms terms) {
+        if (terms != null) {
+            trie.add(productId, terms);
+        } else {
+            trie.remove(productId);
+        }
+    }
+
+    // 商品贡献的候选词：分类名、标签、标题（同一文本只计一次，先出现的类型优先）
+    private ProductTerms termsOf(Product product, List<String> tags) {
+        Map<String, SuggestionType> terms = new LinkedHashMap<>();
+        categoryService.getCategoryById(product.getCategoryId())
+                .map(Category::getName)
+                .ifPresent(name -> addTerm(terms, name, SuggestionType.CATEGORY));
+        for (String tag : tags) {
+            addTerm(terms, tag, SuggestionType.TAG);
+        }
+        addTerm(terms, product.getTitle(), SuggestionType.TITLE);
+        return new ProductTerms(terms);
+    }
+
+    private static void addTerm(Map<String, SuggestionType> terms, String text, SuggestionType type) {
+        if (text != null && !normalizeKey(text).isEmpty()) {
+            terms.putIfAbsent(text.trim(), type);
+        }
+    }
+
+    private Map<Long, List<String>> loadTags(List<Product> products) {
+        if (products.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        List<Long> productIds = new ArrayList<>(products.size());
+        for (Product product : products) {
+            productIds.add(product.getId());
+        }
+        Map<Long, List<String>> tags = new HashMap<>();
+        for (Object[] row : productTagRepository.findTagNamesByProductIds(productIds)) {
+            tags.computeIfAbsent((Long) row[0], k -> new ArrayList<>()).add((String) row[1]);
+        }
+        return tags;
+    }
+
+    private static final class ProductTerms {
+        private final String[] texts;
+        private final SuggestionType[] types;
+
+        private ProductTerms(Map<String, SuggestionType> terms) {
+            this.texts = terms.keySet().toArray(new String[0]);
+            this.types = terms.values().toArray(new SuggestionType[0]);
+        }
+    }
+
+    /**
+     * 前缀树：候选词存放在按编号索引的数组中，节点只保存编号
+     * 候选词权重降为0时从树中摘除并回收编号，空节点保留到下次全量重建
+     */
+    private static final class SuggestTrie {
+        private static final int[] NO_ENTRIES = new int[0];
+
+        private final Node root = new Node();
+        private final Map<String, Integer> entryIds = new HashMap<>();
+        private final Deque<Integer> freeIds = new ArrayDeque<>();
+        // 商品ID -> 贡献的候选词编号（用于更新和移除）
+        private final Map<Long, int[]> productEntries = new HashMap<>();
+
+        private String[] texts = new String[256];
+        private int[] weights = new int[256];
+        private byte[] types = new byte[256];
+        private int allocated = 0;
+
+        // 批量加载期间不逐个维护节点的候选词缓存，加载完成后统一计算
+        private boolean bulkLoading = false;
+
+        // 热门搜索词对应的候选词编号及其贡献的权重
+        private int[] keywordIds = NO_ENTRIES;
+        private int[] keywordWeights = NO_ENTRIES;
+
+        private List<ProductSuggestionResponse> lookup(String key, int limit) {
+            Node node = root;
+            for (int i = 0; i < key.length() && node != null; i++) {
+                node = node.child(key.charAt(i));
+            }
+            if (node == null) {
+                return Collections.emptyList();
+            }
+
+            List<ProductSuggestionResponse> result = new ArrayList<>(Math.min(limit, node.top.length));
+            for (int i = 0; i < node.top.length && i < limit; i++) {
+                int id = node.top[i];
+                result.add(new ProductSuggestionResponse(
+                        texts[id], SuggestionType.values()[types[id]].name(), weights[id]));
+            }
+            return result;
+        }
+
+        private void add(Long productId, ProductTerms terms) {
+            remove(productId);
+
+            int[] ids = new int[terms.texts.length];
+            for (int i = 0; i < ids.length; i++) {
+                int id = acquire(terms.texts[i], terms.types[i]);
+                weights[id]++;
+                ids[i] = id;
+                if (!bulkLoading) {
+                    refresh(texts[id]);
+                }
+            }
+            productEntries.put(productId, ids);
+        }
+
+        private void remove(Long productId) {
+            int[] ids = productEntries.remove(productId);
+            if (ids == null) {
+                return;
+            }
+
+            for (int id : ids) {
+                String text = texts[id];
+                if (--weights[id] == 0) {
+                    release(id);
+                }
+                if (!bulkLoading) {
+                    refresh(text);
+                }
+            }
+        }
+
+        // 先加入新的热门词再扣除旧的，两次都出现的词不会被摘除后重建
+        private void replaceKeywords(Map<String, Long> keywords) {
+            int[] oldIds = keywordIds;
+            int[] oldWeights = keywordWeights;
+
+            int[] ids = new int[keywords.size()];
+            int[] contributed = new int[keywords.size()];
+            int count = 0;
+            for (Map.Entry<String, Long> entry : keywords.entrySet()) {
+                if (normalizeKey(entry.getKey()).isEmpty()) {
+                    continue;
+                }
+                int id = acquire(entry.getKey(), SuggestionType.KEYWORD);
+                int weight = (int) Math.max(1, Math.min(entry.getValue(), Integer.MAX_VALUE / 2));
+                weights[id] += weight;
+                ids[count] = id;
+                contributed[count++] = weight;
+                refresh(texts[id]);
+            }
+            keywordIds = Arrays.copyOf(ids, count);
+            keywordWeights = Arrays.copyOf(contributed, count);
+
+            for (int i = 0; i < oldIds.length; i++) {
+                int id = oldIds[i];
+                String text = texts[id];
+                weights[id] -= oldWeights[i];
+                if (weights[id] == 0) {
+                    release(id);
+                }
+                refresh(text);
+            }
+        }
+
+        private void finishBulkLoad() {
+            for (Node child : root.children) {
+                recomputeSubtree(child);
+            }
+            bulkLoading = false;
+        }
+
+        // 取得候选词编号，不存在时分配并挂到树上
+        private int acquire(String text, SuggestionType type) {
+            Integer existing = entryIds.get(text);
+            if (existing != null) {
+                return existing;
+            }
+
+            int id = freeIds.isEmpty() ? allocate() : freeIds.pop();
+            texts[id] = text;
+            weights[id] = 0;
+            types[id] = (byte) type.ordinal();
+            entryIds.put(text, id);
+
+            for (String key : keysOf(text)) {
+                Node node = root;
+                for (int i = 0; i < key.length(); i++) {
+                    node = node.getOrAddChild(key.charAt(i));
+                }
+                node.entries = append(node.entries, id);
+            }
+            return id;
+        }
+
+        private void release(int id) {
+            for (String key : keysOf(texts[id])) {
+                Node node = find(key);
+                if (node != null) {
+                    node.entries = removeValue(node.entries, id);
+                }
+            }
+            entryIds.remove(texts[id]);
+            texts[id] = null;
+            freeIds.push(id);
+        }
+
+        private int allocate() {
+            if (allocated == texts.length) {
+                int capacity = texts.length * 2;
+                texts = Arrays.copyOf(texts, capacity);
+                weights = Arrays.copyOf(weights, capacity);
+                types = Arrays.copyOf(types, capacity);
+            }
+            return allocated++;
+        }
+
+        // 候选词权重变化后，自底向上重新计算路径上各节点的候选词缓存（根节点不参与查询，不计算）
+        private void refresh(String text) {
+            for (String key : keysOf(text)) {
+                Node[] path = new Node[key.length() + 1];
+                path[0] = root;
+                int depth = 0;
+                while (depth < key.length()) {
+                    Node next = path[depth].child(key.charAt(depth));
+                    if (next == null) {
+                        break;
+                    }
+                    path[++depth] = next;
+                }
+                for (int i = depth; i >= 1; i--) {
+                    recompute(path[i]);
+                }
+            }
+        }
+
+        private void recomputeSubtree(Node node) {
+            for (Node child : node.children) {
+                recomputeSubtree(child);
+            }
+            recompute(node);
+        }
+
+        // 节点的候选词缓存 = 本节点候选词与各子节点缓存合并后取前几个
+        private void recompute(Node node) {
+            int[] best = new int[MAX_SUGGESTIONS];
+            int size = 0;
+            for (int id : node.entries) {
+                size = offer(best, size, id);
+            }
+            for (Node child : node.children) {
+                for (int id : child.top) {
+                    size = offer(best, size, id);
+                }
+            }
+            node.top = size == 0 ? NO_ENTRIES : Arrays.copyOf(best, size);
+        }
+
+        private int offer(int[] best, int size, int id) {
+            for (int i = 0; i < size; i++) {
+                if (best[i] == id) {
+                    return size;
+                }
+            }
+            if (size == best.length && !ranksBefore(id, best[size - 1])) {
+                return size;
+            }
+            int at = size < best.length ? size : size - 1;
+            while (at > 0 && ranksBefore(id, best[at - 1])) {
+                best[at] = best[at - 1];
+                at--;
+            }
+            best[at] = id;
+            return Math.min(size + 1, best.length);
+        }
+
+        // 权重高的在前；权重相同时分类名、标签优先，再按文本长度
+        private boolean ranksBefore(int a, int b) {
+            if (weights[a] != weights[b]) {
+                return weights[a] > weights[b];
+            }
+            if (types[a] != types[b]) {
+                return types[a] < types[b];
+            }
+            if (texts[a].length() != texts[b].length()) {
+                return texts[a].length() < texts[b].length();
+            }
+            return texts[a].compareTo(texts[b]) < 0;
+        }
+
+        private Node find(String key) {
+            Node node = root;
+            for (int i = 0; i < key.length() && node != null; i++) {
+                node = node.child(key.charAt(i));
+            }
+            return node;
+        }
+
+        // 候选词在树中的键：规范化文本，含汉字时再加一个拼音首字母键
+        private static List<String> keysOf(String text) {
+            String key = normalizeKey(text);
+            String initials = PinyinInitials.convert(key);
+            return initials.equals(key) ? Collections.singletonList(key) : Arrays.asList(key, initials);
+        }
+
+        private static int[] append(int[] values, int value) {
+            int[] result = Arrays.copyOf(values, values.length + 1);
+            result[values.length] = value;
+            return result;
+        }
+
+        private static int[] removeValue(int[] values, int value) {
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] == value) {
+                    int[] result = new int[values.length - 1];
+                    System.arraycopy(values, 0, result, 0, i);
+                    System.arraycopy(values, i + 1, result, i, values.length - i - 1);
+                    return result;
+                }
+            }
+            return values;
+        }
+    }
+
+    /**
+     * 前缀树节点：子节点按字符排序存放在数组中，二分查找
+     */
+    private static final class Node {
+        private static final char[] NO_KEYS = new char[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        private char[] keys = NO_KEYS;
+        private Node[] children = NO_CHILDREN;
+        // 以该节点结尾的候选词编号
+        private int[] entries = SuggestTrie.NO_ENTRIES;
+        // 子树中排名最前的候选词编号
+        private int[] top = SuggestTrie.NO_ENTRIES;
+
+        private Node child(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            return index >= 0 ? children[index] : null;
+        }
+
+        private Node getOrAddChild(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            if (index >= 0) {
+                return children[index];
+            }
+
+            int at = -index - 1;
+            Node node = new Node();
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, at);
+            System.arraycopy(children, 0, newChildren, 0, at);
+            newKeys[at] = c;
+            newChildren[at] = node;
+            System.arraycopy(keys, at, newKeys, at + 1, keys.length - at);
+            System.arraycopy(children, at, newChildren, at + 1, children.length - at);
+            keys = newKeys;
+            children = newChildren;
+            return node;
+        }
+    }
+}
@@ -0,0 +1,484 @@
+package com.fliliy.secondhand.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fliliy.secondhand.dto.response.ChatMessageResponse;
+import com.fliliy.secondhand.entity.ChatRoom;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 活跃聊天室最近消息缓存：每个聊天室保存最近N条消息响应的环形缓冲，聊天室按LRU淘汰
+ * 首次读取第一页时从数据库填充，之后发送、撤回、已读/送达状态变更在事务提交后原地更新，
+ * 第一页聊天记录从缓冲返回，只查询聊天室最新序号和消息状态版本校验缓冲未过期；消息序号不连续时丢弃该聊天室的缓冲
+ * 其他节点处理的撤回、已读/送达不改变序号，但会递增聊天室的消息状态版本，本节点缓冲随之失效；
+ * 本节点的状态变更带上变更后的版本，版本不连续（中间有其他节点的变更）时丢弃缓冲
+ * 缓存的响应与当前用户无关，isFromMe在读取时按用户设置
+ * 开启Redis镜像后新消息在锁外追加到Redis列表（LPUSH+LTRIM），已读/送达状态不写入镜像，
+ * 从镜像加载时校验序号连续且与聊天室一致，并按聊天室当前水位重新计算状态
+ */
+@Component
+@Slf4j
+public class RecentChatMessageCache {
+
+    private static final String REDIS_KEY_PREFIX = "chat:recent:";
+    private static final int STRIPES = 64;
+
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final int roomSize;
+    private final boolean redisEnabled;
+    private final long redisTtlMillis;
+
+    private final Map<Long, RoomBuffer> rooms;
+    // 按聊天室分段的变更计数，加载期间同一分段发生变更时不写入缓存，避免覆盖为旧数据
+    private final long[] modificationCounts = new long[STRIPES];
+
+    public RecentChatMessageCache(StringRedisTemplate redisTemplate,
+                                  ObjectMapper objectMapper,
+                                  @Value("${chat.recent-cache.room-size:50}") int roomSize,
+                                  @Value("${chat.recent-cache.max-rooms:2000}") int maxRooms,
+                                  @Value("${chat.recent-cache.redis.enabled:false}") boolean redisEnabled,
+                                  @Value("${chat.recent-cache.redis.ttl-ms:86400000}") long redisTtlMillis) {
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.roomSize = roomSize;
+        this.redisEnabled = redisEnabled;
+        this.redisTtlMillis = redisTtlMillis;
+        this.rooms = new LinkedHashMap<Long, RoomBuffer>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, RoomBuffer> eldest) {
+                return size() > maxRooms;
+            }
+        };
+    }
+
+    /**
+     * 每页数量是否能由缓冲提供
+     */
+    public boolean canServe(int size) {
+        return size > 0 && size <= roomSize;
+    }
+
+    /**
+     * 缓冲容量（填充时查询的消息数）
+     */
+    public int getRoomSize() {
+        return roomSize;
+    }
+
+    /**
+     * 聊天室是否已缓存
+     */
+    public synchronized boolean isCached(Long chatRoomId) {
+        return rooms.containsKey(chatRoomId);
+    }
+
+    /**
+     * 获取聊天室最新一页消息（按序号倒序）；未缓存、用户不是参与者或缓冲的最新序号、消息状态版本与聊天室不一致时返回null
+     */
+    public Slice<ChatMessageResponse> getLatest(Long chatRoomId, Long userId, int size, Long messageSeq, Long stateVersion) {
+        if (!canServe(size)) {
+            return null;
+        }
+
+        synchronized (this) {
+            RoomBuffer buffer = rooms.get(chatRoomId);
+            if (buffer == null || !buffer.isParticipant(userId)) {
+                return null;
+            }
+            // 其他节点发送的消息、尚未执行提交回调的消息不在缓冲中，改从数据库读取并重新填充
+            if (messageSeq == null || buffer.lastSeq != messageSeq) {
+                return null;
+            }
+            // 其他节点撤回消息或推进水位后版本不一致，状态已过期
+            if (stateVersion == null || buffer.version != stateVersion) {
+                return null;
+            }
+            return toSlice(buffer.latest(size), userId, size, buffer.count > size || buffer.hasOlder);
+        }
+    }
+
+    /**
+     * 开始从数据库加载前调用，返回加载标记
+     */
+    public synchronized long beginLoad(Long chatRoomId) {
+        return modificationCounts[stripe(chatRoomId)];
+    }
+
+    /**
+     * 从Redis镜像加载缓冲；镜像不存在或最新序号与聊天室不一致时返回null
+     */
+    public Slice<ChatMessageResponse> loadFromMirror(ChatRoom chatRoom, long loadToken, Long userId, int size) {
+        if (!redisEnabled || !canServe(size)) {
+            return null;
+        }
+
+        List<ChatMessageResponse> newestFirst = new ArrayList<>();
+        try {
+            List<String> values = redisTemplate.opsForList().range(redisKey(chatRoom.getId()), 0, roomSize - 1);
+            if (values == null || values.isEmpty()) {
+                return null;
+            }
+            for (String value : values) {
+                newestFirst.add(objectMapper.readValue(value, ChatMessageResponse.class));
+            }
+        } catch (Exception e) {
+            log.warn("Load recent chat messages from redis failed: chatRoomId={}, error={}", chatRoom.getId(), e.getMessage());
+            return null;
+        }
+
+        Long newestSeq = newestFirst.get(0).getSeq();
+        if (newestSeq == null || !newestSeq.equals(chatRoom.getMessageSeq())) {
+            return null;
+        }
+        // 镜像在锁外追加，并发写入可能乱序，序号必须从新到旧连续
+        for (int i = 1; i < newestFirst.size(); i++) {
+            Long seq = newestFirst.get(i).getSeq();
+            if (seq == null || seq != newestSeq - i) {
+                return null;
+            }
+        }
+        for (ChatMessageResponse response : newestFirst) {
+            applyWatermarks(response, chatRoom);
+        }
+        // 镜像不记录更早的消息是否存在，缓冲已满时按存在处理
+        boolean hasOlder = newestFirst.size() >= roomSize;
+        if (!fill(chatRoom, loadToken, newestFirst, hasOlder, false)) {
+            return null;
+        }
+        return toSlice(newestFirst.subList(0, Math.min(size, newestFirst.size())), userId, size,
+                newestFirst.size() > size || hasOlder);
+    }
+
+    /**
+     * 用数据库查询的最新消息（按序号倒序，最多N条）填充缓冲；加载期间发生过变更时放弃，返回是否已缓存
+     */
+    public boolean fill(ChatRoom chatRoom, long loadToken, List<ChatMessageResponse> newestFirst, boolean hasOlder) {
+        return fill(chatRoom, loadToken, newestFirst, hasOlder, true);
+    }
+
+    private boolean fill(ChatRoom chatRoom, long loadToken, List<ChatMessageResponse> newestFirst, boolean hasOlder,
+                         boolean writeMirror) {
+        if (newestFirst.size() > roomSize) {
+            return false;
+        }
+        for (ChatMessageResponse response : newestFirst) {
+            if (response.getSeq() == null) {
+                return false;
+            }
+        }
+
+        RoomBuffer buffer = new RoomBuffer(chatRoom.getBuyerId(), chatRoom.getSellerId(), roomSize, hasOlder);
+        buffer.version = chatRoom.getStateVersion() != null ? chatRoom.getStateVersion() : 0L;
+        for (int i = newestFirst.size() - 1; i >= 0; i--) {
+            buffer.add(copyOf(newestFirst.get(i)));
+        }
+        // 合并提交模式下序号在发送事务外分配，回滚的发送会留下空号：以聊天室已分配的序号为准，下一条消息可直接追加
+        if (chatRoom.getMessageSeq() != null && chatRoom.getMessageSeq() > buffer.lastSeq) {
+            buffer.lastSeq = chatRoom.getMessageSeq();
+        }
+
+        synchronized (this) {
+            if (modificationCounts[stripe(chatRoom.getId())] != loadToken) {
+                return false;
+            }
+            rooms.put(chatRoom.getId(), buffer);
+        }
+        if (writeMirror) {
+            writeMirror(chatRoom.getId(), newestFirst);
+        }
+        return true;
+    }
+
+    /**
+     * 新消息提交后追加到缓冲
+     */
+    public void append(Long chatRoomId, ChatMessageResponse response) {
+        ChatMessageResponse cached = copyOf(response);
+        cached.setIsFromMe(null);
+        // 缓冲中的实例会被状态变更修改，镜像写入使用单独的副本
+        ChatMessageResponse mirrored = copyOf(cached);
+        afterCommit(() -> {
+            boolean added = modify(chatRoomId, buffer -> {
+                if (cached.getSeq() == null || cached.getSeq() != buffer.lastSeq + 1) {
+                    throw new IllegalStateException("message seq gap");
+                }
+                buffer.add(cached);
+            });
+            if (added) {
+                pushMirror(chatRoomId, mirrored);
+            } else {
+                deleteMirror(chatRoomId);
+            }
+        });
+    }
+
+    /**
+     * 已读水位推进后，对方发送的序号不超过水位的消息标记为已读；stateVersion为推进后聊天室的消息状态版本
+     */
+    public void markRead(Long chatRoomId, Long readerId, Long readSeq, Long stateVersion) {
+        afterCommit(() -> modify(chatRoomId, buffer -> {
+            buffer.advanceVersion(stateVersion);
+            buffer.forEach(response -> {
+                if (isReceivedUpTo(response, readerId, readSeq)) {
+                    response.setStatus("READ");
+                }
+            });
+        }));
+    }
+
+    /**
+     * 已送达水位推进后，对方发送的序号不超过水位且未读的消息标记为已送达；stateVersion为推进后聊天室的消息状态版本
+     */
+    public void markDelivered(Long chatRoomId, Long recipientId, Long deliveredSeq, Long stateVersion) {
+        afterCommit(() -> modify(chatRoomId, buffer -> {
+            buffer.advanceVersion(stateVersion);
+            buffer.forEach(response -> {
+                if (isReceivedUpTo(response, recipientId, deliveredSeq) && "SENT".equals(response.getStatus())) {
+                    response.setStatus("DELIVERED");
+                }
+            });
+        }));
+    }
+
+    /**
+     * 撤回消息；stateVersion为撤回后聊天室的消息状态版本
+     */
+    public void markRecalled(Long chatRoomId, Long messageId, Long stateVersion) {
+        LocalDateTime recalledAt = LocalDateTime.now();
+        afterCommit(() -> {
+            modify(chatRoomId, buffer -> {
+                buffer.advanceVersion(stateVersion);
+                buffer.forEach(response -> {
+                    if (messageId.equals(response.getId())) {
+                        response.setIsRecalled(true);
+                        response.setRecalledAt(recalledAt);
+                        response.setContent("[消息已撤回]");
+                    }
+                });
+            });
+            // 撤回很少发生，直接删除镜像，下次从数据库加载时重写
+            deleteMirror(chatRoomId);
+        });
+    }
+
+    /**
+     * 移除聊天室缓冲
+     */
+    public void evict(Long chatRoomId) {
+        afterCommit(() -> {
+            synchronized (this) {
+                modificationCounts[stripe(chatRoomId)]++;
+                rooms.remove(chatRoomId);
+            }
+            deleteMirror(chatRoomId);
+        });
+    }
+
+    // 变更缓冲，返回变更后是否仍缓存；变更失败（如序号不连续）时丢弃该聊天室的缓冲，下次读取重新加载
+    private synchronized boolean modify(Long chatRoomId, Consumer<RoomBuffer> change) {
+        modificationCounts[stripe(chatRoomId)]++;
+
+        RoomBuffer buffer = rooms.get(chatRoomId);
+        if (buffer == null) {
+            return false;
+        }
+
+        try {
+            change.accept(buffer);
+            return true;
+        } catch (IllegalStateException e) {
+            log.debug("Recent chat messages dropped: chatRoomId={}, reason={}", chatRoomId, e.getMessage());
+            rooms.remove(chatRoomId);
+            return false;
+        }
+    }
+
+    // 填充后整体重写镜像（按序号倒序）
+    private void writeMirror(Long chatRoomId, List<ChatMessageResponse> newestFirst) {
+        if (!redisEnabled) {
+            return;
+        }
+
+        List<String> values = new ArrayList<>(newestFirst.size());
+        try {
+            for (ChatMessageResponse response : newestFirst) {
+                values.add(objectMapper.writeValueAsString(response));
+            }
+            String key = redisKey(chatRoomId);
+            redisTemplate.delete(key);
+            if (!values.isEmpty()) {
+                redisTemplate.opsForList().rightPushAll(key, values);
+                redisTemplate.expire(key, redisTtlMillis, TimeUnit.MILLISECONDS);
+            }
+        } catch (Exception e) {
+            log.warn("Mirror recent chat messages to redis failed: chatRoomId={}, error={}", chatRoomId, e.getMessage());
+            deleteMirror(chatRoomId);
+        }
+    }
+
+    // 新消息追加到镜像头部并截断到缓冲容量
+    private void pushMirror(Long chatRoomId, ChatMessageResponse response) {
+        if (!redisEnabled) {
+            return;
+        }
+
+        try {
+            String key = redisKey(chatRoomId);
+            redisTemplate.opsForList().leftPush(key, objectMapper.writeValueAsString(response));
+            redisTemplate.opsForList().trim(key, 0, roomSize - 1);
+            redisTemplate.expire(key, redisTtlMillis, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            log.warn("Mirror recent chat messages to redis failed: chatRoomId={}, error={}", chatRoomId, e.getMessage());
+            deleteMirror(chatRoomId);
+        }
+    }
+
+    private void deleteMirror(Long chatRoomId) {
+        if (!redisEnabled) {
+            return;
+        }
+        try {
+            redisTemplate.delete(redisKey(chatRoomId));
+        } catch (Exception e) {
+            log.warn("Delete recent chat messages mirror failed: chatRoomId={}, error={}", chatRoomId, e.getMessage());
+        }
+    }
+
+    // 与ChatRoom.getMessageStatus一致：系统消息和发送失败的消息不随水位变化
+    private static boolean isReceivedUpTo(ChatMessageResponse response, Long recipientId, Long seq) {
+        return response.getSenderId() != null && !response.getSenderId().equals(recipientId)
+                && response.getSeq() != null && seq != null && response.getSeq() <= seq
+                && !"FAILED".equals(response.getStatus()) && !"SENDING".equals(response.getStatus());
+    }
+
+    // 按聊天室当前的已读/已送达水位设置对方接收的消息状态
+    private static void applyWatermarks(ChatMessageResponse response, ChatRoom chatRoom) {
+        Long recipientId = response.getSenderId() != null ? chatRoom.getOtherParticipant(response.getSenderId()) : null;
+        if (recipientId == null) {
+            return;
+        }
+        if (isReceivedUpTo(response, recipientId, chatRoom.getReadSeqOf(recipientId))) {
+            response.setStatus("READ");
+        } else if (isReceivedUpTo(response, recipientId, chatRoom.getDeliveredSeqOf(recipientId))) {
+            response.setStatus("DELIVERED");
+        }
+    }
+
+    private static Slice<ChatMessageResponse> toSlice(List<ChatMessageResponse> latest, Long userId, int size, boolean hasMore) {
+        List<ChatMessageResponse> content = new ArrayList<>(latest.size());
+        for (ChatMessageResponse response : latest) {
+            ChatMessageResponse copy = copyOf(response);
+            copy.setIsFromMe(response.getSenderId() != null && response.getSenderId().equals(userId));
+            content.add(copy);
+        }
+        return new SliceImpl<>(content, PageRequest.of(0, size), hasMore);
+    }
+
+    private static ChatMessageResponse copyOf(ChatMessageResponse source) {
+        ChatMessageResponse copy = new ChatMessageResponse();
+        BeanUtils.copyProperties(source, copy);
+        return copy;
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private static int stripe(Long chatRoomId) {
+        return (int) (chatRoomId ^ (chatRoomId >>> 32)) & (STRIPES - 1);
+    }
+
+    private static String redisKey(Long chatRoomId) {
+        return REDIS_KEY_PREFIX + chatRoomId;
+    }
+
+    /**
+     * 单个聊天室的环形缓冲，按序号从旧到新保存
+     */
+    private static final class RoomBuffer {
+        private final Long buyerId;
+        private final Long sellerId;
+        private final ChatMessageResponse[] ring;
+        private int head;
+        private int count;
+        private long lastSeq;
+        // 缓冲反映到的聊天室消息状态版本
+        private long version;
+        // 缓冲之前是否还有更早的消息
+        private boolean hasOlder;
+
+        private RoomBuffer(Long buyerId, Long sellerId, int capacity, boolean hasOlder) {
+            this.buyerId = buyerId;
+            this.sellerId = sellerId;
+            this.ring = new ChatMessageResponse[capacity];
+            this.hasOlder = hasOlder;
+        }
+
+        private boolean isParticipant(Long userId) {
+            return userId != null && (userId.equals(buyerId) || userId.equals(sellerId));
+        }
+
+        // 追加最新消息，已满时覆盖最旧的一条
+        private void add(ChatMessageResponse response) {
+            if (count == ring.length) {
+                ring[head] = response;
+                head = (head + 1) % ring.length;
+                hasOlder = true;
+            } else {
+                ring[(head + count) % ring.length] = response;
+                count++;
+            }
+            lastSeq = response.getSeq();
+        }
+
+        // 本节点的状态变更：版本未变（水位未推进）或恰好递增1时应用，否则中间有其他节点的变更
+        private void advanceVersion(Long stateVersion) {
+            if (stateVersion == null || (stateVersion != version && stateVersion != version + 1)) {
+                throw new IllegalStateException("state version gap");
+            }
+            version = stateVersion;
+        }
+
+        // 最新的size条，按序号倒序
+        private List<ChatMessageResponse> latest(int size) {
+            int n = Math.min(size, count);
+            List<ChatMessageResponse> result = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                result.add(ring[(head + count - 1 - i) % ring.length]);
+            }
+            return result;
+        }
+
+        private void forEach(Consumer<ChatMessageResponse> action) {
+            for (int i = 0; i < count; i++) {
+                action.accept(ring[(head + i) % ring.length]);
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.fliliy.secondhand.service;
+
+import com.fliliy.secondhand.event.FavoriteToggledEvent;
+import com.fliliy.secondhand.event.ProductChangedEvent;
+import com.fliliy.secondhand.event.ProductDiscussedEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * 资源版本号：商品、未读数等数据变更提交后递增，接口据此生成ETag
+ * 商品列表使用全局商品版本号；商品详情组合单个商品、所属分类（相关商品）和卖家资料的版本号，其他分类商品的变更不影响详情ETag
+ * 版本号保存在Redis中由各节点共享；Redis不可用时返回null，接口按无ETag处理
+ * 浏览量写回不递增商品版本号，条件请求命中时客户端看到的浏览量可能略有滞后
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ResourceVersionService {
+
+    public static final String PRODUCTS = "products";
+
+    private static final String KEY_PREFIX = "resource_version:";
+
+    private final StringRedisTemplate redisTemplate;
+
+    /**
+     * 单个商品的版本号名称
+     */
+    public static String product(Long productId) {
+        return "product:" + productId;
+    }
+
+    /**
+     * 分类的版本号名称：分类下商品变更时递增
+     */
+    public static String category(Integer categoryId) {
+        return "category:" + categoryId;
+    }
+    
+    /**
+     * 用户资料（用户名、头像等）的版本号名称
+     */
+    public static String userProfile(Long userId) {
+        return "user_profile:" + userId;
+    }
+    
+    /**
+     * 用户未读消息数的版本号名称
+     */
+    public static String unreadCount(Long userId) {
+        return "unread_count:" + userId;
+    }
+
+    /**
+     * 获取当前版本号，Redis不可用时返回null
+     */
+    public String getVersion(String resource) {
+        String key = KEY_PREFIX + resource;
+        try {
+            String version = redisTemplate.opsForValue().get(key);
+            if (version == null) {
+                initialize(key);
+                version = redisTemplate.opsForValue().get(key);
+            }
+            return version;
+        } catch (RuntimeException e) {
+            log.warn("Read resource version failed: resource={}, error={}", resource, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 获取多个资源的组合版本号，任一版本号不可用时返回null
+     */
+    public String getCombinedVersion(String... resources) {
+        StringBuilder combined = new StringBuilder();
+        for (String resource : resources) {
+            String version = getVersion(resource);
+            if (version == null) {
+                return null;
+            }
+            combined.append(combined.length() > 0 ? ":" : "").append(version);
+        }
+        return combined.toString();
+    }
+    
+    /**
+     * 递增版本号；处于事务中时在提交后才递增，避免提交前读到旧数据的请求拿到新版本号
+     */
+    public void increment(String... resources) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    incrementNow(resources);
+                }
+            });
+        } else {
+            incrementNow(resources);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        incrementNow(PRODUCTS, product(event.getProduct().getId()), category(event.getProduct().getCategoryId()));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFavoriteToggled(FavoriteToggledEvent event) {
+        incrementNow(PRODUCTS, product(event.getProductId()));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductDiscussed(ProductDiscussedEvent event) {
+        incrementNow(PRODUCTS, product(event.getProductId()));
+    }
+
+    private void incrementNow(String... resources) {
+        for (String resource : resources) {
+            String key = KEY_PREFIX + resource;
+            try {
+                initialize(key);
+                redisTemplate.opsForValue().increment(key);
+            } catch (RuntimeException e) {
+                log.warn("Increment resource version failed: resource={}, error={}", resource, e.getMessage());
+            }
+        }
+    }
+
+    // 以当前时间作为初始值，Redis数据丢失后重新生成的版本号不会与之前发出的重复
+    private void initialize(String key) {
+        redisTemplate.opsForValue().setIfAbsent(key, String.valueOf(System.currentTimeMillis()));
+    }
+}
@@ -0,0 +1,261 @@
+package com.fliliy.secondhand.service;
+
+import cn.hutool.core.lang.hash.MurmurHash;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * 热门搜索词统计：Count-Min草图估算各搜索词的次数，另外维护估算次数最高的前K个词
+ * 全部在内存中完成，查询时不写数据库；按固定间隔将所有计数减半，近期搜索占主要权重
+ * 开启快照后定时将前K个词写入Redis（重启后恢复），并作为联想词提供给搜索联想
+ * 对外只展示估算次数达到阈值且不含屏蔽词的搜索词，屏蔽词不参与统计
+ */
+@Component
+@Slf4j
+public class SearchKeywordTracker {
+
+    private static final String SNAPSHOT_KEY = "search:trending_keywords";
+    private static final int MAX_KEYWORD_LENGTH = 30;
+    private static final int SKETCH_DEPTH = 4;
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final StringRedisTemplate redisTemplate;
+    private final ProductSuggestIndex productSuggestIndex;
+    private final int topK;
+    private final long minCount;
+    private final List<String> blocklist = new ArrayList<>();
+    private final boolean snapshotEnabled;
+
+    private final CountMinSketch sketch;
+    // 搜索词 -> 估算次数，最多topK个
+    private final Map<String, Long> heavyHitters = new HashMap<>();
+
+    public SearchKeywordTracker(StringRedisTemplate redisTemplate,
+                                ProductSuggestIndex productSuggestIndex,
+                                @Value("${search.trending.sketch-width:4096}") int sketchWidth,
+                                @Value("${search.trending.top-k:100}") int topK,
+                                @Value("${search.trending.min-count:5}") long minCount,
+                                @Value("${search.trending.blocklist:}") String blocklist,
+                                @Value("${search.trending.snapshot.enabled:false}") boolean snapshotEnabled) {
+        this.redisTemplate = redisTemplate;
+        this.productSuggestIndex = productSuggestIndex;
+        this.topK = topK;
+        this.minCount = minCount;
+        for (String word : blocklist.split(",")) {
+            String normalized = normalize(word);
+            if (!normalized.isEmpty()) {
+                this.blocklist.add(normalized);
+            }
+        }
+        this.snapshotEnabled = snapshotEnabled;
+        this.sketch = new CountMinSketch(SKETCH_DEPTH, sketchWidth);
+    }
+
+    /**
+     * 记录一次搜索
+     */
+    public void record(String keyword) {
+        String normalized = normalize(keyword);
+        if (normalized.isEmpty() || isBlocked(normalized)) {
+            return;
+        }
+
+        synchronized (this) {
+            offer(normalized, sketch.add(normalized, 1));
+        }
+    }
+
+    /**
+     * 热门搜索词，按估算次数降序；估算次数低于阈值的不返回
+     */
+    public List<Map.Entry<String, Long>> getTrending(int limit) {
+        List<Map.Entry<String, Long>> entries;
+        synchronized (this) {
+            entries = new ArrayList<>(heavyHitters.size());
+            for (Map.Entry<String, Long> entry : heavyHitters.entrySet()) {
+                if (entry.getValue() < minCount) {
+                    continue;
+                }
+                entries.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue()));
+            }
+        }
+        entries.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+        return entries.subList(0, Math.min(Math.max(limit, 0), entries.size()));
+    }
+
+    /**
+     * 计数衰减：所有计数减半，减为0的热门词移除
+     */
+    @Scheduled(fixedDelayString = "${search.trending.decay-interval-ms:3600000}",
+               initialDelayString = "${search.trending.decay-interval-ms:3600000}")
+    public synchronized void decay() {
+        sketch.halve();
+        heavyHitters.replaceAll((keyword, count) -> count / 2);
+        heavyHitters.values().removeIf(count -> count == 0);
+    }
+
+    /**
+     * 定时快照：写入Redis并更新搜索联想中的热门词
+     */
+    @Scheduled(fixedDelayString = "${search.trending.snapshot.interval-ms:300000}",
+               initialDelayString = "${search.trending.snapshot.interval-ms:300000}")
+    public void snapshot() {
+        if (!snapshotEnabled) {
+            return;
+        }
+
+        List<Map.Entry<String, Long>> trending = getTrending(topK);
+        Map<String, Long> keywords = new LinkedHashMap<>();
+        Set<ZSetOperations.TypedTuple<String>> tuples = new HashSet<>();
+        for (Map.Entry<String, Long> entry : trending) {
+            keywords.put(entry.getKey(), entry.getValue());
+            tuples.add(new DefaultTypedTuple<>(entry.getKey(), entry.getValue().doubleValue()));
+        }
+        productSuggestIndex.updateKeywords(keywords);
+
+        try {
+            redisTemplate.delete(SNAPSHOT_KEY);
+            if (!tuples.isEmpty()) {
+                redisTemplate.opsForZSet().add(SNAPSHOT_KEY, tuples);
+            }
+            log.debug("Trending keywords snapshot saved: keywords={}", tuples.size());
+        } catch (Exception e) {
+            log.warn("Save trending keywords snapshot failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 启动时从快照恢复
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!snapshotEnabled) {
+            return;
+        }
+
+        Set<ZSetOperations.TypedTuple<String>> tuples;
+        try {
+            tuples = redisTemplate.opsForZSet().reverseRangeWithScores(SNAPSHOT_KEY, 0, topK - 1);
+        } catch (Exception e) {
+            log.warn("Load trending keywords snapshot failed: {}", e.getMessage());
+            return;
+        }
+        if (tuples == null || tuples.isEmpty()) {
+            return;
+        }
+
+        Map<String, Long> keywords = new LinkedHashMap<>();
+        synchronized (this) {
+            for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+                if (tuple.getValue() == null || tuple.getScore() == null || isBlocked(tuple.getValue())) {
+                    continue;
+                }
+                long count = tuple.getScore().longValue();
+                offer(tuple.getValue(), sketch.add(tuple.getValue(), count));
+                keywords.put(tuple.getValue(), count);
+            }
+        }
+        productSuggestIndex.updateKeywords(keywords);
+        log.info("Trending keywords restored from snapshot: keywords={}", keywords.size());
+    }
+
+    // 搜索词归一化：全角转半角、统一小写、合并空白
+    static String normalize(String keyword) {
+        if (keyword == null) {
+            return "";
+        }
+        String normalized = WHITESPACE.matcher(Normalizer.normalize(keyword, Normalizer.Form.NFKC)
+                .toLowerCase(Locale.ROOT).trim()).replaceAll(" ");
+        return normalized.length() > MAX_KEYWORD_LENGTH ? normalized.substring(0, MAX_KEYWORD_LENGTH) : normalized;
+    }
+
+    // 包含任一屏蔽词（归一化后比较）
+    private boolean isBlocked(String normalized) {
+        for (String word : blocklist) {
+            if (normalized.contains(word)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 更新前K个词（调用方需持有锁）：已在其中则更新次数，否则超过当前最小值时替换
+    private void offer(String keyword, long estimate) {
+        if (heavyHitters.containsKey(keyword) || heavyHitters.size() < topK) {
+            heavyHitters.put(keyword, estimate);
+            return;
+        }
+
+        Map.Entry<String, Long> min = null;
+        for (Map.Entry<String, Long> entry : heavyHitters.entrySet()) {
+            if (min == null || entry.getValue() < min.getValue()) {
+                min = entry;
+            }
+        }
+        if (min != null && estimate > min.getValue()) {
+            heavyHitters.remove(min.getKey());
+            heavyHitters.put(keyword, estimate);
+        }
+    }
+
+    /**
+     * Count-Min草图（保守更新：只增加等于当前最小值的计数器，减少高估）
+     */
+    private static final class CountMinSketch {
+        private static final int[] ROW_SEEDS = {0x9747B28C, 0x5BD1E995, 0x1B873593, 0xCC9E2D51};
+
+        private final long[][] counters;
+        private final int mask;
+
+        private CountMinSketch(int depth, int width) {
+            // 宽度取2的幂，用位运算取模
+            int size = Integer.highestOneBit(Math.max(width, 16) - 1) << 1;
+            this.counters = new long[depth][size];
+            this.mask = size - 1;
+        }
+
+        // 增加计数并返回新的估算值
+        private long add(String item, long count) {
+            int[] indexes = new int[counters.length];
+            long estimate = Long.MAX_VALUE;
+            byte[] bytes = item.getBytes(StandardCharsets.UTF_8);
+            for (int row = 0; row < counters.length; row++) {
+                indexes[row] = index(bytes, row);
+                estimate = Math.min(estimate, counters[row][indexes[row]]);
+            }
+
+            long updated = estimate + count;
+            for (int row = 0; row < counters.length; row++) {
+                if (counters[row][indexes[row]] < updated) {
+                    counters[row][indexes[row]] = updated;
+                }
+            }
+            return updated;
+        }
+
+        private void halve() {
+            for (long[] row : counters) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] >>= 1;
+                }
+            }
+        }
+
+        // 每行使用不同种子的MurmurHash3，各行的下标相互独立
+        private int index(byte[] bytes, int row) {
+            return MurmurHash.hash32(bytes, 0, bytes.length, ROW_SEEDS[row]) & mask;
+        }
+    }
+}
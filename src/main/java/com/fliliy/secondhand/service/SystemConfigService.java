@@ -89,6 +89,20 @@ public class SystemConfigService {
         return Boolean.parseBoolean(value);
     }
     
+    /**
+     * 保存配置值（不存在时新建）
+     */
+    public void saveConfigValue(String key, String value, String description) {
+        SystemConfig config = systemConfigRepository.findByConfigKey(key).orElseGet(() -> {
+            SystemConfig created = new SystemConfig();
+            created.setConfigKey(key);
+            created.setDescription(description);
+            return created;
+        });
+        config.setConfigValue(value);
+        systemConfigRepository.save(config);
+    }
+    
     private Integer getIntConfig(List<SystemConfig> configs, String key, Integer defaultValue) {
         return configs.stream()
                 .filter(config -> config.getConfigKey().equals(key))
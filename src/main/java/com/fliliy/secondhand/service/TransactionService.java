@@ -3,11 +3,13 @@ package com.fliliy.secondhand.service;
 import com.fliliy.secondhand.dto.request.*;
 import com.fliliy.secondhand.dto.response.*;
 import com.fliliy.secondhand.entity.*;
+import com.fliliy.secondhand.event.ProductChangedEvent;
 import com.fliliy.secondhand.repository.*;
 import com.fliliy.secondhand.util.IdGenerator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -44,6 +46,12 @@ public class TransactionService {
     @Autowired
     private ProductImageRepository productImageRepository;
     
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    
+    @Autowired
+    private CategoryProductCounter categoryProductCounter;
+    
     /**
      * 发起咨询/交易意向
      */
@@ -228,8 +236,13 @@ public class TransactionService {
         // 更新商品状态为已售出
         Product product = productRepository.findById(transaction.getProductId())
             .orElseThrow(() -> new RuntimeException("商品不存在"));
+        boolean wasActive = product.getStatus() == Product.ProductStatus.ACTIVE;
         product.setStatus(Product.ProductStatus.SOLD);
         productRepository.save(product);
+        if (wasActive) {
+            categoryProductCounter.adjust(product.getCategoryId(), -1);
+        }
+        eventPublisher.publishEvent(new ProductChangedEvent(ProductChangedEvent.ChangeType.STATUS_CHANGED, product));
         
         // 发送交易完成消息
         try {
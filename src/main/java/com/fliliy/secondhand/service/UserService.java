@@ -34,6 +34,8 @@ public class UserService {
     private final ProductService productService;
     private final UserRepository userRepository;
     private final ProductRepository productRepository;
+    private final UserSummaryCache userSummaryCache;
+    private final ResourceVersionService resourceVersionService;
     
     /**
      * 获取用户收藏的商品列表
@@ -186,6 +188,9 @@ public class UserService {
         }
         
         userRepository.save(user);
+        userSummaryCache.evict(userId);
+        // 商品详情中的卖家信息随之变化
+        resourceVersionService.increment(ResourceVersionService.userProfile(userId));
         log.info("User profile updated successfully: userId={}", userId);
     }
     
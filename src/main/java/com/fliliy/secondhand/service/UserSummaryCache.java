@@ -0,0 +1,123 @@
+package com.fliliy.secondhand.service;
+
+import com.fliliy.secondhand.repository.UserRepository;
+import com.fliliy.secondhand.repository.UserSummaryRow;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 用户摘要缓存（用户ID -> 用户名、头像）：批量查询未缓存的用户，一次IN查询，短TTL过期
+ * 用于消息发送者、聊天对象等只需要用户名和头像的场景；用户修改资料后失效
+ */
+@Component
+public class UserSummaryCache {
+
+    private final UserRepository userRepository;
+    private final long ttlMillis;
+    private final int maxEntries;
+
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    // 每次失效递增；查询期间发生过失效的结果不写入缓存
+    private final AtomicLong generation = new AtomicLong();
+
+    public UserSummaryCache(UserRepository userRepository,
+                            @Value("${user.summary-cache.ttl-ms:300000}") long ttlMillis,
+                            @Value("${user.summary-cache.max-entries:10000}") int maxEntries) {
+        this.userRepository = userRepository;
+        this.ttlMillis = ttlMillis;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * 获取单个用户摘要，用户不存在时返回null
+     */
+    public UserSummaryRow getSummary(Long userId) {
+        if (userId == null) {
+            return null;
+        }
+        return getSummaries(Collections.singleton(userId)).get(userId);
+    }
+
+    /**
+     * 批量获取用户摘要，不存在的用户不在结果中
+     */
+    public Map<Long, UserSummaryRow> getSummaries(Collection<Long> userIds) {
+        Map<Long, UserSummaryRow> result = new HashMap<>();
+        Set<Long> missing = new HashSet<>();
+        long now = System.currentTimeMillis();
+        for (Long userId : userIds) {
+            if (userId == null) {
+                continue;
+            }
+            Entry entry = entries.get(userId);
+            if (entry != null && entry.expiresAt >= now) {
+                result.put(userId, entry.summary);
+            } else {
+                missing.add(userId);
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        long startGeneration = generation.get();
+        List<UserSummaryRow> loaded = userRepository.findSummariesByIds(missing);
+        boolean cacheable = ttlMillis > 0 && generation.get() == startGeneration;
+        long expiresAt = System.currentTimeMillis() + ttlMillis;
+        for (UserSummaryRow summary : loaded) {
+            result.put(summary.getId(), summary);
+            if (cacheable) {
+                store(summary.getId(), new Entry(summary, expiresAt));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 用户资料变更后失效（事务中调用时在提交后失效）
+     */
+    public void evict(Long userId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evictNow(userId);
+                }
+            });
+        } else {
+            evictNow(userId);
+        }
+    }
+
+    private void evictNow(Long userId) {
+        generation.incrementAndGet();
+        entries.remove(userId);
+    }
+
+    private void store(Long userId, Entry entry) {
+        if (entries.size() >= maxEntries && !entries.containsKey(userId)) {
+            long now = System.currentTimeMillis();
+            entries.values().removeIf(existing -> existing.expiresAt < now);
+            if (entries.size() >= maxEntries) {
+                return;
+            }
+        }
+        entries.put(userId, entry);
+    }
+
+    private static final class Entry {
+        private final UserSummaryRow summary;
+        private final long expiresAt;
+
+        private Entry(UserSummaryRow summary, long expiresAt) {
+            this.summary = summary;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
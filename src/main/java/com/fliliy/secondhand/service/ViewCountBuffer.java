@@ -0,0 +1,98 @@
+package com.fliliy.secondhand.service;
+
+import com.fliliy.secondhand.event.ViewCountsFlushedEvent;
+import com.fliliy.secondhand.repository.ProductRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 商品浏览次数写缓冲：浏览时只在内存计数，定时批量写回数据库，避免热门商品行锁竞争
+ * 计数在写回提交后才扣减，期间展示的"已持久化+待写回"次数不会回落
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ViewCountBuffer {
+    
+    private static final int FLUSH_BATCH_SIZE = 500;
+    
+    private final ProductRepository productRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    
+    // 计数的增减和归零移除都在按键加锁的原子操作中完成，移除时不会丢失并发的浏览
+    private final ConcurrentHashMap<Long, Long> pending = new ConcurrentHashMap<>();
+    
+    /**
+     * 记录一次浏览
+     */
+    public void increment(Long productId) {
+        pending.merge(productId, 1L, Long::sum);
+    }
+    
+    /**
+     * 获取尚未写回数据库的浏览次数
+     */
+    public long getPending(Long productId) {
+        Long count = pending.get(productId);
+        return count != null ? count : 0;
+    }
+    
+    /**
+     * 定时写回数据库
+     */
+    @Scheduled(fixedDelayString = "${product.view-count.flush-interval-ms:5000}")
+    public void flush() {
+        Map<Long, Long> batch = new HashMap<>();
+        
+        for (Map.Entry<Long, Long> entry : pending.entrySet()) {
+            batch.put(entry.getKey(), entry.getValue());
+            if (batch.size() >= FLUSH_BATCH_SIZE) {
+                writeBatch(batch);
+                batch = new HashMap<>();
+            }
+        }
+        
+        writeBatch(batch);
+    }
+    
+    /**
+     * 应用关闭前写回剩余计数
+     */
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+    
+    private void writeBatch(Map<Long, Long> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        
+        try {
+            productRepository.incrementViewCounts(batch);
+        } catch (Exception e) {
+            // 写入失败时计数仍在缓冲中，下次重试
+            log.error("Flush view counts failed: products={}", batch.size(), e);
+            return;
+        }
+        
+        // 写回已提交：先失效缓存中的已持久化次数，再扣减已写回的部分，期间无新浏览（归零）的商品移出缓冲
+        log.debug("Flushed view counts: products={}", batch.size());
+        try {
+            eventPublisher.publishEvent(new ViewCountsFlushedEvent(new HashMap<>(batch)));
+        } finally {
+            for (Map.Entry<Long, Long> entry : batch.entrySet()) {
+                long flushed = entry.getValue();
+                pending.computeIfPresent(entry.getKey(), (id, count) -> count > flushed ? count - flushed : null);
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.fliliy.secondhand.util;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
+
+import javax.servlet.http.HttpServletRequest;
+import java.nio.charset.StandardCharsets;
+import java.util.Enumeration;
+
+/**
+ * ETag条件请求：由版本号等组成部分生成弱ETag，If-None-Match命中时返回304
+ */
+public final class ETagUtils {
+
+    // 允许客户端保存响应，但每次使用前都要带ETag向服务端确认
+    private static final CacheControl REVALIDATE = CacheControl.noCache().cachePrivate();
+
+    private ETagUtils() {
+    }
+
+    /**
+     * 由版本号和区分响应的其他部分（请求参数、当前用户等）生成弱ETag；版本号为null时返回null，表示不使用ETag
+     */
+    public static String weak(String version, Object... parts) {
+        if (version == null) {
+            return null;
+        }
+        StringBuilder source = new StringBuilder(version);
+        for (Object part : parts) {
+            source.append('|').append(part);
+        }
+        return "W/\"" + DigestUtils.md5DigestAsHex(source.toString().getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
+
+    /**
+     * 请求的If-None-Match是否包含该ETag（弱比较）
+     */
+    public static boolean isNotModified(HttpServletRequest request, String etag) {
+        if (etag == null) {
+            return false;
+        }
+        String opaqueTag = opaqueTag(etag);
+        Enumeration<String> headers = request.getHeaders(HttpHeaders.IF_NONE_MATCH);
+        while (headers != null && headers.hasMoreElements()) {
+            for (String candidate : headers.nextElement().split(",")) {
+                String tag = candidate.trim();
+                if ("*".equals(tag) || opaqueTag.equals(opaqueTag(tag))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 304响应
+     */
+    public static <T> ResponseEntity<T> notModified(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(REVALIDATE).build();
+    }
+
+    /**
+     * 带ETag的200响应；etag为null时按普通响应返回
+     */
+    public static ResponseEntity.BodyBuilder ok(String etag) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok();
+        return etag != null ? builder.eTag(etag).cacheControl(REVALIDATE) : builder;
+    }
+
+    private static String opaqueTag(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+}
@@ -0,0 +1,37 @@
+package com.fliliy.secondhand.util;
+
+/**
+ * 地理距离计算
+ */
+public final class GeoUtils {
+
+    private static final double EARTH_RADIUS_METERS = 6371000.0;
+
+    // 每纬度对应的距离（米）
+    public static final double METERS_PER_DEGREE = Math.PI * EARTH_RADIUS_METERS / 180.0;
+
+    private GeoUtils() {
+    }
+
+    /**
+     * 两点间球面距离（米，Haversine公式）
+     */
+    public static double distanceMeters(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1.0, Math.sqrt(a)));
+    }
+
+    /**
+     * 距离展示文案，如"850m"、"1.2km"
+     */
+    public static String formatDistance(double meters) {
+        if (meters < 1000) {
+            return Math.max(1, Math.round(meters)) + "m";
+        }
+        return String.format("%.1fkm", meters / 1000);
+    }
+}
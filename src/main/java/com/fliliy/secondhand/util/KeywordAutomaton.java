@@ -0,0 +1,129 @@
+package com.fliliy.secondhand.util;
+
+import java.text.Normalizer;
+import java.util.*;
+
+/**
+ * 多关键词匹配自动机（Aho-Corasick）：一次扫描文本即可得到命中的全部分类
+ * 关键词按NFKC归一化并转小写后匹配，不区分全角半角和大小写
+ */
+public final class KeywordAutomaton {
+    
+    private static final int MAX_LABELS = 32;
+    
+    private final String[] labels;
+    // 每个状态的转移表
+    private final List<Map<Character, Integer>> transitions;
+    // 失配指针
+    private final int[] failure;
+    // 到达该状态时命中的分类（位掩码，已合并失配链上的输出）
+    private final int[] output;
+    
+    private KeywordAutomaton(String[] labels, List<Map<Character, Integer>> transitions, int[] failure, int[] output) {
+        this.labels = labels;
+        this.transitions = transitions;
+        this.failure = failure;
+        this.output = output;
+    }
+    
+    /**
+     * 根据"分类 -> 关键词列表"构建自动机，最多支持32个分类
+     */
+    public static KeywordAutomaton build(Map<String, ? extends Collection<String>> dictionary) {
+        if (dictionary.size() > MAX_LABELS) {
+            throw new IllegalArgumentException("Too many keyword labels: " + dictionary.size());
+        }
+        
+        String[] labels = dictionary.keySet().toArray(new String[0]);
+        List<Map<Character, Integer>> transitions = new ArrayList<>();
+        List<Integer> outputs = new ArrayList<>();
+        transitions.add(new HashMap<>());
+        outputs.add(0);
+        
+        // 构建关键词前缀树
+        for (int label = 0; label < labels.length; label++) {
+            for (String keyword : dictionary.get(labels[label])) {
+                String normalized = normalize(keyword);
+                if (normalized.isEmpty()) {
+                    continue;
+                }
+                
+                int state = 0;
+                for (int i = 0; i < normalized.length(); i++) {
+                    Integer next = transitions.get(state).get(normalized.charAt(i));
+                    if (next == null) {
+                        next = transitions.size();
+                        transitions.add(new HashMap<>());
+                        outputs.add(0);
+                        transitions.get(state).put(normalized.charAt(i), next);
+                    }
+                    state = next;
+                }
+                outputs.set(state, outputs.get(state) | (1 << label));
+            }
+        }
+        
+        // 广度优先计算失配指针
+        int[] failure = new int[transitions.size()];
+        int[] output = outputs.stream().mapToInt(Integer::intValue).toArray();
+        Deque<Integer> queue = new ArrayDeque<>(transitions.get(0).values());
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (Map.Entry<Character, Integer> edge : transitions.get(state).entrySet()) {
+                int child = edge.getValue();
+                int fallback = failure[state];
+                while (fallback != 0 && !transitions.get(fallback).containsKey(edge.getKey())) {
+                    fallback = failure[fallback];
+                }
+                Integer target = transitions.get(fallback).get(edge.getKey());
+                failure[child] = target != null && target != child ? target : 0;
+                output[child] |= output[failure[child]];
+                queue.add(child);
+            }
+        }
+        
+        return new KeywordAutomaton(labels, transitions, failure, output);
+    }
+    
+    /**
+     * 返回文本命中的分类
+     */
+    public Set<String> match(String text) {
+        int matched = matchMask(text);
+        if (matched == 0) {
+            return Collections.emptySet();
+        }
+        
+        Set<String> result = new LinkedHashSet<>();
+        for (int label = 0; label < labels.length; label++) {
+            if ((matched & (1 << label)) != 0) {
+                result.add(labels[label]);
+            }
+        }
+        return result;
+    }
+    
+    private int matchMask(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        
+        String normalized = normalize(text);
+        int all = labels.length == MAX_LABELS ? -1 : (1 << labels.length) - 1;
+        int matched = 0;
+        int state = 0;
+        for (int i = 0; i < normalized.length() && matched != all; i++) {
+            char c = normalized.charAt(i);
+            while (state != 0 && !transitions.get(state).containsKey(c)) {
+                state = failure[state];
+            }
+            state = transitions.get(state).getOrDefault(c, 0);
+            matched |= output[state];
+        }
+        return matched;
+    }
+    
+    private static String normalize(String text) {
+        return text == null ? "" : Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT).trim();
+    }
+}
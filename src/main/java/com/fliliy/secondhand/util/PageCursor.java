@@ -0,0 +1,85 @@
+package com.fliliy.secondhand.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * 游标分页的游标编解码
+ * 游标对客户端不透明，内容为"排序方式|排序字段值|最后一条记录ID"的Base64编码
+ */
+public final class PageCursor {
+
+    private static final String SEPARATOR = "|";
+
+    private final String sortKey;
+    private final String value;
+    private final Long lastId;
+
+    private PageCursor(String sortKey, String value, Long lastId) {
+        this.sortKey = sortKey;
+        this.value = value;
+        this.lastId = lastId;
+    }
+
+    public String getSortKey() {
+        return sortKey;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public Long getLastId() {
+        return lastId;
+    }
+
+    /**
+     * 按位置分页（相关度/距离/热度排序）时的偏移量，必须为非负整数
+     */
+    public int getOffset() {
+        try {
+            int offset = Integer.parseInt(value);
+            if (offset >= 0) {
+                return offset;
+            }
+        } catch (NumberFormatException e) {
+            // 按无效游标处理
+        }
+        throw new RuntimeException("分页游标无效");
+    }
+
+    /**
+     * 生成游标
+     */
+    public static String encode(String sortKey, String value, Long lastId) {
+        String raw = sortKey + SEPARATOR + value + SEPARATOR + lastId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析游标，空游标表示第一页返回null；游标与当前排序方式不一致时视为无效
+     */
+    public static PageCursor decode(String cursor, String expectedSortKey) {
+        if (cursor == null || cursor.trim().isEmpty()) {
+            return null;
+        }
+
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor.trim()), StandardCharsets.UTF_8);
+            int first = raw.indexOf(SEPARATOR);
+            int last = raw.lastIndexOf(SEPARATOR);
+            if (first < 0 || first == last) {
+                throw new RuntimeException("分页游标无效");
+            }
+
+            String sortKey = raw.substring(0, first);
+            if (!sortKey.equals(expectedSortKey)) {
+                throw new RuntimeException("分页游标与排序方式不匹配");
+            }
+
+            return new PageCursor(sortKey, raw.substring(first + 1, last), Long.valueOf(raw.substring(last + 1)));
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("分页游标无效");
+        }
+    }
+}
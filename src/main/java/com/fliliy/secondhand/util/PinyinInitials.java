@@ -0,0 +1,62 @@
+package com.fliliy.secondhand.util;
+
+import java.nio.charset.Charset;
+
+/**
+ * 汉字拼音首字母
+ * GB2312一级汉字（3755个常用字）按拼音排序，由编码区间即可确定首字母，无需拼音字典；
+ * 二级汉字、繁体字等不在区间内的字符原样保留
+ */
+public final class PinyinInitials {
+
+    private static final Charset GB2312 = Charset.forName("GB2312");
+
+    // 各首字母在GB2312一级汉字中的起始编码（无i、u、v开头的拼音）
+    private static final int[] BOUNDARIES = {
+            0xB0A1, 0xB0C5, 0xB2C1, 0xB4EE, 0xB6EA, 0xB7A2, 0xB8C1, 0xB9FE, 0xBBF7,
+            0xBFA6, 0xC0AC, 0xC2E8, 0xC4C3, 0xC5B6, 0xC5BE, 0xC6DA, 0xC8BB, 0xC8F6,
+            0xCBFA, 0xCDDA, 0xCEF4, 0xD1B9, 0xD4D1};
+    private static final char[] INITIALS = {
+            'a', 'b', 'c', 'd', 'e', 'f', 'g', 'h', 'j',
+            'k', 'l', 'm', 'n', 'o', 'p', 'q', 'r', 's',
+            't', 'w', 'x', 'y', 'z'};
+    private static final int LEVEL1_END = 0xD7F9;
+
+    private PinyinInitials() {
+    }
+
+    /**
+     * 将文本中的汉字替换为拼音首字母，如"苹果手机"转为"pgsj"，其他字符不变
+     */
+    public static String convert(String text) {
+        StringBuilder result = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            char initial = initialOf(c);
+            result.append(initial != 0 ? initial : c);
+        }
+        return result.toString();
+    }
+
+    /**
+     * 汉字的拼音首字母，非一级汉字返回0
+     */
+    public static char initialOf(char c) {
+        if (c < 0x4E00 || c > 0x9FFF) {
+            return 0;
+        }
+        byte[] bytes = String.valueOf(c).getBytes(GB2312);
+        if (bytes.length != 2) {
+            return 0;
+        }
+        int code = (bytes[0] & 0xFF) << 8 | (bytes[1] & 0xFF);
+        if (code < BOUNDARIES[0] || code > LEVEL1_END) {
+            return 0;
+        }
+        int index = BOUNDARIES.length - 1;
+        while (code < BOUNDARIES[index]) {
+            index--;
+        }
+        return INITIALS[index];
+    }
+}
@@ -0,0 +1,118 @@
+package com.fliliy.secondhand.util;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 商品搜索分词器
+ * 中日韩文字按二元组（bigram）切分，拉丁字母/数字按单词切分
+ */
+public final class SearchTokenizer {
+
+    private SearchTokenizer() {
+    }
+
+    /**
+     * 索引分词：中文连续片段输出二元组和单字，保证单字查询也能命中
+     */
+    public static List<String> tokenizeForIndex(String text) {
+        List<String> tokens = new ArrayList<>();
+        tokenize(text, tokens, true);
+        return tokens;
+    }
+
+    /**
+     * 查询分词：中文连续片段只输出二元组（单字片段输出单字），结果去重
+     */
+    public static Set<String> tokenizeForQuery(String text) {
+        List<String> tokens = new ArrayList<>();
+        tokenize(text, tokens, false);
+        return new LinkedHashSet<>(tokens);
+    }
+
+    private static void tokenize(String text, List<String> tokens, boolean indexMode) {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+
+        // 全角转半角、统一小写
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+
+        StringBuilder cjkRun = new StringBuilder();
+        StringBuilder wordRun = new StringBuilder();
+
+        int i = 0;
+        while (i < normalized.length()) {
+            int codePoint = normalized.codePointAt(i);
+            i += Character.charCount(codePoint);
+
+            if (isCjk(codePoint)) {
+                flushWord(wordRun, tokens);
+                cjkRun.appendCodePoint(codePoint);
+            } else if (Character.isLetterOrDigit(codePoint)) {
+                flushCjk(cjkRun, tokens, indexMode);
+                wordRun.appendCodePoint(codePoint);
+            } else {
+                flushCjk(cjkRun, tokens, indexMode);
+                flushWord(wordRun, tokens);
+            }
+        }
+
+        flushCjk(cjkRun, tokens, indexMode);
+        flushWord(wordRun, tokens);
+    }
+
+    private static void flushCjk(StringBuilder run, List<String> tokens, boolean indexMode) {
+        if (run.length() == 0) {
+            return;
+        }
+
+        int[] codePoints = run.codePoints().toArray();
+        if (codePoints.length == 1) {
+            tokens.add(new String(codePoints, 0, 1));
+        } else {
+            for (int i = 0; i < codePoints.length; i++) {
+                if (indexMode) {
+                    tokens.add(new String(codePoints, i, 1));
+                }
+                if (i + 1 < codePoints.length) {
+                    tokens.add(new String(codePoints, i, 2));
+                }
+            }
+        }
+        run.setLength(0);
+    }
+
+    private static void flushWord(StringBuilder run, List<String> tokens) {
+        if (run.length() == 0) {
+            return;
+        }
+
+        String word = run.toString();
+        tokens.add(word);
+
+        // 字母数字混合词（如iphone13）额外拆分，便于按"iphone 13"检索
+        int start = 0;
+        for (int i = 1; i <= word.length(); i++) {
+            if (i == word.length() || Character.isDigit(word.charAt(i)) != Character.isDigit(word.charAt(i - 1))) {
+                if (start > 0 || i < word.length()) {
+                    tokens.add(word.substring(start, i));
+                }
+                start = i;
+            }
+        }
+        run.setLength(0);
+    }
+
+    private static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+}
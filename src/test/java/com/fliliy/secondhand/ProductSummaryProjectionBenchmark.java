@@ -0,0 +1,234 @@
+package com.fliliy.secondhand;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 商品列表摘要查询对比（H2内存库）：
+ * 加载完整商品实体再批量查主图 vs 只查摘要列再批量查主图
+ * 输出每页读取的数据量和平均耗时
+ */
+public class ProductSummaryProjectionBenchmark {
+    
+    private static final int PRODUCT_COUNT = 5000;
+    private static final int IMAGES_PER_PRODUCT = 3;
+    private static final int DESCRIPTION_LENGTH = 1500;
+    private static final int PAGE_SIZE = 20;
+    private static final int WARMUP_PAGES = 200;
+    private static final int MEASURED_PAGES = 1000;
+    
+    // 与findAll(spec, pageable)加载完整实体时的查询一致
+    private static final String FULL_ENTITY_SQL =
+            "SELECT * FROM products WHERE deleted_at IS NULL AND status = 'ACTIVE' "
+            + "ORDER BY published_at DESC LIMIT ? OFFSET ?";
+    
+    // 改为摘要查询前，加载完整实体后按当前页商品ID批量查主图的查询
+    private static final String MAIN_IMAGE_SQL =
+            "SELECT product_id, image_url FROM product_images WHERE sort_order = 0 AND product_id IN (%s)";
+    
+    // 与ProductRepositoryCustomImpl.findMainImages的批量查询一致
+    private static final String SUMMARY_MAIN_IMAGE_SQL =
+            "SELECT product_id, MIN(image_url) FROM product_images WHERE product_id IN (%s) AND sort_order = 0 "
+            + "GROUP BY product_id";
+    
+    // 与ProductRepositoryCustom.findSummaries生成的查询一致
+    private static final String SUMMARY_SQL =
+            "SELECT p.id, p.title, p.price, p.original_price, p.product_condition, p.status, p.published_at, "
+            + "p.sold_at, p.has_warranty, p.warranty_months, p.province, p.city, p.district, p.latitude, "
+            + "p.longitude, p.seller_id, p.view_count, p.favorite_count, p.chat_count "
+            + "FROM products p WHERE p.deleted_at IS NULL AND p.status = 'ACTIVE' "
+            + "ORDER BY p.published_at DESC LIMIT ? OFFSET ?";
+    
+    public static void main(String[] args) throws Exception {
+        try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:benchmark;MODE=MySQL")) {
+            createSchema(connection);
+            insertProducts(connection);
+            
+            Random random = new Random(42);
+            int maxOffset = PRODUCT_COUNT - PAGE_SIZE;
+            
+            for (int i = 0; i < WARMUP_PAGES; i++) {
+                int offset = random.nextInt(maxOffset);
+                loadFullEntities(connection, offset);
+                loadSummaries(connection, offset);
+            }
+            
+            long fullBytes = 0;
+            long fullNanos = 0;
+            long summaryBytes = 0;
+            long summaryNanos = 0;
+            for (int i = 0; i < MEASURED_PAGES; i++) {
+                int offset = random.nextInt(maxOffset);
+                
+                long start = System.nanoTime();
+                fullBytes += loadFullEntities(connection, offset);
+                fullNanos += System.nanoTime() - start;
+                
+                start = System.nanoTime();
+                summaryBytes += loadSummaries(connection, offset);
+                summaryNanos += System.nanoTime() - start;
+            }
+            
+            System.out.println("商品数: " + PRODUCT_COUNT + ", 每页: " + PAGE_SIZE + ", 测量页数: " + MEASURED_PAGES);
+            System.out.printf("完整实体 + 主图批量查询: %d 字节/页, %.3f ms/页, 2 条语句%n",
+                    fullBytes / MEASURED_PAGES, fullNanos / 1e6 / MEASURED_PAGES);
+            System.out.printf("摘要列 + 主图批量查询:   %d 字节/页, %.3f ms/页, 2 条语句%n",
+                    summaryBytes / MEASURED_PAGES, summaryNanos / 1e6 / MEASURED_PAGES);
+            System.out.printf("每页节省: %d 字节 (%.1f%%), %.3f ms%n",
+                    (fullBytes - summaryBytes) / MEASURED_PAGES,
+                    100.0 * (fullBytes - summaryBytes) / fullBytes,
+                    (fullNanos - summaryNanos) / 1e6 / MEASURED_PAGES);
+        }
+    }
+    
+    private static long loadFullEntities(Connection connection, int offset) throws Exception {
+        return loadPage(connection, FULL_ENTITY_SQL, MAIN_IMAGE_SQL, offset);
+    }
+    
+    private static long loadSummaries(Connection connection, int offset) throws Exception {
+        return loadPage(connection, SUMMARY_SQL, SUMMARY_MAIN_IMAGE_SQL, offset);
+    }
+    
+    private static long loadPage(Connection connection, String pageSql, String mainImageSql, int offset)
+            throws Exception {
+        long bytes = 0;
+        List<Long> productIds = new ArrayList<>(PAGE_SIZE);
+        try (PreparedStatement statement = connection.prepareStatement(pageSql)) {
+            statement.setInt(1, PAGE_SIZE);
+            statement.setInt(2, offset);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    productIds.add(resultSet.getLong("id"));
+                    bytes += rowBytes(resultSet);
+                }
+            }
+        }
+        
+        StringBuilder placeholders = new StringBuilder();
+        for (int i = 0; i < productIds.size(); i++) {
+            placeholders.append(i == 0 ? "?" : ", ?");
+        }
+        try (PreparedStatement statement = connection.prepareStatement(
+                String.format(mainImageSql, placeholders))) {
+            for (int i = 0; i < productIds.size(); i++) {
+                statement.setLong(i + 1, productIds.get(i));
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    bytes += rowBytes(resultSet);
+                }
+            }
+        }
+        return bytes;
+    }
+    
+    // 按列值估算传输字节数：字符串按UTF-8长度，其他类型按定长
+    private static long rowBytes(ResultSet resultSet) throws Exception {
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        long bytes = 0;
+        for (int column = 1; column <= metaData.getColumnCount(); column++) {
+            Object value = resultSet.getObject(column);
+            if (value instanceof String) {
+                bytes += ((String) value).getBytes(StandardCharsets.UTF_8).length;
+            } else if (value != null) {
+                bytes += 8;
+            }
+        }
+        return bytes;
+    }
+    
+    private static void createSchema(Connection connection) throws Exception {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE products ("
+                    + "id BIGINT PRIMARY KEY, seller_id BIGINT NOT NULL, category_id INT NOT NULL, "
+                    + "title VARCHAR(200) NOT NULL, description TEXT, price DECIMAL(10,2) NOT NULL, "
+                    + "original_price DECIMAL(10,2), product_condition VARCHAR(20) NOT NULL, "
+                    + "usage_type VARCHAR(10), usage_value INT, usage_unit VARCHAR(10), "
+                    + "has_warranty BOOLEAN DEFAULT FALSE, warranty_type VARCHAR(10) DEFAULT 'NONE', "
+                    + "warranty_months INT DEFAULT 0, warranty_description VARCHAR(200), "
+                    + "province VARCHAR(50), city VARCHAR(50), district VARCHAR(50), detail_address VARCHAR(200), "
+                    + "longitude DECIMAL(11,8), latitude DECIMAL(10,8), status VARCHAR(10) DEFAULT 'ACTIVE', "
+                    + "view_count INT DEFAULT 0, favorite_count INT DEFAULT 0, chat_count INT DEFAULT 0, "
+                    + "inquiry_count INT DEFAULT 0, is_brand BOOLEAN DEFAULT FALSE, is_accessory BOOLEAN DEFAULT FALSE, "
+                    + "is_popular BOOLEAN DEFAULT FALSE, is_promoted BOOLEAN DEFAULT FALSE, "
+                    + "promoted_at TIMESTAMP, promoted_expires_at TIMESTAMP, published_at TIMESTAMP, "
+                    + "sold_at TIMESTAMP, created_at TIMESTAMP, updated_at TIMESTAMP, deleted_at TIMESTAMP)");
+            statement.execute("CREATE INDEX idx_status_published ON products (status, published_at)");
+            statement.execute("CREATE TABLE product_images ("
+                    + "id BIGINT AUTO_INCREMENT PRIMARY KEY, product_id BIGINT NOT NULL, "
+                    + "image_url VARCHAR(500) NOT NULL, thumbnail_url VARCHAR(500), sort_order INT DEFAULT 0, "
+                    + "image_size INT, image_width INT, image_height INT, upload_time TIMESTAMP)");
+            statement.execute("CREATE UNIQUE INDEX uk_product_sort ON product_images (product_id, sort_order)");
+        }
+    }
+    
+    private static void insertProducts(Connection connection) throws Exception {
+        StringBuilder description = new StringBuilder();
+        while (description.length() < DESCRIPTION_LENGTH) {
+            description.append("九成新，功能完好，无拆修，配件齐全，支持当面验货。");
+        }
+        LocalDateTime now = LocalDateTime.now();
+        Random random = new Random(7);
+        
+        connection.setAutoCommit(false);
+        try (PreparedStatement product = connection.prepareStatement("INSERT INTO products ("
+                + "id, seller_id, category_id, title, description, price, original_price, product_condition, "
+                + "usage_type, usage_value, usage_unit, has_warranty, warranty_type, warranty_months, "
+                + "warranty_description, province, city, district, detail_address, longitude, latitude, status, "
+                + "view_count, favorite_count, chat_count, published_at, created_at, updated_at) "
+                + "VALUES (?, ?, ?, ?, ?, ?, ?, 'LIKE_NEW', 'TIME', 6, 'MONTH', TRUE, 'OFFICIAL', 10, ?, "
+                + "'北京市', '北京市', '朝阳区', ?, ?, ?, 'ACTIVE', ?, ?, ?, ?, ?, ?)");
+             PreparedStatement image = connection.prepareStatement(
+                     "INSERT INTO product_images (product_id, image_url, thumbnail_url, sort_order, upload_time) "
+                     + "VALUES (?, ?, ?, ?, ?)")) {
+            for (long id = 1; id <= PRODUCT_COUNT; id++) {
+                Timestamp publishedAt = Timestamp.valueOf(now.minusMinutes(id));
+                product.setLong(1, id);
+                product.setLong(2, 1000 + random.nextInt(500));
+                product.setInt(3, 11 + random.nextInt(10));
+                product.setString(4, "二手商品" + id + " 九成新 正品");
+                product.setString(5, description.toString());
+                product.setBigDecimal(6, BigDecimal.valueOf(100 + random.nextInt(5000)));
+                product.setBigDecimal(7, BigDecimal.valueOf(6000));
+                product.setString(8, "官方保修，剩余十个月，可查询序列号");
+                product.setString(9, "朝阳区建国路88号SOHO现代城A座");
+                product.setBigDecimal(10, new BigDecimal("116.47000000"));
+                product.setBigDecimal(11, new BigDecimal("39.91000000"));
+                product.setInt(12, random.nextInt(200));
+                product.setInt(13, random.nextInt(20));
+                product.setInt(14, random.nextInt(10));
+                product.setTimestamp(15, publishedAt);
+                product.setTimestamp(16, publishedAt);
+                product.setTimestamp(17, publishedAt);
+                product.addBatch();
+                
+                for (int sortOrder = 0; sortOrder < IMAGES_PER_PRODUCT; sortOrder++) {
+                    image.setLong(1, id);
+                    image.setString(2, "http://localhost:8080/api/v1/files/products/" + id + "_" + sortOrder + ".jpg");
+                    image.setString(3, "http://localhost:8080/api/v1/files/products/" + id + "_" + sortOrder + "_thumb.jpg");
+                    image.setInt(4, sortOrder);
+                    image.setTimestamp(5, publishedAt);
+                    image.addBatch();
+                }
+                
+                if (id % 500 == 0) {
+                    product.executeBatch();
+                    image.executeBatch();
+                }
+            }
+        }
+        connection.commit();
+        connection.setAutoCommit(true);
+    }
+}